@@ -0,0 +1,85 @@
+package fr.insa.http.benchmarks;
+
+import fr.insa.http.enums.HTTPMethod;
+import fr.insa.http.enums.HTTPStatus;
+import fr.insa.http.logging.AccessLog;
+import fr.insa.http.messages.HTTPRequest;
+import fr.insa.http.util.HeaderNames;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what logging a request costs the thread handling it, with 4 threads logging at once like busy workers
+ * legacy() is how requests used to be logged : two synchronous log4j calls per request with the location of the call
+ * in the pattern. It writes to a temporary file instead of the console so the output of jmh stays readable,
+ * which makes it cheaper than it was
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+public class AccessLogBenchmark {
+    private static final String LEGACY_CONFIGURATION = "<Configuration status=\"warn\">"
+        + "<Appenders><File name=\"File\" fileName=\"%s\">"
+        + "<PatternLayout pattern=\"[%%-5level] %%d{HH:mm:ss} (%%threadName-%%threadId) - %%C{-3}.%%M(%%F:%%L) - %%m%%n%%exception\"/>"
+        + "</File></Appenders>"
+        + "<Loggers><Root level=\"debug\"><AppenderRef ref=\"File\"/></Root></Loggers>"
+        + "</Configuration>";
+
+    private Path directory;
+
+    private Logger logger;
+
+    private HTTPRequest request;
+
+    private InetAddress client;
+
+    @Setup
+    public void setup() throws IOException {
+        this.directory = Files.createTempDirectory("access-log-benchmark");
+        Path configuration = this.directory.resolve("log4j2.xml");
+        Files.writeString(configuration, String.format(LEGACY_CONFIGURATION, this.directory.resolve("legacy.log")));
+        // must be set before log4j is first used
+        System.setProperty("log4j.configurationFile", configuration.toString());
+        this.logger = LogManager.getLogger(AccessLogBenchmark.class);
+
+        AccessLog.start(this.directory.resolve("access.log"), 64 * 1024);
+
+        this.request = new HTTPRequest(HTTPMethod.GET, "/style.css");
+        this.request.getHeaders().setHeader(HeaderNames.REFERER, "http://localhost:8080/index.html");
+        this.request.getHeaders().setHeader(HeaderNames.USER_AGENT, "Mozilla/5.0 (X11; Linux x86_64; rv:72.0) Gecko/20100101 Firefox/72.0");
+        this.client = InetAddress.getLoopbackAddress();
+    }
+
+    @TearDown
+    public void tearDown() {
+        // entries dropped when the writer could not keep up were cheaper than the others
+        System.out.println("access log entries dropped : " + AccessLog.getDroppedCount());
+    }
+
+    @Benchmark
+    public void accessLog() {
+        AccessLog.log(this.client, System.currentTimeMillis(), this.request, HTTPStatus.OK.getCode(), 1024);
+    }
+
+    @Benchmark
+    public void legacy() {
+        this.logger.info("Received request : {} {}", this.request.getMethod(), this.request.getResource());
+        this.logger.info("Sending response : {}", HTTPStatus.OK);
+    }
+}
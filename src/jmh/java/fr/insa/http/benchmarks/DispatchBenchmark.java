@@ -0,0 +1,110 @@
+package fr.insa.http.benchmarks;
+
+import fr.insa.http.FrameworkRequestHandler;
+import fr.insa.http.RequestFilter;
+import fr.insa.http.annotations.HandleMethod;
+import fr.insa.http.enums.HTTPMethod;
+import fr.insa.http.enums.HTTPStatus;
+import fr.insa.http.messages.HTTPRequest;
+import fr.insa.http.messages.HTTPResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of going through FrameworkRequestHandler compared to calling the handler method directly
+ * The handler does almost nothing so the dispatch overhead is what gets measured
+ * reflection() is how FrameworkRequestHandler used to call handler methods, with Method.invoke,
+ * methodHandle() is the best a MethodHandle can do when it is a constant
+ * filters() goes through a before, an after and an around filter on top of the built-in ones
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+    private NoopHandler handler;
+
+    private FrameworkRequestHandler frameworkHandler;
+
+    private FrameworkRequestHandler filteredHandler;
+
+    private HTTPRequest request;
+
+    private Method method;
+
+    // static final so the JIT treats it as a constant and can inline through it
+    private static final MethodHandle METHOD_HANDLE;
+
+    static {
+        try {
+            METHOD_HANDLE = MethodHandles.lookup().findVirtual(NoopHandler.class, "handleGet", MethodType.methodType(HTTPResponse.class, HTTPRequest.class));
+        }
+        catch(NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        this.handler = new NoopHandler();
+        this.frameworkHandler = new FrameworkRequestHandler(this.handler);
+        this.frameworkHandler.setDefaultHeader("content-type", "text/html");
+        this.frameworkHandler.setDefaultHeader("server", "Simple HTTP Server");
+        this.filteredHandler = new FrameworkRequestHandler(this.handler);
+        this.filteredHandler.setDefaultHeader("content-type", "text/html");
+        this.filteredHandler.setDefaultHeader("server", "Simple HTTP Server");
+        this.filteredHandler.addFilter(RequestFilter.before(request -> request.getResource().startsWith("/private/") ? new HTTPResponse(HTTPStatus.FORBIDDEN) : null));
+        this.filteredHandler.addFilter(RequestFilter.after((request, response) -> response.getHeaders().setHeader("x-frame-options", "DENY")));
+        this.filteredHandler.addFilter((request, next) -> next.handleRequest(request));
+        this.request = new HTTPRequest(HTTPMethod.GET, "/style.css");
+        try {
+            this.method = NoopHandler.class.getMethod("handleGet", HTTPRequest.class);
+        }
+        catch(NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Benchmark
+    public HTTPResponse direct() {
+        return this.handler.handleGet(this.request);
+    }
+
+    @Benchmark
+    public HTTPResponse reflection() throws ReflectiveOperationException {
+        return (HTTPResponse)this.method.invoke(this.handler, this.request);
+    }
+
+    @Benchmark
+    public HTTPResponse methodHandle() throws Throwable {
+        return (HTTPResponse)METHOD_HANDLE.invokeExact(this.handler, this.request);
+    }
+
+    @Benchmark
+    public HTTPResponse framework() {
+        return this.frameworkHandler.handleRequest(this.request);
+    }
+
+    @Benchmark
+    public HTTPResponse filters() {
+        return this.filteredHandler.handleRequest(this.request);
+    }
+
+    // not annotated with @HTTPHandler so the server never picks it up
+    public static class NoopHandler {
+        @HandleMethod(HTTPMethod.GET)
+        public HTTPResponse handleGet(HTTPRequest request) {
+            return new HTTPResponse(HTTPStatus.NO_CONTENT);
+        }
+    }
+}
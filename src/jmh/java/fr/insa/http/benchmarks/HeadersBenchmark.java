@@ -0,0 +1,116 @@
+package fr.insa.http.benchmarks;
+
+import fr.insa.http.util.HTTPHeaders;
+import fr.insa.http.util.HeaderNames;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the HTTPHeaders operations done for every request and response, against the HashMap backed LegacyHeaders
+ * Run with -prof gc to compare the allocations
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HeadersBenchmark {
+    // header names and values of a typical browser request, as the parser gives them
+    private static final String[] NAMES = {"host", "user-agent", "accept", "accept-language", "accept-encoding", "connection", "upgrade-insecure-requests", "cache-control"};
+    private static final String[] VALUES = {"localhost:8080", "Mozilla/5.0 (X11; Linux x86_64; rv:70.0) Gecko/20100101 Firefox/70.0", "text/html,*/*;q=0.8", "fr,en;q=0.3", "gzip, deflate", "keep-alive", "1", "max-age=0"};
+
+    // the same names as the client writes them
+    private static final byte[][] RAW_NAMES = {
+        "Host".getBytes(StandardCharsets.ISO_8859_1), "User-Agent".getBytes(StandardCharsets.ISO_8859_1),
+        "Accept".getBytes(StandardCharsets.ISO_8859_1), "Accept-Language".getBytes(StandardCharsets.ISO_8859_1),
+        "Accept-Encoding".getBytes(StandardCharsets.ISO_8859_1), "Connection".getBytes(StandardCharsets.ISO_8859_1),
+        "Upgrade-Insecure-Requests".getBytes(StandardCharsets.ISO_8859_1), "Cache-Control".getBytes(StandardCharsets.ISO_8859_1)
+    };
+
+    private HTTPHeaders headers;
+
+    private LegacyHeaders legacyHeaders;
+
+    @Setup
+    public void setup() {
+        this.headers = new HTTPHeaders();
+        this.legacyHeaders = new LegacyHeaders();
+        for(int i = 0; i < NAMES.length; i++) {
+            this.headers.addHeader(NAMES[i], VALUES[i]);
+            this.legacyHeaders.setHeader(NAMES[i], VALUES[i]);
+        }
+    }
+
+    // filling the headers of a request
+    @Benchmark
+    public HTTPHeaders fill() {
+        HTTPHeaders headers = new HTTPHeaders();
+        for(int i = 0; i < NAMES.length; i++)
+            headers.addHeader(NAMES[i], VALUES[i]);
+        return headers;
+    }
+
+    @Benchmark
+    public LegacyHeaders legacyFill() {
+        LegacyHeaders headers = new LegacyHeaders();
+        for(int i = 0; i < NAMES.length; i++)
+            headers.setHeader(NAMES[i], VALUES[i]);
+        return headers;
+    }
+
+    // turning the names read from the connection into Strings, then filling the headers
+    @Benchmark
+    public HTTPHeaders parseNames() {
+        HTTPHeaders headers = new HTTPHeaders();
+        for(int i = 0; i < RAW_NAMES.length; i++) {
+            byte[] raw = RAW_NAMES[i];
+            String name = HeaderNames.fromBytes(raw, 0, raw.length);
+            headers.addHeader(name != null ? name : new String(raw, StandardCharsets.ISO_8859_1).toLowerCase(), VALUES[i]);
+        }
+        return headers;
+    }
+
+    @Benchmark
+    public LegacyHeaders legacyParseNames() {
+        LegacyHeaders headers = new LegacyHeaders();
+        for(int i = 0; i < RAW_NAMES.length; i++)
+            headers.setHeader(new String(RAW_NAMES[i], StandardCharsets.ISO_8859_1), VALUES[i]);
+        return headers;
+    }
+
+    // the lookups done while handling a request, a missing header is a null instead of a hasHeader() first
+    @Benchmark
+    public void lookup(Blackhole blackhole) {
+        blackhole.consume(this.headers.getHeader(HeaderNames.CONTENT_LENGTH));
+        blackhole.consume(this.headers.getHeader(HeaderNames.TRANSFER_ENCODING));
+        blackhole.consume(this.headers.getHeader(HeaderNames.CONNECTION));
+        blackhole.consume(this.headers.getHeader(HeaderNames.CONTENT_TYPE));
+    }
+
+    @Benchmark
+    public void legacyLookup(Blackhole blackhole) {
+        blackhole.consume(this.legacyHeaders.hasHeader("content-length") ? this.legacyHeaders.getHeader("content-length") : null);
+        blackhole.consume(this.legacyHeaders.hasHeader("transfer-encoding") ? this.legacyHeaders.getHeader("transfer-encoding") : null);
+        blackhole.consume(this.legacyHeaders.hasHeader("connection") ? this.legacyHeaders.getHeader("connection") : null);
+        blackhole.consume(this.legacyHeaders.hasHeader("content-type") ? this.legacyHeaders.getHeader("content-type") : null);
+    }
+
+    // going through all the headers, like when writing a message
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        this.headers.forEach((name, value) -> blackhole.consume(value));
+    }
+
+    @Benchmark
+    public void legacyIterate(Blackhole blackhole) {
+        for(String header : this.legacyHeaders.headers())
+            blackhole.consume(this.legacyHeaders.getHeader(header));
+    }
+}
@@ -0,0 +1,49 @@
+package fr.insa.http.benchmarks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The HashMap backed HTTPHeaders the server used to have, kept as a baseline for HeadersBenchmark
+ * Every insertion lowercases the name and strips the value, a missing header is reported with an exception
+ */
+final class LegacyHeaders {
+    private Map<String, String> headers;
+
+    LegacyHeaders() {
+        this.headers = new HashMap<>();
+    }
+
+    void setHeader(String header, String value) {
+        if(header == null)
+            throw new NullPointerException("null header forbidden");
+        if(value == null)
+            this.headers.remove(header);
+        else {
+            header = header.toLowerCase();
+            value = value.stripLeading();
+            this.headers.put(header, value);
+        }
+    }
+
+    boolean hasHeader(String header) {
+        if(header == null)
+            throw new NullPointerException("null header forbidden");
+        return this.headers.containsKey(header);
+    }
+
+    String getHeader(String header) {
+        if(header == null)
+            throw new NullPointerException("null header forbidden");
+        if(!this.headers.containsKey(header))
+            throw new NoSuchElementException("no value for header " + header);
+        return this.headers.get(header);
+    }
+
+    Set<String> headers() {
+        return Collections.unmodifiableSet(this.headers.keySet());
+    }
+}
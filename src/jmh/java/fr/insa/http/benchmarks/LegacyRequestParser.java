@@ -0,0 +1,80 @@
+package fr.insa.http.benchmarks;
+
+import fr.insa.http.enums.HTTPMethod;
+import fr.insa.http.enums.HTTPVersion;
+import fr.insa.http.messages.HTTPRequest;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * The request parser HTTPRequest.fromInputStream used to have, kept as a baseline for RequestParserBenchmark
+ * It reads byte by byte into an ArrayList<Byte>, then decodes the head again through a BufferedReader
+ */
+final class LegacyRequestParser {
+    private LegacyRequestParser() {}
+
+    static HTTPRequest parse(InputStream in) throws IOException {
+        HTTPRequest request = new HTTPRequest();
+
+        DataInputStream dataIn = new DataInputStream(in);
+        ArrayList<Byte> bufferL = new ArrayList<>();
+        bufferL.add(dataIn.readByte());
+        bufferL.add(dataIn.readByte());
+        bufferL.add(dataIn.readByte());
+        bufferL.add(dataIn.readByte());
+        boolean stop = false;
+
+        while(!stop) {
+            int len = bufferL.size();
+            if(bufferL.get(len - 1) == '\n' && bufferL.get(len - 2) == '\r' && bufferL.get(len - 3) == '\n' && bufferL.get(len - 4) == '\r')
+                stop = true;
+            else
+                bufferL.add(dataIn.readByte());
+        }
+
+        byte[] buffer = new byte[bufferL.size()];
+        {
+            int count = 0;
+            for(byte b1 : bufferL)
+                buffer[count++] = b1;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(buffer), StandardCharsets.US_ASCII));
+
+        String line = reader.readLine();
+        int firstIdx = line.indexOf(' ');
+        int lastIdx = line.lastIndexOf(' ');
+
+        request.setMethod(HTTPMethod.valueOf(line.substring(0, firstIdx)));
+        request.setResource(line.substring(firstIdx + 1, lastIdx));
+        request.setVersion(HTTPVersion.fromString(line.substring(lastIdx + 1)));
+
+        // parse headers
+        while((line = reader.readLine()) != null && line.length() > 0) {
+            String[] split = line.split(":", 2);
+
+            // ignore malformed lines
+            if(split.length != 2)
+                continue;
+            request.getHeaders().setHeader(split[0].toLowerCase(), split[1].stripLeading());
+        }
+
+        // parse body (if any)
+        if(request.getHeaders().hasHeader("content-length")) {
+            int contentLength = Integer.parseInt(request.getHeaders().getHeader("content-length"));
+            byte[] bodyData = new byte[contentLength];
+            int count = 0;
+            while(count < contentLength)
+                bodyData[count++] = dataIn.readByte();
+            request.setBody(bodyData);
+        }
+
+        return request;
+    }
+}
@@ -0,0 +1,263 @@
+package fr.insa.http.benchmarks;
+
+import fr.insa.http.Server;
+import fr.insa.http.messages.HTTPInputStream;
+import fr.insa.http.util.Util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end load test : a fixed number of clients send requests to the server over loopback as fast as they can
+ * and the latency of every request is recorded, then requests/sec and latency percentiles are printed
+ *
+ * Arguments are key=value pairs, all optional :
+ * host, port, connections, warmup and duration (in seconds), paths (comma separated),
+ * keepalive (true/false) and embedded (true to start the server in this JVM)
+ * Run it with ./gradlew loadTest -Pargs="connections=64 paths=/style.css,/bust.jpg"
+ */
+public class LoadGenerator {
+    private String host;
+
+    private int port;
+
+    private int connections;
+
+    private int warmup;
+
+    private int duration;
+
+    private byte[][] requests;
+
+    private boolean keepAlive;
+
+    private LoadGenerator(Map<String, String> options) {
+        this.host = options.getOrDefault("host", "localhost");
+        this.port = Integer.parseInt(options.getOrDefault("port", "8080"));
+        this.connections = Integer.parseInt(options.getOrDefault("connections", "16"));
+        this.warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        this.duration = Integer.parseInt(options.getOrDefault("duration", "15"));
+        this.keepAlive = Boolean.parseBoolean(options.getOrDefault("keepalive", "true"));
+
+        String[] paths = options.getOrDefault("paths", "/style.css").split(",");
+        this.requests = new byte[paths.length][];
+        for(int i = 0; i < paths.length; i++) {
+            String request = "GET " + paths[i] + " HTTP/1.1\r\nHost: " + this.host + "\r\n" + (this.keepAlive ? "" : "Connection: close\r\n") + "\r\n";
+            this.requests[i] = request.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for(String arg : args) {
+            String[] split = arg.split("=", 2);
+            if(split.length != 2)
+                throw new IllegalArgumentException("Arguments must have format key=value : " + arg);
+            options.put(split[0], split[1]);
+        }
+
+        if(Boolean.parseBoolean(options.getOrDefault("embedded", "false"))) {
+            System.setProperty("http.port", options.getOrDefault("port", "8080"));
+            Thread server = new Thread(() -> Server.main(new String[0]), "Server");
+            server.setDaemon(true);
+            server.start();
+            waitForServer(options.getOrDefault("host", "localhost"), Integer.parseInt(options.getOrDefault("port", "8080")));
+        }
+
+        new LoadGenerator(options).run();
+    }
+
+    private void run() throws InterruptedException {
+        System.out.printf("Load test : %d connections, %ds warmup, %ds measured, keep-alive %s, %d path(s)%n", this.connections, this.warmup, this.duration, this.keepAlive, this.requests.length);
+
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(this.warmup);
+        long measureUntil = measureFrom + TimeUnit.SECONDS.toNanos(this.duration);
+
+        List<Client> clients = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(this.connections);
+        for(int i = 0; i < this.connections; i++) {
+            Client client = new Client(i, measureFrom, measureUntil, done);
+            clients.add(client);
+            new Thread(client, "Client-" + i).start();
+        }
+        done.await();
+
+        // merge the latencies of all clients
+        int total = 0;
+        long errors = 0;
+        for(Client client : clients) {
+            total += client.count;
+            errors += client.errors;
+        }
+        long[] latencies = new long[total];
+        int offset = 0;
+        for(Client client : clients) {
+            System.arraycopy(client.latencies, 0, latencies, offset, client.count);
+            offset += client.count;
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("requests=%d errors=%d throughput=%.1f req/s%n", total, errors, total / (double)this.duration);
+        if(total > 0) {
+            System.out.printf("latency (us) : p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+                percentile(latencies, 50) / 1000.0,
+                percentile(latencies, 90) / 1000.0,
+                percentile(latencies, 99) / 1000.0,
+                percentile(latencies, 99.9) / 1000.0,
+                latencies[total - 1] / 1000.0
+            );
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int)Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static void waitForServer(String host, int port) throws InterruptedException {
+        for(int i = 0; i < 100; i++) {
+            try(Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), 100);
+                return;
+            }
+            catch(IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IllegalStateException("Server did not start on " + host + ":" + port);
+    }
+
+    // one client connection sending requests one after the other
+    private class Client implements Runnable {
+        private int id;
+
+        private long measureFrom;
+
+        private long measureUntil;
+
+        private CountDownLatch done;
+
+        private long[] latencies;
+
+        private int count;
+
+        private long errors;
+
+        private Socket socket;
+
+        private HTTPInputStream in;
+
+        private OutputStream out;
+
+        Client(int id, long measureFrom, long measureUntil, CountDownLatch done) {
+            this.id = id;
+            this.measureFrom = measureFrom;
+            this.measureUntil = measureUntil;
+            this.done = done;
+            this.latencies = new long[1024];
+        }
+
+        @Override
+        public void run() {
+            try {
+                int next = this.id;
+                long now;
+                while((now = System.nanoTime()) < this.measureUntil) {
+                    byte[] request = LoadGenerator.this.requests[next++ % LoadGenerator.this.requests.length];
+                    try {
+                        this.send(request);
+                        long latency = System.nanoTime() - now;
+                        if(now >= this.measureFrom)
+                            this.record(latency);
+                    }
+                    catch(IOException e) {
+                        if(now >= this.measureFrom)
+                            this.errors++;
+                        this.disconnect();
+                    }
+                }
+                this.disconnect();
+            }
+            finally {
+                this.done.countDown();
+            }
+        }
+
+        private void send(byte[] request) throws IOException {
+            if(this.socket == null) {
+                this.socket = new Socket(LoadGenerator.this.host, LoadGenerator.this.port);
+                this.socket.setTcpNoDelay(true);
+                this.in = new HTTPInputStream(this.socket.getInputStream());
+                this.out = this.socket.getOutputStream();
+            }
+            this.out.write(request);
+            this.out.flush();
+
+            // read the head and skip the body
+            int headLength = this.in.readHead();
+            byte[] buffer = this.in.buffer();
+            int headStart = this.in.bufferPosition();
+            long contentLength = contentLength(buffer, headStart, headLength);
+            boolean close = !LoadGenerator.this.keepAlive || contains(buffer, headStart, headLength, "connection:close");
+            this.in.consumeHead(headLength);
+            while(contentLength > 0) {
+                long skipped = this.in.skip(contentLength);
+                if(skipped <= 0) {
+                    if(this.in.read() < 0)
+                        throw new EOFException("Connection closed in the middle of a body");
+                    skipped = 1;
+                }
+                contentLength -= skipped;
+            }
+
+            if(close)
+                this.disconnect();
+        }
+
+        private void record(long latency) {
+            if(this.count == this.latencies.length)
+                this.latencies = Arrays.copyOf(this.latencies, this.count * 2);
+            this.latencies[this.count++] = latency;
+        }
+
+        private void disconnect() {
+            if(this.socket != null) {
+                try {
+                    this.socket.close();
+                }
+                catch(IOException ignored) {}
+                this.socket = null;
+            }
+        }
+    }
+
+    private static long contentLength(byte[] buffer, int offset, int length) {
+        String head = new String(buffer, offset, length, StandardCharsets.US_ASCII).toLowerCase();
+        int index = head.indexOf("content-length:");
+        if(index < 0)
+            return 0;
+        int end = head.indexOf('\r', index);
+        return Long.parseLong(head.substring(index + "content-length:".length(), end).strip());
+    }
+
+    private static boolean contains(byte[] buffer, int offset, int length, String text) {
+        byte[] token = text.getBytes(StandardCharsets.US_ASCII);
+        for(int i = offset; i + token.length <= offset + length; i++) {
+            if(Util.equals(buffer, i, token.length, token))
+                return true;
+        }
+        return false;
+    }
+}
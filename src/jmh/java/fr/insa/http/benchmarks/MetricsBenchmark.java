@@ -0,0 +1,58 @@
+package fr.insa.http.benchmarks;
+
+import fr.insa.http.enums.HTTPMethod;
+import fr.insa.http.enums.HTTPStatus;
+import fr.insa.http.metrics.LatencyHistogram;
+import fr.insa.http.metrics.Metrics;
+import fr.insa.http.metrics.RouteMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what recording a duration costs a request, with 4 threads recording into the same histograms like busy workers
+ * scrape() measures rendering /metrics with a few routes that had requests
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+public class MetricsBenchmark {
+    private LatencyHistogram histogram;
+
+    private RouteMetrics route;
+
+    @Setup
+    public void setup() {
+        this.histogram = new LatencyHistogram();
+        this.route = Metrics.route("/benchmark");
+        for(String name : new String[] {"/", "/gif", "/gif-gallery.html", "*"}) {
+            for(HTTPStatus status : new HTTPStatus[] {HTTPStatus.OK, HTTPStatus.NOT_FOUND, HTTPStatus.NOT_MODIFIED})
+                Metrics.route(name).record(HTTPMethod.GET, status, 50_000);
+        }
+    }
+
+    @Benchmark
+    public void histogram() {
+        this.histogram.record(ThreadLocalRandom.current().nextLong(1_000, 10_000_000));
+    }
+
+    @Benchmark
+    public void route() {
+        this.route.record(HTTPMethod.GET, HTTPStatus.OK, ThreadLocalRandom.current().nextLong(1_000, 10_000_000));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String scrape() {
+        return Metrics.scrape();
+    }
+}
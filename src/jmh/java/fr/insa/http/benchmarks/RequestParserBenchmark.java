@@ -0,0 +1,64 @@
+package fr.insa.http.benchmarks;
+
+import fr.insa.http.messages.HTTPInputStream;
+import fr.insa.http.messages.HTTPRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the byte-level parser of HTTPRequest.fromInputStream with the one it replaced,
+ * and reading every request into a new HTTPRequest with reusing one like the connections do
+ * Run with -prof gc to see the allocation rate of each
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestParserBenchmark {
+    @Param({"simple", "browser", "post"})
+    public String request;
+
+    private ByteArrayInputStream in;
+
+    // kept between invocations like it is kept between the requests of a connection
+    private HTTPInputStream httpIn;
+
+    private HTTPRequest reusedRequest;
+
+    @Setup
+    public void setup() {
+        this.in = new ByteArrayInputStream(SampleRequests.get(this.request));
+        this.httpIn = new HTTPInputStream(this.in);
+        this.reusedRequest = new HTTPRequest();
+    }
+
+    @Benchmark
+    public HTTPRequest legacy() throws IOException {
+        this.in.reset();
+        return LegacyRequestParser.parse(this.in);
+    }
+
+    @Benchmark
+    public HTTPRequest current() throws IOException {
+        this.in.reset();
+        HTTPRequest request = new HTTPRequest();
+        request.fromInputStream(this.httpIn);
+        return request;
+    }
+
+    @Benchmark
+    public HTTPRequest reused() throws IOException {
+        this.in.reset();
+        this.reusedRequest.fromInputStream(this.httpIn);
+        return this.reusedRequest;
+    }
+}
@@ -0,0 +1,82 @@
+package fr.insa.http.benchmarks;
+
+import fr.insa.http.enums.HTTPStatus;
+import fr.insa.http.messages.HTTPResponse;
+import fr.insa.http.messages.HeaderBlock;
+import fr.insa.http.util.ByteBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures HTTPResponse.toOutputStream, writing to memory so only the serialization is measured
+ * legacy() is how the head used to be written, through a StringBuilder, a String and getBytes()
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResponseWriterBenchmark {
+    @Param({"0", "1024", "65536"})
+    public int bodySize;
+
+    private HTTPResponse response;
+
+    private ByteArrayOutputStream out;
+
+    private ByteBuilder headBuffer;
+
+    @Setup
+    public void setup() {
+        this.response = new HTTPResponse(HTTPStatus.OK);
+        this.response.getHeaders().setHeader("content-type", "text/css");
+        this.response.getHeaders().setHeader("content-length", Integer.toString(this.bodySize));
+        this.response.setDefaultHeaders(HeaderBlock.EMPTY.with("server", "Simple HTTP Server").with("content-type", "text/html"));
+        if(this.bodySize > 0)
+            this.response.setBody(new byte[this.bodySize]);
+        this.out = new ByteArrayOutputStream(this.bodySize + 1024);
+        this.headBuffer = new ByteBuilder();
+    }
+
+    @Benchmark
+    public int toOutputStream() throws IOException {
+        this.out.reset();
+        this.response.toOutputStream(this.out);
+        return this.out.size();
+    }
+
+    @Benchmark
+    public int reusedHeadBuffer() throws IOException {
+        this.out.reset();
+        this.response.toOutputStream(this.out, this.headBuffer);
+        return this.out.size();
+    }
+
+    @Benchmark
+    public int legacy() throws IOException {
+        this.out.reset();
+        StringBuilder stringBuilder = new StringBuilder()
+            .append(this.response.getVersion())
+            .append(' ')
+            .append(this.response.getStatus())
+            .append("\r\n");
+        this.response.getHeaders().forEach((name, value) -> stringBuilder.append(name).append(':').append(value).append("\r\n"));
+        stringBuilder.append("server:Simple HTTP Server\r\n");
+        stringBuilder.append("\r\n");
+        byte[] data = stringBuilder.toString().getBytes(StandardCharsets.US_ASCII);
+        this.out.write(data, 0, data.length);
+        if(this.response.getBody() != null)
+            this.out.write(this.response.getBody(), 0, this.response.getBody().length);
+        this.out.flush();
+        return this.out.size();
+    }
+}
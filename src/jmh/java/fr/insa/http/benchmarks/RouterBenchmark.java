@@ -0,0 +1,99 @@
+package fr.insa.http.benchmarks;
+
+import fr.insa.http.routing.Router;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Measures finding the route of a path among many, with the Router compared to trying every route in turn
+ * like the chains of if/else on the resource that handlers used to have
+ * Half of the routes are exact paths, a quarter are prefixes and a quarter are regexes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RouterBenchmark {
+    @Param({"10", "100", "500"})
+    public int routes;
+
+    @Param({"exact", "prefix", "regex", "none"})
+    public String match;
+
+    private Router<Integer> router;
+
+    private List<Predicate<String>> linearRoutes;
+
+    private String path;
+
+    @Setup
+    public void setup() {
+        this.router = new Router<>();
+        this.linearRoutes = new ArrayList<>();
+
+        for(int i = 0; i < this.routes; i++) {
+            String exact = "/api/v" + (i % 3) + "/resource" + i + "/items";
+            String prefix = "/static/bundle" + i + "/";
+            String regex = "/users/[0-9]+/posts" + i;
+            switch(i % 4) {
+                case 0:
+                case 1:
+                    this.router.addPath(exact, i);
+                    this.linearRoutes.add(exact::equals);
+                    break;
+                case 2:
+                    this.router.addPath(prefix + "*", i);
+                    this.linearRoutes.add(path -> path.startsWith(prefix));
+                    break;
+                default:
+                    this.router.addPattern(regex, i);
+                    Pattern pattern = Pattern.compile(regex);
+                    this.linearRoutes.add(path -> pattern.matcher(path).matches());
+            }
+        }
+
+        // the last route of each kind, the worst case for the linear scan
+        int last = this.routes - 1;
+        switch(this.match) {
+            case "exact":
+                last -= (last % 4) > 1 ? (last % 4) - 1 : 0;
+                this.path = "/api/v" + (last % 3) + "/resource" + last + "/items";
+                break;
+            case "prefix":
+                last -= (last % 4 + 2) % 4;
+                this.path = "/static/bundle" + last + "/js/app.js";
+                break;
+            case "regex":
+                last -= (last % 4 + 1) % 4;
+                this.path = "/users/12345/posts" + last;
+                break;
+            default:
+                this.path = "/not/routed/anywhere";
+        }
+    }
+
+    @Benchmark
+    public Integer router() {
+        return this.router.find(this.path);
+    }
+
+    @Benchmark
+    public Integer linear() {
+        for(int i = 0; i < this.linearRoutes.size(); i++) {
+            if(this.linearRoutes.get(i).test(this.path))
+                return i;
+        }
+        return null;
+    }
+}
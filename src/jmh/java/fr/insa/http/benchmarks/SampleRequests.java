@@ -0,0 +1,49 @@
+package fr.insa.http.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Raw requests shared by the benchmarks
+ */
+final class SampleRequests {
+    // the smallest request a client can send
+    static final String SIMPLE = "GET /style.css HTTP/1.1\r\nHost: localhost\r\n\r\n";
+
+    // what a browser sends when loading the gallery
+    static final String BROWSER = "GET /gif-gallery.html HTTP/1.1\r\n"
+        + "Host: localhost:8080\r\n"
+        + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:70.0) Gecko/20100101 Firefox/70.0\r\n"
+        + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+        + "Accept-Language: fr,fr-FR;q=0.8,en-US;q=0.5,en;q=0.3\r\n"
+        + "Accept-Encoding: gzip, deflate\r\n"
+        + "Connection: keep-alive\r\n"
+        + "Upgrade-Insecure-Requests: 1\r\n"
+        + "Cache-Control: max-age=0\r\n"
+        + "\r\n";
+
+    private SampleRequests() {}
+
+    static byte[] get(String name) {
+        switch(name) {
+            case "simple":
+                return SIMPLE.getBytes(StandardCharsets.US_ASCII);
+            case "browser":
+                return BROWSER.getBytes(StandardCharsets.US_ASCII);
+            case "post":
+                return post(4096);
+            default:
+                throw new IllegalArgumentException("Unknown sample request : " + name);
+        }
+    }
+
+    // a gif upload with a body of the given size
+    static byte[] post(int bodySize) {
+        byte[] body = new byte[bodySize];
+        Arrays.fill(body, (byte)'A');
+        byte[] head = ("POST /gif HTTP/1.1\r\nHost: localhost\r\nContent-Type: text/plain\r\nContent-Length: " + bodySize + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] request = Arrays.copyOf(head, head.length + bodySize);
+        System.arraycopy(body, 0, request, head.length, bodySize);
+        return request;
+    }
+}
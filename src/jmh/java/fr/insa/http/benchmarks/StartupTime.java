@@ -0,0 +1,89 @@
+package fr.insa.http.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from starting a server JVM to it answering its first request, with the generated handler index
+ * and with classpath scanning (-Dhttp.handlers.scan=true), each server is started runs times and the median is printed
+ *
+ * Arguments are key=value pairs, all optional : port, runs and path
+ * Run it with ./gradlew startupTime -Pargs="runs=10"
+ */
+public class StartupTime {
+    private static final String JAVA = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for(String arg : args) {
+            String[] split = arg.split("=", 2);
+            if(split.length != 2)
+                throw new IllegalArgumentException("Arguments must be key=value : " + arg);
+            options.put(split[0], split[1]);
+        }
+        int port = Integer.parseInt(options.getOrDefault("port", "18090"));
+        int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+        String path = options.getOrDefault("path", "/");
+
+        for(boolean scan : new boolean[] {false, true}) {
+            long[] times = new long[runs];
+            for(int i = 0; i < runs; i++)
+                times[i] = timeToFirstRequest(port, path, scan);
+            Arrays.sort(times);
+            System.out.printf("%-16s median %6.1f ms, min %6.1f ms, max %6.1f ms%n",
+                scan ? "classpath scan" : "handler index", times[runs / 2] / 1e6, times[0] / 1e6, times[runs - 1] / 1e6);
+        }
+    }
+
+    private static long timeToFirstRequest(int port, String path, boolean scan) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(JAVA);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-Dhttp.port=" + port);
+        command.add("-Dhttp.handlers.scan=" + scan);
+        command.add("-Dhttp.accesslog=");
+        command.add("fr.insa.http.Server");
+
+        long start = System.nanoTime();
+        Process server = new ProcessBuilder(command)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.DISCARD)
+            .start();
+        try {
+            byte[] request = ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            while(true) {
+                try(Socket socket = new Socket("localhost", port)) {
+                    OutputStream out = socket.getOutputStream();
+                    out.write(request);
+                    out.flush();
+                    InputStream in = socket.getInputStream();
+                    if(in.read() < 0)
+                        throw new IOException("The server closed the connection without answering");
+                    return System.nanoTime() - start;
+                }
+                // not listening yet
+                catch(ConnectException e) {
+                    if(!server.isAlive())
+                        throw new IOException("The server exited with " + server.exitValue());
+                    Thread.sleep(2);
+                }
+            }
+        }
+        finally {
+            server.destroy();
+            server.waitFor(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package fr.insa.http.benchmarks;
+
+import fr.insa.http.FrameworkRequestHandler;
+import fr.insa.http.ServerConfig;
+import fr.insa.http.SimpleHandler;
+import fr.insa.http.enums.HTTPMethod;
+import fr.insa.http.messages.HTTPRequest;
+import fr.insa.http.messages.HTTPResponse;
+import fr.insa.http.messages.ResponseCompressor;
+import fr.insa.http.util.HeaderNames;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures SimpleHandler serving the files of the www directory, through the routing and compression of FrameworkRequestHandler
+ * Must be run from the project directory, like the server
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StaticFileBenchmark {
+    @Param({"/style.css", "/bust.jpg", "/gif-gallery.html"})
+    public String resource;
+
+    // "" for a client that does not accept compressed bodies
+    @Param({"", "gzip"})
+    public String acceptEncoding;
+
+    // whether the files are sent from memory mappings (http.mmap)
+    @Param({"false", "true"})
+    public boolean mmap;
+
+    private FrameworkRequestHandler handler;
+
+    private HTTPRequest get;
+
+    private HTTPRequest head;
+
+    @Setup
+    public void setup() {
+        System.setProperty(ServerConfig.MMAP, Boolean.toString(this.mmap));
+        this.handler = new FrameworkRequestHandler(new SimpleHandler());
+        this.handler.setCompressor(new ResponseCompressor(1024));
+        this.get = new HTTPRequest(HTTPMethod.GET, this.resource);
+        this.head = new HTTPRequest(HTTPMethod.HEAD, this.resource);
+        if(!this.acceptEncoding.isEmpty()) {
+            this.get.getHeaders().setHeader(HeaderNames.ACCEPT_ENCODING, this.acceptEncoding);
+            this.head.getHeaders().setHeader(HeaderNames.ACCEPT_ENCODING, this.acceptEncoding);
+        }
+    }
+
+    @Benchmark
+    public HTTPResponse get() {
+        return this.handler.handleRequest(this.get);
+    }
+
+    @Benchmark
+    public HTTPResponse head() {
+        return this.handler.handleRequest(this.head);
+    }
+}
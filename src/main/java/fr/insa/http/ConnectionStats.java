@@ -0,0 +1,58 @@
+package fr.insa.http;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters about the connections served since startup, shared by all the connection handling code
+ */
+public final class ConnectionStats {
+    private static final LongAdder OPENED = new LongAdder();
+
+    private static final LongAdder CLOSED = new LongAdder();
+
+    private static final LongAdder REQUESTS = new LongAdder();
+
+    private static final LongAccumulator MAX_REQUESTS = new LongAccumulator(Math::max, 0);
+
+    private ConnectionStats() {}
+
+    public static void connectionOpened() {
+        OPENED.increment();
+    }
+
+    /**
+     * To be called once per connection with the number of requests it served
+     */
+    public static void connectionClosed(long requestCount) {
+        CLOSED.increment();
+        REQUESTS.add(requestCount);
+        MAX_REQUESTS.accumulate(requestCount);
+    }
+
+    public static long getOpenedCount() {
+        return OPENED.sum();
+    }
+
+    public static long getActiveCount() {
+        return OPENED.sum() - CLOSED.sum();
+    }
+
+    // number of requests served by connections that are now closed
+    public static long getRequestCount() {
+        return REQUESTS.sum();
+    }
+
+    public static double getAverageRequestsPerConnection() {
+        long closed = CLOSED.sum();
+        return closed == 0 ? 0 : (double)REQUESTS.sum() / closed;
+    }
+
+    public static long getMaxRequestsPerConnection() {
+        return MAX_REQUESTS.get();
+    }
+
+    public static String summary() {
+        return "connections=" + getOpenedCount() + ", active=" + getActiveCount() + ", requests/connection avg=" + String.format("%.2f", getAverageRequestsPerConnection()) + " max=" + getMaxRequestsPerConnection();
+    }
+}
@@ -0,0 +1,114 @@
+package fr.insa.http;
+
+import fr.insa.http.util.TimerWheel;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * The timeouts protecting the server from clients that send or read too slowly, shared by all the connection handling code
+ * A connection waiting for a request is closed after IDLE milliseconds, the head of a request must then arrive
+ * within HEAD milliseconds, its body at BODY_MIN_RATE bytes per second or more, and the client must keep reading the response,
+ * accepting some of it at least every WRITE milliseconds
+ * All the timeouts of all the connections live in one TimerWheel, most of them are cancelled long before they expire
+ */
+public final class ConnectionTimeouts {
+    public static final int IDLE = ServerConfig.getInt(ServerConfig.KEEP_ALIVE_TIMEOUT, 5000);
+
+    public static final int HEAD = ServerConfig.getInt(ServerConfig.HEAD_TIMEOUT, 10000);
+
+    // the body rate is checked over windows of this many milliseconds, a first window is given before checking
+    public static final int BODY_WINDOW = ServerConfig.getInt(ServerConfig.BODY_TIMEOUT, 10000);
+
+    public static final long BODY_MIN_RATE = ServerConfig.getBytes(ServerConfig.BODY_MIN_RATE, 1024);
+
+    public static final int WRITE = ServerConfig.getInt(ServerConfig.WRITE_TIMEOUT, 30000);
+
+    // 100 ms ticks, a turn of the wheel is a bit less than a minute
+    public static final TimerWheel WHEEL = new TimerWheel("Timeouts", 100, 512);
+
+    private ConnectionTimeouts() {}
+
+    /**
+     * A watchdog calling onTimeout once a request body has been waited for a whole BODY_WINDOW without BODY_MIN_RATE bytes per second arriving
+     * bytesRead counts the bytes received and waiting tells whether the connection is waiting for some :
+     * a handler that takes its time before reading the body is not the client's fault
+     * It is started for each body, a connection can keep it for all its requests
+     */
+    public static Watchdog bodyWatchdog(LongSupplier bytesRead, BooleanSupplier waiting, Runnable onTimeout) {
+        return new Watchdog(bytesRead, waiting, Math.max(BODY_MIN_RATE * BODY_WINDOW / 1000, 1), BODY_WINDOW, onTimeout);
+    }
+
+    /**
+     * A watchdog calling onTimeout once the client has accepted nothing of a response for WRITE milliseconds
+     * bytesWritten counts the bytes handed to the connection and waiting tells whether the connection is waiting to send some
+     * It is started for each response, a connection can keep it for all its requests
+     */
+    public static Watchdog writeWatchdog(LongSupplier bytesWritten, BooleanSupplier waiting, Runnable onTimeout) {
+        return new Watchdog(bytesWritten, waiting, 1, WRITE, onTimeout);
+    }
+
+    /**
+     * Checks the progress of a transfer at regular intervals, from start() until it is cancelled or too slow
+     * It can be started again once cancelled, its timeout is reused
+     */
+    public static final class Watchdog implements Runnable {
+        private final LongSupplier progress;
+
+        private final BooleanSupplier waiting;
+
+        private final long minProgress;
+
+        private final Runnable onTimeout;
+
+        private final TimerWheel.Timeout timeout;
+
+        private volatile boolean cancelled;
+
+        // the progress at the last check, only touched by the thread of the wheel once started
+        private long lastProgress;
+
+        private Watchdog(LongSupplier progress, BooleanSupplier waiting, long minProgress, long intervalMillis, Runnable onTimeout) {
+            this.progress = progress;
+            this.waiting = waiting;
+            this.minProgress = minProgress;
+            this.onTimeout = onTimeout;
+            this.timeout = WHEEL.newTimeout(this, intervalMillis);
+        }
+
+        public void start() {
+            this.lastProgress = this.progress.getAsLong();
+            this.cancelled = false;
+            // publishes the fields above to the thread of the wheel
+            this.timeout.start();
+        }
+
+        // runs on the thread of the wheel
+        @Override
+        public void run() {
+            if(this.cancelled)
+                return;
+            long progress = this.progress.getAsLong();
+            if(progress - this.lastProgress < this.minProgress && this.waiting.getAsBoolean()) {
+                this.onTimeout.run();
+                return;
+            }
+            this.lastProgress = progress;
+            this.timeout.start();
+        }
+
+        public void cancel() {
+            this.cancelled = true;
+            this.timeout.cancel();
+        }
+
+        /**
+         * Whether the watchdog stopped on a transfer that was too slow and was not started again since
+         * A task that onTimeout hands to another thread checks this, the transfer it was for may be over by then
+         */
+        public boolean isExpired() {
+            // a slow transfer leaves the timeout expired, any other check starts it again
+            return !this.cancelled && this.timeout.isExpired();
+        }
+    }
+}
@@ -2,85 +2,122 @@ package fr.insa.http;
 
 import fr.insa.http.annotations.HTTPHandler;
 import fr.insa.http.annotations.HandleMethod;
+import fr.insa.http.annotations.HandleResource;
+import fr.insa.http.annotations.HandlerIndex;
 import fr.insa.http.enums.HTTPMethod;
 import fr.insa.http.enums.HTTPStatus;
 import fr.insa.http.messages.HTTPRequest;
+import fr.insa.http.messages.HeaderBlock;
 import fr.insa.http.messages.HTTPResponse;
-import fr.insa.http.util.HTTPHeaders;
+import fr.insa.http.messages.ResponseCompressor;
+import fr.insa.http.metrics.Metrics;
+import fr.insa.http.metrics.RouteMetrics;
+import fr.insa.http.routing.Router;
+import fr.insa.http.util.HeaderNames;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.reflections.Reflections;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * An implementation of RequestHandler. It does nothing alone.
  * However, using reflexion and annotations, it can find a class to delegate requests handling.
  * This allows for easy modification of request handling by just modifying the annotated class.
+ * The annotated classes are read from the HandlerIndex generated at compile time, the classpath is only scanned when there is none.
+ * Requests go through a chain of RequestFilters before reaching their handler method : the built-in default headers,
+ * compression and cache-control, then the filters given to addFilter(). Each route has its chain built once, when it changes,
+ * so a request only goes through lambdas calling each other.
  */
 public class FrameworkRequestHandler implements RequestHandler {
     private static final Logger LOGGER = LogManager.getLogger(FrameworkRequestHandler.class);
 
-    // the object that will handle requests
-    private Object handlerInstance;
-
     // the methods that will be used to handle requests based on their http method
-    private Map<HTTPMethod, Method> defaultMethods;
+    // each one is turned into a RequestHandler calling it directly, no reflection is involved once registered
+    private Route defaultRoute;
+
+    // the methods also annotated with @HandleResource, by resource then by http method
+    // they take precedence over the default methods for the resources they match
+    private Router<Route> router;
+
+    // the routes of the router by their @HandleResource, used while registering and to rebuild their chains
+    private Map<String, Route> routes;
+
+    // the filters given to addFilter(), in order : the first one sees the request first and the response last
+    private List<RequestFilter> filters;
+
+    // the http methods that have a handler method for at least one resource
+    private Set<HTTPMethod> handledMethods;
+
+    // the handler classes and methods found at compile time, null if the handlers were compiled without the processor
+    private HandlerIndex index;
 
     // some default headers that will be added to responses
-    private HTTPHeaders defaultHeaders;
-    
+    // they are encoded once, responses copy their bytes when they are written
+    private HeaderBlock defaultHeaders;
+
+    // the default headers of 304 responses, without a content-type a cache would apply to the body it has
+    private HeaderBlock notModifiedHeaders;
+
+    // compresses the responses the clients accept compressed, null to never compress
+    private ResponseCompressor compressor;
+
+    // the cache-control header of successful GET responses, by path prefix
+    private Router<String> cacheControls;
+
+    private boolean hasCacheControls;
+
     public FrameworkRequestHandler() {
-        this.defaultMethods = new EnumMap<>(HTTPMethod.class);
-        this.defaultHeaders = new HTTPHeaders();
+        this.init();
 
-        // find all classes annotated with HTTPHandler
-        Reflections reflections = new Reflections("fr.insa.http");
-        Set<Class<?>> annotated = reflections.getTypesAnnotatedWith(HTTPHandler.class);
+        // find all classes annotated with HTTPHandler, scanning the classpath is slow so it is only a fallback
+        Collection<Class<?>> annotated;
+        if(this.index != null)
+            annotated = this.index.handlerClasses();
+        else {
+            LOGGER.info("No generated handler index, scanning the classpath for @HTTPHandler classes");
+            Reflections reflections = new Reflections("fr.insa.http");
+            annotated = reflections.getTypesAnnotatedWith(HTTPHandler.class);
+        }
 
         // print a message if no class could be found
         if(annotated.size() == 0)
             LOGGER.warn("No class annotated with @HTTPHandler could be found");
-        else {
-            // print a message if more that one class was found
-            if(annotated.size() > 1)
-                LOGGER.warn("Only one class should be annotated with @HTTPHandler, using class");
+        // the scan has no order, the name gives one so that conflicting handler methods are resolved the same way every time
+        else if(this.index == null) {
+            List<Class<?>> sorted = new ArrayList<>(annotated);
+            sorted.sort(Comparator.comparing(Class::getName));
+            annotated = sorted;
+        }
 
-            Class<?> handlerClass = annotated.iterator().next();
+        // when several classes have a method for the same http method and resource, the first one wins
+        for(Class<?> handlerClass : annotated) {
             LOGGER.debug("Using handler class : {}", handlerClass.getName());
 
             try {
                 // get the default constructor of the handler class and instantiate it
                 Constructor<?> constructor = handlerClass.getConstructor();
-                this.handlerInstance = constructor.newInstance();
-
-                Arrays
-                    .stream(handlerClass.getDeclaredMethods()) // get all the method of the handler class
-                    .filter(method -> method.getParameterCount() == 1) // keep those that have 1 parameter
-                    .filter(method -> method.getParameterTypes()[0] == HTTPRequest.class) // keep those that take an HTTPRequest as parameter
-                    .filter(method -> method.getReturnType() == HTTPResponse.class) // keep those that return an HTTPResponse
-                    .forEach(method -> {
-                        // try to get the HandleMethod annotation from the method
-                        HandleMethod handleMethod = method.getAnnotation(HandleMethod.class);
-
-                        // ignore methods that are not annotated
-                        if(handleMethod != null) {
-                            // if we already have a method to handle the given http method, ignore it
-                            if(this.defaultMethods.containsKey(handleMethod.value()))
-                                LOGGER.warn("Only one method is allowed per HTTP method, ignoring {}", method.getName());
-                            // else we can handle this http method \o/
-                            else {
-                                LOGGER.debug("Handler method for {} requests : {}", handleMethod.value(), method.getName());
-                                this.defaultMethods.put(handleMethod.value(), method);
-                            }
-                        }
-                    });
+                this.registerHandler(constructor.newInstance());
             }
             // if the handler class can't be instantiated (abstract class or interface)
             catch(InstantiationException e) {
@@ -88,7 +125,7 @@ public class FrameworkRequestHandler implements RequestHandler {
             }
             // if the handler class constructor threw an exception
             catch(InvocationTargetException e) {
-                LOGGER.error("Default constructor in class {} threw an exception", handlerClass.getName(), e);
+                LOGGER.error("Default constructor in class {} threw an exception", handlerClass.getName(), e);
             }
             // if that handler class does not have a public no-arg constructor
             catch(NoSuchMethodException e) {
@@ -99,52 +136,353 @@ public class FrameworkRequestHandler implements RequestHandler {
                 LOGGER.error(e.getMessage(), e);
             }
         }
+        this.buildChains();
+    }
+
+    /**
+     * Delegates requests to the given objects instead of looking for the classes annotated with @HTTPHandler
+     * When several of them have a method for the same http method and resource, the first one wins
+     */
+    public FrameworkRequestHandler(Object... handlerInstances) {
+        this.init();
+        for(Object handlerInstance : handlerInstances)
+            this.registerHandler(handlerInstance);
+        this.buildChains();
     }
 
-    public HTTPHeaders defaultHeaders() {
+    private void init() {
+        this.defaultRoute = new Route("*");
+        this.router = new Router<>();
+        this.routes = new HashMap<>();
+        this.filters = new ArrayList<>();
+        this.handledMethods = EnumSet.noneOf(HTTPMethod.class);
+        this.defaultHeaders = HeaderBlock.EMPTY;
+        this.notModifiedHeaders = HeaderBlock.EMPTY;
+        this.cacheControls = new Router<>();
+        this.index = ServerConfig.getBoolean(ServerConfig.HANDLER_SCAN, false) ? null : HandlerIndex.load();
+    }
+
+    // finds the methods of the handler instance annotated with @HandleMethod, in the index if the class is in it
+    private void registerHandler(Object handlerInstance) {
+        if(this.index != null && this.index.handlerClasses().contains(handlerInstance.getClass())) {
+            this.index.register(handlerInstance, (httpMethod, name, regex, methodName, handler) -> {
+                // the methods the generated code can't call are found by their name
+                if(handler == null) {
+                    try {
+                        handler = toRequestHandler(handlerInstance, handlerInstance.getClass().getDeclaredMethod(methodName, HTTPRequest.class));
+                    }
+                    catch(NoSuchMethodException e) {
+                        LOGGER.error("Handler method {} is in the index but not in the class, the index is out of date", methodName, e);
+                        return;
+                    }
+                }
+                this.registerMethod(httpMethod, name, regex, methodName, handler);
+            });
+            return;
+        }
+
+        Arrays
+            .stream(handlerInstance.getClass().getDeclaredMethods()) // get all the method of the handler class
+            .filter(method -> method.getParameterCount() == 1) // keep those that have 1 parameter
+            .filter(method -> method.getParameterTypes()[0] == HTTPRequest.class) // keep those that take an HTTPRequest as parameter
+            .filter(method -> method.getReturnType() == HTTPResponse.class) // keep those that return an HTTPResponse
+            .forEach(method -> {
+                // try to get the HandleMethod annotation from the method
+                HandleMethod handleMethod = method.getAnnotation(HandleMethod.class);
+
+                // ignore methods that are not annotated
+                if(handleMethod != null) {
+                    HandleResource handleResource = method.getAnnotation(HandleResource.class);
+                    this.registerMethod(
+                        handleMethod.value(),
+                        handleResource == null ? "" : handleResource.name(),
+                        handleResource == null ? "" : handleResource.regex(),
+                        method.getName(),
+                        toRequestHandler(handlerInstance, method)
+                    );
+                }
+            });
+    }
+
+    // adds a handler method, name and regex are the ones of its @HandleResource, both empty if it has none
+    private void registerMethod(HTTPMethod httpMethod, String name, String regex, String methodName, RequestHandler handler) {
+        // methods with a resource only handle requests for that resource
+        boolean hasResource = !name.isEmpty() || !regex.isEmpty();
+        Route route = hasResource ? this.routeFor(name, regex, methodName) : this.defaultRoute;
+        if(route == null)
+            return;
+        Map<HTTPMethod, RequestHandler> methods = route.methods;
+
+        // if we already have a method to handle the given http method, ignore it
+        if(methods.containsKey(httpMethod))
+            LOGGER.warn("Only one method is allowed per HTTP method and resource, ignoring {}", methodName);
+        // else we can handle this http method \o/
+        else {
+            LOGGER.debug("Handler method for {} requests : {}", httpMethod, methodName);
+            methods.put(httpMethod, handler);
+            this.handledMethods.add(httpMethod);
+        }
+    }
+
+    // returns the route described by the @HandleResource of a method, adding it to the router if it is new
+    // returns null if the annotation is invalid
+    private Route routeFor(String name, String regex, String methodName) {
+        if(name.isEmpty() == regex.isEmpty()) {
+            LOGGER.error("@HandleResource of {} needs exactly one of name and regex, ignoring it", methodName);
+            return null;
+        }
+
+        String key = name.isEmpty() ? "regex:" + regex : "name:" + name;
+        Route route = this.routes.get(key);
+        if(route == null) {
+            route = new Route(name.isEmpty() ? regex : name);
+            try {
+                if(name.isEmpty())
+                    this.router.addPattern(regex, route);
+                else
+                    this.router.addPath(name, route);
+            }
+            catch(IllegalArgumentException e) {
+                LOGGER.error("Invalid @HandleResource on {}, ignoring it", methodName, e);
+                return null;
+            }
+            this.routes.put(key, route);
+        }
+        return route;
+    }
+
+    /**
+     * Creates a RequestHandler that calls the given method on the given instance
+     * It is a class generated by LambdaMetafactory, so calling it is a plain interface call that the JIT can inline
+     * If the lambda can't be generated, the method is called through a MethodHandle bound to the instance
+     */
+    private static RequestHandler toRequestHandler(Object handlerInstance, Method method) {
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        MethodType handleType = MethodType.methodType(HTTPResponse.class, HTTPRequest.class);
+        MethodHandles.Lookup lookup;
+        MethodHandle target;
+        try {
+            // the handler class does not have to be public
+            lookup = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup());
+            target = lookup.unreflect(method);
+        }
+        catch(IllegalAccessException e) {
+            throw new IllegalStateException("Can't access handler method " + method.getName(), e);
+        }
+
+        try {
+            CallSite site = LambdaMetafactory.metafactory(
+                lookup,
+                "handleRequest",
+                isStatic ? MethodType.methodType(RequestHandler.class) : MethodType.methodType(RequestHandler.class, method.getDeclaringClass()),
+                handleType,
+                target,
+                handleType
+            );
+            return isStatic
+                ? (RequestHandler)site.getTarget().invoke()
+                : (RequestHandler)site.getTarget().invoke(handlerInstance);
+        }
+        catch(Throwable e) {
+            LOGGER.debug("Could not generate a lambda for {}, using a method handle", method.getName(), e);
+        }
+
+        MethodHandle handle = (isStatic ? target : target.bindTo(handlerInstance)).asType(handleType);
+        return request -> {
+            try {
+                return (HTTPResponse)handle.invokeExact(request);
+            }
+            catch(RuntimeException | Error e) {
+                throw e;
+            }
+            catch(Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    public HeaderBlock defaultHeaders() {
         return this.defaultHeaders;
     }
 
+    /**
+     * Adds a header to all the responses that do not set it, must be called before requests are handled
+     */
+    public void setDefaultHeader(String header, String value) {
+        this.defaultHeaders = this.defaultHeaders.with(header, value);
+        this.notModifiedHeaders = this.defaultHeaders.without(HeaderNames.CONTENT_TYPE);
+        this.buildChains();
+    }
+
+    /**
+     * Makes responses go through the given compressor, or never be compressed if it is null
+     */
+    public void setCompressor(ResponseCompressor compressor) {
+        this.compressor = compressor;
+        this.buildChains();
+    }
+
+    /**
+     * Gives the successful responses (200, 206 and 304) to GET and HEAD requests for the paths starting with the given prefix
+     * the given cache-control header, unless they set one, must be called before requests are handled
+     * When several prefixes match a path, the longest one is used
+     */
+    public void setCacheControl(String pathPrefix, String value) {
+        this.cacheControls.addPath(pathPrefix + '*', value);
+        this.hasCacheControls = true;
+        this.buildChains();
+    }
+
+    /**
+     * Serves the metrics of the server in the Prometheus text format at the given path, must be called before requests are handled
+     */
+    public void setMetricsPath(String path) {
+        Route route = new Route(path);
+        route.methods.put(HTTPMethod.GET, FrameworkRequestHandler::metricsResponse);
+        this.router.addPath(path, route);
+        this.routes.put("metrics:" + path, route);
+        this.buildChains();
+    }
+
+    /**
+     * Adds a filter to the chain requests go through before reaching their handler method, after the filters already added
+     * and the built-in ones, must be called before requests are handled
+     */
+    public void addFilter(RequestFilter filter) {
+        this.filters.add(filter);
+        this.buildChains();
+    }
+
+    // composes the filters in front of the handler methods of every route, the built-in filters are only there when they have work to do
+    private void buildChains() {
+        List<RequestFilter> chain = new ArrayList<>();
+        if(!this.defaultHeaders.isEmpty())
+            chain.add(RequestFilter.after(this::addDefaultHeaders));
+        if(this.compressor != null)
+            chain.add(RequestFilter.after(this::compress));
+        if(this.hasCacheControls)
+            chain.add(RequestFilter.after(this::addCacheControl));
+        chain.addAll(this.filters);
+        RequestFilter[] filters = chain.toArray(new RequestFilter[0]);
+
+        this.defaultRoute.buildChain(filters, request -> this.dispatch(this.defaultRoute, request));
+        for(Route route : this.routes.values())
+            route.buildChain(filters, request -> this.dispatch(route, request));
+    }
+
     @Override
     public HTTPResponse handleRequest(HTTPRequest request) {
-        // find which of our handler methods can handle this request
-        Method handlerMethod = this.defaultMethods.get(request.getMethod());
+        long start = System.nanoTime();
+        // the methods routed to the resource come first, the default methods are used for resources without a route
+        Route route = this.router.find(pathOf(request.getResource()));
+        if(route == null)
+            route = this.defaultRoute;
+
         HTTPResponse response;
+        try {
+            response = route.chain.handleRequest(request);
+        }
+        // the handler methods have their exceptions caught at the end of the chain, these come from a filter
+        catch(RuntimeException e) {
+            LOGGER.error("An error occurred in a request filter", e);
+            response = this.errorResponse(request, e);
+        }
+
+        route.metrics.record(request.getMethod(), response.getStatus(), System.nanoTime() - start);
+        return response;
+    }
+
+    // the end of the chain of a route : finds which of its handler methods can handle this request and calls it
+    private HTTPResponse dispatch(Route route, HTTPRequest request) {
+        RequestHandler handlerMethod = findHandlerMethod(route.methods, request.getMethod());
 
         // if we don't have any method for this request
         if(handlerMethod == null)
-            response = this.noHandlerMethod(request);
-        else {
-            // try to call the handler method
-            try {
-                response = (HTTPResponse)handlerMethod.invoke(this.handlerInstance, request);
-            }
-            // if we can't call the method or it throws an uncaught exception
-            catch(IllegalAccessException | InvocationTargetException e) {
-                LOGGER.error("An error occurred while invoking handler method", e);
-                response = this.errorResponse(e);
-            }
+            return route == this.defaultRoute ? this.noHandlerMethod(request) : this.methodNotAllowed(request, route.methods);
+
+        // try to call the handler method
+        try {
+            return handlerMethod.handleRequest(request);
+        }
+        // if the method throws an uncaught exception (checked exceptions of handler methods get here too)
+        catch(Exception e) {
+            LOGGER.error("An error occurred while invoking handler method", e);
+            return this.errorResponse(request, e);
         }
+    }
 
-        // add the default headers to the response
-        for(String header : this.defaultHeaders.headers()) {
-            if(!response.getHeaders().hasHeader(header))
-                response.getHeaders().setHeader(header, this.defaultHeaders.getHeader(header));
+    // only what caches store gets a cache-control, the handler's own one wins
+    private void addCacheControl(HTTPRequest request, HTTPResponse response) {
+        if(request.getMethod() == HTTPMethod.GET || request.getMethod() == HTTPMethod.HEAD) {
+            HTTPStatus status = response.getStatus();
+            if((status == HTTPStatus.OK || status == HTTPStatus.PARTIAL_CONTENT || status == HTTPStatus.NOT_MODIFIED) && !response.getHeaders().hasHeader(HeaderNames.CACHE_CONTROL)) {
+                String cacheControl = this.cacheControls.find(pathOf(request.getResource()));
+                if(cacheControl != null)
+                    response.getHeaders().setHeader(HeaderNames.CACHE_CONTROL, cacheControl);
+            }
         }
+    }
 
-        return response;
+    private void compress(HTTPRequest request, HTTPResponse response) {
+        this.compressor.compress(request, response, this.defaultHeaders.get(HeaderNames.CONTENT_TYPE));
     }
 
-    // helper method to created a NOT_IMPLEMENTED response
+    // the default headers are added to the response when it is written
+    private void addDefaultHeaders(HTTPRequest request, HTTPResponse response) {
+        response.setDefaultHeaders(response.getStatus() == HTTPStatus.NOT_MODIFIED ? this.notModifiedHeaders : this.defaultHeaders);
+    }
+
+    // HEAD requests are answered like GET requests when there is no method for them, the body is dropped when sending
+    private static RequestHandler findHandlerMethod(Map<HTTPMethod, RequestHandler> methods, HTTPMethod method) {
+        RequestHandler handlerMethod = methods.get(method);
+        if(handlerMethod == null && method == HTTPMethod.HEAD)
+            handlerMethod = methods.get(HTTPMethod.GET);
+        if(handlerMethod == null)
+            handlerMethod = methods.get(HTTPMethod.ANY);
+        return handlerMethod;
+    }
+
+    // the resource without its query string
+    private static String pathOf(String resource) {
+        int query = resource.indexOf('?');
+        return query < 0 ? resource : resource.substring(0, query);
+    }
+
+    // helper method to created a NOT_IMPLEMENTED response, or NOT_FOUND if the method is handled for other resources
+    // a method handling ANY on some resource does not count : the server would never answer NOT_IMPLEMENTED otherwise
     private HTTPResponse noHandlerMethod(HTTPRequest request) {
+        HTTPMethod method = request.getMethod();
+        if(this.handledMethods.contains(method) || (method == HTTPMethod.HEAD && this.handledMethods.contains(HTTPMethod.GET)))
+            return request.response(HTTPStatus.NOT_FOUND);
         LOGGER.warn("No method registered to handle {} requests", request.getMethod());
-        return new HTTPResponse(HTTPStatus.NOT_IMPLEMENTED);
+        return request.response(HTTPStatus.NOT_IMPLEMENTED);
+    }
+
+    // helper method to create a METHOD_NOT_ALLOWED response listing the methods the resource has
+    private HTTPResponse methodNotAllowed(HTTPRequest request, Map<HTTPMethod, RequestHandler> route) {
+        HTTPResponse response = request.response(HTTPStatus.METHOD_NOT_ALLOWED);
+        Set<HTTPMethod> allowed = EnumSet.noneOf(HTTPMethod.class);
+        allowed.addAll(route.keySet());
+        if(allowed.contains(HTTPMethod.GET))
+            allowed.add(HTTPMethod.HEAD);
+        response.getHeaders().setHeader("allow", allowed.stream().map(HTTPMethod::name).collect(Collectors.joining(", ")));
+        return response;
+    }
+
+    // the metrics must never be stored by a cache
+    private static HTTPResponse metricsResponse(HTTPRequest request) {
+        HTTPResponse response = request.response(HTTPStatus.OK);
+        response.getHeaders().setHeader(HeaderNames.CONTENT_TYPE, Metrics.CONTENT_TYPE);
+        response.getHeaders().setHeader(HeaderNames.CACHE_CONTROL, "no-store");
+        response.setBody(Metrics.scrape().getBytes(StandardCharsets.UTF_8));
+        return response;
     }
 
     // helper method to create a INTERNAL_SERVER_ERROR response
     // will show the exception's stack trace on the page
-    private HTTPResponse errorResponse(Exception e) {
-        HTTPResponse response = new HTTPResponse(HTTPStatus.INTERNAL_SERVER_ERROR);
+    // the response the handler may have started is dropped, the same recycled instance is reset for this one
+    private HTTPResponse errorResponse(HTTPRequest request, Exception e) {
+        HTTPResponse response = request.response(HTTPStatus.INTERNAL_SERVER_ERROR);
 
         StringBuilder stringBuilder = new StringBuilder()
             .append("<h1>500 Internal Server Error :</h1>")
@@ -165,4 +503,31 @@ public class FrameworkRequestHandler implements RequestHandler {
 
         return response;
     }
+
+    // the handler methods of a resource, by http method, with the metrics of its requests and the chain they go through
+    private static final class Route {
+        private final Map<HTTPMethod, RequestHandler> methods;
+
+        private final RouteMetrics metrics;
+
+        // the first filter of the chain, or the end of the chain when there are no filters
+        private RequestHandler chain;
+
+        private Route(String name) {
+            this.methods = new EnumMap<>(HTTPMethod.class);
+            this.metrics = Metrics.route(name);
+        }
+
+        // links[i] passes the request to filters[i] with links[i + 1] as the rest of the chain, the last link is the end of the chain
+        private void buildChain(RequestFilter[] filters, RequestHandler end) {
+            RequestHandler[] links = new RequestHandler[filters.length + 1];
+            links[filters.length] = end;
+            for(int i = filters.length - 1; i >= 0; i--) {
+                RequestFilter filter = filters[i];
+                RequestHandler next = links[i + 1];
+                links[i] = request -> filter.filter(request, next);
+            }
+            this.chain = links[0];
+        }
+    }
 }
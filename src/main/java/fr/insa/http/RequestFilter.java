@@ -0,0 +1,37 @@
+package fr.insa.http;
+
+import fr.insa.http.messages.HTTPRequest;
+import fr.insa.http.messages.HTTPResponse;
+
+import java.util.function.BiConsumer;
+
+/**
+ * A step of the chain a request goes through before reaching its handler method, added with FrameworkRequestHandler.addFilter()
+ * A filter gets the request and the rest of the chain : it can change the request, answer it without calling next,
+ * or change the response next returns
+ */
+@FunctionalInterface
+public interface RequestFilter {
+    HTTPResponse filter(HTTPRequest request, RequestHandler next);
+
+    /**
+     * A filter running before the rest of the chain, which is skipped when the given handler returns a response instead of null
+     */
+    static RequestFilter before(RequestHandler before) {
+        return (request, next) -> {
+            HTTPResponse response = before.handleRequest(request);
+            return response != null ? response : next.handleRequest(request);
+        };
+    }
+
+    /**
+     * A filter changing the response of the rest of the chain
+     */
+    static RequestFilter after(BiConsumer<HTTPRequest, HTTPResponse> after) {
+        return (request, next) -> {
+            HTTPResponse response = next.handleRequest(request);
+            after.accept(request, response);
+            return response;
+        };
+    }
+}
@@ -1,11 +1,24 @@
 package fr.insa.http;
 
+import fr.insa.http.executors.BoundedConnectionExecutor;
+import fr.insa.http.executors.ConnectionExecutor;
+import fr.insa.http.executors.RejectionPolicy;
+import fr.insa.http.executors.VirtualThreadConnectionExecutor;
+import fr.insa.http.logging.AccessLog;
+import fr.insa.http.messages.HTTPRequest;
+import fr.insa.http.messages.HTTPRequestDecoder;
+import fr.insa.http.messages.ResponseCompressor;
+import fr.insa.http.metrics.Metrics;
+import fr.insa.http.nio.NioServer;
+import fr.insa.http.util.BufferPool;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Paths;
 
 public class Server {
     private static final Logger LOGGER = LogManager.getLogger(Server.class);
@@ -13,14 +26,28 @@ public class Server {
     public static void main(String[] args) {
         // sets proper line separator according to http specification
         System.setProperty("line.separator", "\r\n");
-        int port = 8080;
+        int port = ServerConfig.getInt(ServerConfig.PORT, 8080);
         LOGGER.info("Starting server on port {}", port);
+        HTTPRequest.maxBodySize = ServerConfig.getBytes(ServerConfig.MAX_BODY_SIZE, HTTPRequest.maxBodySize);
+        HTTPRequestDecoder.maxBufferedBodySize = ServerConfig.getBytes(ServerConfig.NIO_MAX_BODY_SIZE, HTTPRequestDecoder.maxBufferedBodySize);
+        HTTPRequest.maxHeadSize = (int)ServerConfig.getBytes(ServerConfig.MAX_HEAD_SIZE, HTTPRequest.maxHeadSize);
+        HTTPRequest.maxRequestLineSize = (int)ServerConfig.getBytes(ServerConfig.MAX_REQUEST_LINE, HTTPRequest.maxRequestLineSize);
+        BufferPool.maxPooledBytes = ServerConfig.getBytes(ServerConfig.BUFFER_POOL_SIZE, BufferPool.maxPooledBytes);
+        BufferPool.leakDetection = ServerConfig.getBoolean(ServerConfig.BUFFER_LEAK_DETECTION, BufferPool.leakDetection);
+        startAccessLog();
         try {
-            ServerSocket serverSocket = new ServerSocket(port);
             RequestHandler requestHandler = createRequestHandler();
-            while(true) {
-                Socket socket = serverSocket.accept();
-                new WorkerThread(socket, requestHandler).start();
+            ConnectionExecutor executor = createConnectionExecutor();
+            Metrics.setExecutor(executor);
+            String io = ServerConfig.getString(ServerConfig.IO, "blocking");
+            if("nio".equals(io)) {
+                int loopCount = ServerConfig.getInt(ServerConfig.NIO_THREADS, Runtime.getRuntime().availableProcessors());
+                new NioServer(port, requestHandler, executor, loopCount).run();
+            }
+            else {
+                if(!"blocking".equals(io))
+                    LOGGER.warn("Unknown io mode '{}', using blocking sockets", io);
+                runBlocking(port, requestHandler, executor);
             }
         }
         catch(IOException e) {
@@ -28,10 +55,84 @@ public class Server {
         }
     }
 
+    // accepts connections forever, each one is handled by a WorkerThread on the executor
+    private static void runBlocking(int port, RequestHandler requestHandler, ConnectionExecutor executor) throws IOException {
+        // a blocking channel gives sockets that can send files with FileChannel.transferTo
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        RejectionPolicy rejectionPolicy = createRejectionPolicy();
+        while(true) {
+            Socket socket = serverChannel.accept().socket();
+            WorkerThread worker = new WorkerThread(socket, requestHandler);
+            if(!executor.tryExecute(worker)) {
+                LOGGER.warn("Connection rejected ({}) : {}", rejectionPolicy, executor);
+                rejectionPolicy.reject(socket, worker);
+            }
+        }
+    }
+
+    // requests are logged to a file by a background thread, not through log4j
+    private static void startAccessLog() {
+        String file = ServerConfig.getString(ServerConfig.ACCESS_LOG, "access.log");
+        if(file.isBlank())
+            return;
+        try {
+            AccessLog.start(Paths.get(file), ServerConfig.getInt(ServerConfig.ACCESS_LOG_BUFFER, 8192));
+            LOGGER.info("Logging requests to {}", file);
+        }
+        catch(IOException e) {
+            LOGGER.warn("Can't open the access log {}, requests will not be logged", file, e);
+        }
+    }
+
     public static RequestHandler createRequestHandler() {
         FrameworkRequestHandler requestHandler = new FrameworkRequestHandler();
-        requestHandler.defaultHeaders().setHeader("content-type", "text/html");
-        requestHandler.defaultHeaders().setHeader("server", "Simple HTTP Server");
+        requestHandler.setDefaultHeader("content-type", "text/html");
+        requestHandler.setDefaultHeader("server", "Simple HTTP Server");
+        if(ServerConfig.getBoolean(ServerConfig.COMPRESSION, true))
+            requestHandler.setCompressor(new ResponseCompressor((int)ServerConfig.getBytes(ServerConfig.COMPRESSION_MIN_SIZE, 1024)));
+        for(String rule : ServerConfig.getString(ServerConfig.CACHE_CONTROL, "").split(";")) {
+            int separator = rule.indexOf('=');
+            if(separator > 0)
+                requestHandler.setCacheControl(rule.substring(0, separator).strip(), rule.substring(separator + 1).strip());
+            else if(!rule.isBlank())
+                LOGGER.warn("Invalid cache-control rule '{}', expected prefix=value", rule);
+        }
+        String metricsPath = ServerConfig.getString(ServerConfig.METRICS_PATH, "/metrics");
+        if(!metricsPath.isBlank())
+            requestHandler.setMetricsPath(metricsPath.strip());
         return requestHandler;
     }
+
+    public static ConnectionExecutor createConnectionExecutor() {
+        String mode = ServerConfig.getString(ServerConfig.EXECUTOR, "pool");
+        if("virtual".equals(mode)) {
+            try {
+                ConnectionExecutor executor = new VirtualThreadConnectionExecutor(ServerConfig.getInt(ServerConfig.VIRTUAL_MAX, 10000));
+                LOGGER.info("Handling connections with virtual threads");
+                return executor;
+            }
+            catch(UnsupportedOperationException e) {
+                LOGGER.warn("{}, falling back to a thread pool", e.getMessage());
+            }
+        }
+        else if(!"pool".equals(mode))
+            LOGGER.warn("Unknown executor '{}', using a thread pool", mode);
+
+        int poolSize = ServerConfig.getInt(ServerConfig.POOL_SIZE, Runtime.getRuntime().availableProcessors() * 8);
+        int queueLimit = ServerConfig.getInt(ServerConfig.POOL_QUEUE, 256);
+        LOGGER.info("Handling connections with a pool of {} threads and a queue of {}", poolSize, queueLimit);
+        return new BoundedConnectionExecutor(poolSize, queueLimit);
+    }
+
+    public static RejectionPolicy createRejectionPolicy() {
+        String name = ServerConfig.getString(ServerConfig.REJECTION_POLICY, RejectionPolicy.SERVICE_UNAVAILABLE.name());
+        try {
+            return RejectionPolicy.valueOf(name.toUpperCase());
+        }
+        catch(IllegalArgumentException e) {
+            LOGGER.warn("Unknown rejection policy '{}', using {}", name, RejectionPolicy.SERVICE_UNAVAILABLE);
+            return RejectionPolicy.SERVICE_UNAVAILABLE;
+        }
+    }
 }
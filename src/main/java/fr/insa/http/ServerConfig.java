@@ -0,0 +1,151 @@
+package fr.insa.http;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Server settings, read from system properties (e.g. -Dhttp.port=8081) and falling back to defaults
+ */
+public final class ServerConfig {
+    private static final Logger LOGGER = LogManager.getLogger(ServerConfig.class);
+
+    // the port the server listens on
+    public static final String PORT = "http.port";
+
+    // how connections are read and written : "blocking" for a thread per connection or "nio" for selector loops
+    public static final String IO = "http.io";
+    // number of selector loops in nio mode
+    public static final String NIO_THREADS = "http.nio.threads";
+    // nio connections keep a body in memory until all of it has arrived, bigger bodies are refused with a 413
+    public static final String NIO_MAX_BODY_SIZE = "http.nio.body.max";
+
+    // how connections are executed : "pool" or "virtual"
+    public static final String EXECUTOR = "http.executor";
+    // number of threads of the bounded pool
+    public static final String POOL_SIZE = "http.pool.size";
+    // number of connections that can wait for a thread of the bounded pool
+    public static final String POOL_QUEUE = "http.pool.queue";
+    // maximum number of connections handled at once in virtual thread mode (0 means no limit)
+    public static final String VIRTUAL_MAX = "http.virtual.max";
+    // what to do with a connection when the executor is full : SERVICE_UNAVAILABLE, CLOSE or CALLER_RUNS
+    public static final String REJECTION_POLICY = "http.rejection";
+
+    // milliseconds a connection can stay idle between two requests before being closed
+    public static final String KEEP_ALIVE_TIMEOUT = "http.keepalive.timeout";
+    // number of requests after which a connection is closed
+    public static final String KEEP_ALIVE_MAX = "http.keepalive.max";
+
+    // requests with a bigger body are refused with a 413
+    public static final String MAX_BODY_SIZE = "http.body.max";
+    // requests with a bigger head are refused with a 431
+    public static final String MAX_HEAD_SIZE = "http.head.max";
+    // requests with a longer request line are refused with a 414
+    public static final String MAX_REQUEST_LINE = "http.requestline.max";
+
+    // milliseconds the head of a request can take to arrive once its first byte did, before a 408
+    public static final String HEAD_TIMEOUT = "http.timeout.head";
+    // milliseconds over which the rate of a request body is measured, slower bodies get a 408
+    public static final String BODY_TIMEOUT = "http.timeout.body";
+    // bytes per second a request body must at least arrive at
+    public static final String BODY_MIN_RATE = "http.timeout.body.rate";
+    // milliseconds a client can go without accepting any byte of a response before the connection is closed
+    public static final String WRITE_TIMEOUT = "http.timeout.write";
+
+    // bytes of free buffers kept by each buffer pool (heap and direct) for the next connections
+    public static final String BUFFER_POOL_SIZE = "http.buffers.pool";
+    // whether buffer arenas that are never closed are logged with where they were created, for debugging
+    public static final String BUFFER_LEAK_DETECTION = "http.buffers.debug";
+
+    // total size of the files kept in memory by the static file cache (0 disables it)
+    public static final String FILE_CACHE_SIZE = "http.cache.size";
+    // files bigger than this are never kept in memory, they are sent from disk with FileChannel.transferTo
+    public static final String FILE_CACHE_MAX_FILE = "http.cache.maxfile";
+    // whether static files are mapped in memory and sent from their mapping instead of being read
+    public static final String MMAP = "http.mmap";
+    // total size of the mapped files, bigger files are handled as without mappings
+    public static final String MMAP_SIZE = "http.mmap.size";
+    // number of files mapped at once
+    public static final String MMAP_FILES = "http.mmap.files";
+
+    // whether responses are compressed for the clients that accept it
+    public static final String COMPRESSION = "http.compression";
+    // bodies smaller than this are sent as they are
+    public static final String COMPRESSION_MIN_SIZE = "http.compression.min";
+
+    // cache-control headers by path prefix, as "prefix=value" separated by ';' (e.g. "/gif/=max-age=86400;/=no-cache")
+    public static final String CACHE_CONTROL = "http.cachecontrol";
+
+    // file the access log is appended to, in the Combined Log Format (empty disables it)
+    public static final String ACCESS_LOG = "http.accesslog";
+    // number of entries that can wait for the access log writer, more are dropped
+    public static final String ACCESS_LOG_BUFFER = "http.accesslog.buffer";
+
+    // whether to find the @HTTPHandler classes by scanning the classpath even when the index generated at compile time is there
+    public static final String HANDLER_SCAN = "http.handlers.scan";
+
+    // path the metrics are served at in the Prometheus text format (empty disables it)
+    public static final String METRICS_PATH = "http.metrics.path";
+
+    private ServerConfig() {}
+
+    public static String getString(String key, String defaultValue) {
+        return System.getProperty(key, defaultValue);
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = System.getProperty(key);
+        if(value == null)
+            return defaultValue;
+        try {
+            return Integer.parseInt(value.strip());
+        }
+        catch(NumberFormatException e) {
+            LOGGER.warn("Invalid value '{}' for {}, using {}", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = System.getProperty(key);
+        if(value == null)
+            return defaultValue;
+        try {
+            return Long.parseLong(value.strip());
+        }
+        catch(NumberFormatException e) {
+            LOGGER.warn("Invalid value '{}' for {}, using {}", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a size in bytes, which can have a k, m or g suffix (e.g. 64m)
+     */
+    public static long getBytes(String key, long defaultValue) {
+        String value = System.getProperty(key);
+        if(value == null)
+            return defaultValue;
+        String size = value.strip().toLowerCase();
+        long unit = 1;
+        if(size.endsWith("k"))
+            unit = 1024;
+        else if(size.endsWith("m"))
+            unit = 1024 * 1024;
+        else if(size.endsWith("g"))
+            unit = 1024 * 1024 * 1024;
+        if(unit != 1)
+            size = size.substring(0, size.length() - 1);
+        try {
+            return Long.parseLong(size.strip()) * unit;
+        }
+        catch(NumberFormatException e) {
+            LOGGER.warn("Invalid value '{}' for {}, using {}", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = System.getProperty(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.strip());
+    }
+}
@@ -2,20 +2,42 @@ package fr.insa.http;
 
 import fr.insa.http.annotations.HTTPHandler;
 import fr.insa.http.annotations.HandleMethod;
+import fr.insa.http.annotations.HandleResource;
 import fr.insa.http.enums.HTTPMethod;
 import fr.insa.http.enums.HTTPStatus;
+import fr.insa.http.files.CachedFile;
+import fr.insa.http.files.FileCache;
+import fr.insa.http.files.GalleryIndex;
+import fr.insa.http.messages.ByteRange;
+import fr.insa.http.messages.FileBody;
+import fr.insa.http.messages.HTTPParseException;
 import fr.insa.http.messages.HTTPRequest;
 import fr.insa.http.messages.HTTPResponse;
+import fr.insa.http.messages.MultipartReader;
+import fr.insa.http.messages.Preconditions;
+import fr.insa.http.messages.ResponseCompressor;
+import fr.insa.http.util.ChannelOutputStream;
+import fr.insa.http.util.Compression;
+import fr.insa.http.util.HeaderNames;
 import fr.insa.http.util.Util;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.zip.GZIPInputStream;
 
 @HTTPHandler
@@ -24,101 +46,225 @@ public class SimpleHandler {
 
     private String root;
 
+    private FileCache fileCache;
+
+    private GalleryIndex gallery;
+
     public SimpleHandler() {
         root = "./www";
+        long minCompressBytes = ServerConfig.getBoolean(ServerConfig.COMPRESSION, true) ? ServerConfig.getBytes(ServerConfig.COMPRESSION_MIN_SIZE, 1024) : -1;
+        boolean mmap = ServerConfig.getBoolean(ServerConfig.MMAP, false);
+        this.fileCache = new FileCache(
+            Paths.get(this.root),
+            ServerConfig.getBytes(ServerConfig.FILE_CACHE_SIZE, 32 * 1024 * 1024),
+            ServerConfig.getBytes(ServerConfig.FILE_CACHE_MAX_FILE, 256 * 1024),
+            minCompressBytes,
+            mmap ? ServerConfig.getBytes(ServerConfig.MMAP_SIZE, 1024 * 1024 * 1024) : 0,
+            mmap ? ServerConfig.getInt(ServerConfig.MMAP_FILES, 1024) : 0
+        );
+        this.gallery = new GalleryIndex(Paths.get(this.root, "gif-gallery.html"), Paths.get(this.root, "gif"), "/gif/", minCompressBytes);
+    }
+
+    @HandleMethod(HTTPMethod.ANY)
+    @HandleResource(name = "/")
+    public HTTPResponse handleRoot(HTTPRequest request) {
+        HTTPResponse response = request.response(HTTPStatus.MOVED_PERMANENTLY);
+        response.getHeaders().setHeader("location", "/index.html");
+        return response;
     }
 
+    @HandleMethod(HTTPMethod.GET)
+    @HandleResource(name = "/gif-gallery.html")
+    public HTTPResponse handleGallery(HTTPRequest request) {
+        // the page is kept up to date by the index, it is sent like a cached file
+        CachedFile page = this.gallery.page();
+        if(page == null)
+            return this.notFound(request);
+        return this.fileResponse(request, page);
+    }
+
+    // HEAD requests are handled here too, the framework drops the body
     @HandleMethod(HTTPMethod.GET)
     public HTTPResponse handleGet(HTTPRequest request) {
         String resource = request.getResource();
 
         try {
-            if("/".equals(resource)) {
-                HTTPResponse response = new HTTPResponse(HTTPStatus.MOVED_PERMANENTLY);
-                response.getHeaders().setHeader("location", "/index.html");
-                return response;
-            }
-            else if("/gif-gallery.html".equals(resource)) {
-                byte[] data = this.readFile(this.root + resource);
-                File gifDir = new File(this.root + "/gif");
-                StringBuilder stringBuilder = new StringBuilder();
-                Arrays.stream(Objects.requireNonNull(gifDir.list()))
-                      .map(filename -> "<img src=\"/gif/" + filename + "\"/>")
-                      .forEach(stringBuilder::append);
-                stringBuilder.append("</div></body></html>");
-                byte[] moreData = stringBuilder.toString().getBytes();
-                byte[] allTheData = Util.concatenateArrays(data, moreData);
-
-                HTTPResponse response = new HTTPResponse(HTTPStatus.OK);
-                response.getHeaders().setHeader("content-length", Integer.toString(allTheData.length));
-                response.setBody(allTheData);
-                return response;
-            }
-            else {
-                byte[] data = this.readFile(this.root + resource);
-                String contentType = this.getFileContentType(this.root + resource);
-                HTTPResponse response = new HTTPResponse(HTTPStatus.OK);
-                if(contentType != null)
-                    response.getHeaders().setHeader("content-type", contentType);
-                response.getHeaders().setHeader("content-length", Integer.toString(data.length));
-                response.setBody(data);
-                return response;
-            }
+            return this.fileResponse(request, this.fileCache.get(resource));
         }
         catch(NullPointerException | IOException e) {
-            return this.notFound();
+            return this.notFound(request);
+        }
+    }
+
+    // answers a GET or a HEAD for the given file, with validators, its gzip variant and ranges
+    private HTTPResponse fileResponse(HTTPRequest request, CachedFile file) {
+        // the gzip variant is compressed once by the cache, responses with a content-encoding are not compressed again
+        boolean gzip = file.hasGzip() && Compression.accepts(request.getHeaders().getHeader(HeaderNames.ACCEPT_ENCODING), Compression.GZIP);
+
+        String entityTag = gzip ? file.getGzipEntityTag() : file.getEntityTag();
+
+        HTTPResponse response = request.response(HTTPStatus.OK);
+        response.getHeaders().setHeader("etag", entityTag);
+        response.getHeaders().setHeader("last-modified", file.getLastModifiedDate());
+        if(file.hasGzip())
+            ResponseCompressor.addVary(response.getHeaders(), HeaderNames.ACCEPT_ENCODING);
+
+        // the client has this version of the file in its cache
+        if(Preconditions.isNotModified(request, file.getEntityTag(), file.getLastModified()))
+            return response.setStatus(HTTPStatus.NOT_MODIFIED);
+
+        if(file.getContentType() != null)
+            response.getHeaders().setHeader("content-type", file.getContentType());
+        response.getHeaders().setHeader("accept-ranges", "bytes");
+        byte[] data = gzip ? file.getGzipData() : file.getData();
+        ByteBuffer mapped = gzip ? file.getGzipMappedData() : file.getMappedData();
+        Path path = gzip ? file.getGzipPath() : file.getPath();
+        long length = gzip ? file.getGzipLength() : file.getLength();
+
+        // a client resuming a download or seeking in a media only gets the parts it asks for
+        List<ByteRange> ranges = Preconditions.ifRangeMatches(request, entityTag, file.getLastModified())
+            ? ByteRange.parse(request.getHeaders().getHeader(HeaderNames.RANGE), length)
+            : null;
+        if(ranges != null && ranges.isEmpty()) {
+            response.setStatus(HTTPStatus.REQUESTED_RANGE_NOT_SATIFIABLE);
+            response.getHeaders().setHeader("content-range", ByteRange.unsatisfiedContentRange(length));
+            return response;
         }
+        if(gzip)
+            response.getHeaders().setHeader("content-encoding", Compression.GZIP);
+        if(ranges == null)
+            setFileBody(response, data, mapped, path, length, gzip ? file.getGzipContentLength() : file.getContentLength());
+        else
+            setRangeBody(response, ranges, data, mapped, path, length);
+        return response;
     }
 
     @HandleMethod(HTTPMethod.POST)
-    public HTTPResponse handlePost(HTTPRequest request) throws IOException {
-        if("/gif".equals(request.getResource())) {
-            UUID uuid = UUID.randomUUID();
-            Base64.Decoder base64 = Base64.getDecoder();
-            byte[] data = base64.decode(request.getBody());
-            this.writeToFile(this.root + "/gif/" + uuid.toString() + ".gif", data);
-            return new HTTPResponse(HTTPStatus.OK);
+    @HandleResource(name = "/gif")
+    public HTTPResponse handleGifUpload(HTTPRequest request) {
+        try {
+            // the upload is decoded as it arrives, it is never held in memory
+            InputStream data = this.gifUploadData(request);
+            if(data == null)
+                return request.response(HTTPStatus.UNSUPPORTED_MEDIA_TYPE);
+            return this.storeByContent(request, Paths.get(this.root, "gif"), "/gif/", data, ".gif");
+        }
+        // failures to store the upload are answered by storeByContent, what is left is the upload's fault
+        catch(IOException e) {
+            LOGGER.warn("Invalid gif upload : {}", e.getMessage());
+            return request.response(HTTPStatus.BAD_REQUEST);
         }
-        return this.notFound();
     }
 
-    @HandleMethod(HTTPMethod.HEAD)
-    public HTTPResponse handleHead(HTTPRequest request) {
-        String resource = request.getResource();
+    // the gif of an upload : the raw body for image/gif, the file part for multipart/form-data,
+    // and the body decoded from Base64 otherwise, as older clients send it, null if the upload is not a gif
+    private InputStream gifUploadData(HTTPRequest request) throws IOException {
+        String contentType = request.getHeaders().getHeader(HeaderNames.CONTENT_TYPE);
+        String mediaType = contentType == null ? "" : contentType.split(";", 2)[0].strip().toLowerCase(Locale.ROOT);
+        if(mediaType.equals("image/gif"))
+            return request.getBodyStream();
+        if(mediaType.equals("multipart/form-data")) {
+            String boundary = MultipartReader.boundaryOf(contentType);
+            if(boundary == null)
+                throw new IOException("Multipart upload without a boundary");
+            MultipartReader reader = new MultipartReader(request.getBodyStream(), boundary);
+            MultipartReader.Part part;
+            while((part = reader.nextPart()) != null) {
+                if(part.getFilename() == null)
+                    continue;
+                String partType = part.getHeaders().getHeader(HeaderNames.CONTENT_TYPE);
+                return partType == null || partType.strip().equalsIgnoreCase("image/gif") ? part.getContent() : null;
+            }
+            throw new IOException("Multipart upload without a file");
+        }
+        if(mediaType.isEmpty() || mediaType.equals("text/plain"))
+            return Base64.getDecoder().wrap(request.getBodyStream());
+        return null;
+    }
 
+    // the data is hashed while it is written to a temporary file, which is then renamed after its hash :
+    // a file that was already uploaded is found by its name, it is not stored twice and nothing is read again
+    // only the errors of the upload are thrown, those of the file system are answered with a 500
+    private HTTPResponse storeByContent(HTTPRequest request, Path directory, String urlPrefix, InputStream data, String extension) throws IOException {
+        MessageDigest digest;
         try {
-            if("/".equals(resource)) {
-                HTTPResponse response = new HTTPResponse(HTTPStatus.MOVED_PERMANENTLY);
-                response.getHeaders().setHeader("location", "/index.html");
-                return response;
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(directory.toAbsolutePath(), ".upload-", ".tmp");
+            InputStream upload = new UploadInputStream(data);
+            if(Files.copy(new DigestInputStream(upload, digest), tempFile, StandardCopyOption.REPLACE_EXISTING) == 0)
+                throw new HTTPParseException(HTTPStatus.BAD_REQUEST, "Empty upload");
+            String name = Util.toHex(digest.digest()) + extension;
+            Path targetFile = directory.resolve(name);
+
+            HTTPResponse response = request.response(Files.exists(targetFile) ? HTTPStatus.OK : HTTPStatus.CREATED);
+            response.getHeaders().setHeader(HeaderNames.LOCATION, urlPrefix + name);
+            if(response.getStatus() == HTTPStatus.CREATED) {
+                // two uploads of the same file race to the same content, whichever move comes last changes nothing
+                Files.move(tempFile, targetFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                this.fileCache.invalidate(targetFile);
+                this.gallery.refresh(targetFile);
             }
-            else if("/gif-gallery.html".equals(resource)) {
-                byte[] data = this.readFile(this.root + resource);
-                File gifDir = new File(this.root + "/gif");
-                StringBuilder stringBuilder = new StringBuilder();
-                Arrays.stream(Objects.requireNonNull(gifDir.list()))
-                        .map(filename -> "<img src=\"/gif/" + filename + "\"/>")
-                        .forEach(stringBuilder::append);
-                stringBuilder.append("</div></body></html>");
-                byte[] moreData = stringBuilder.toString().getBytes();
-                byte[] allTheData = Util.concatenateArrays(data, moreData);
-
-                HTTPResponse response = new HTTPResponse(HTTPStatus.OK);
-                response.getHeaders().setHeader("content-length", Integer.toString(allTheData.length));
-                return response;
+            return response;
+        }
+        catch(HTTPParseException e) {
+            throw e;
+        }
+        // a full disk or a directory we can't write to is not the client's fault
+        catch(IOException e) {
+            LOGGER.error("Could not store an upload in {}", directory, e);
+            return request.response(HTTPStatus.INTERNAL_SERVER_ERROR);
+        }
+        finally {
+            if(tempFile != null)
+                deleteQuietly(tempFile);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        }
+        catch(IOException e) {
+            LOGGER.warn("Could not delete {}", file, e);
+        }
+    }
+
+    // the errors of reading an upload are the client's, an invalid encoding or a body that stopped arriving :
+    // they become HTTPParseExceptions, told apart from those of writing the upload to disk
+    private static final class UploadInputStream extends FilterInputStream {
+        UploadInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
             }
-            else {
-                byte[] data = this.readFile(this.root + resource);
-                String contentType = this.getFileContentType(this.root + resource);
-                HTTPResponse response = new HTTPResponse(HTTPStatus.OK);
-                if(contentType != null)
-                    response.getHeaders().setHeader("content-type", contentType);
-                response.getHeaders().setHeader("content-length", Integer.toString(data.length));
-                return response;
+            catch(IOException e) {
+                throw invalid(e);
             }
         }
-        catch(NullPointerException | IOException e) {
-            return this.notFound();
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                return super.read(buffer, offset, length);
+            }
+            catch(IOException e) {
+                throw invalid(e);
+            }
+        }
+
+        private static HTTPParseException invalid(IOException e) {
+            return e instanceof HTTPParseException ? (HTTPParseException)e : new HTTPParseException(HTTPStatus.BAD_REQUEST, e.getMessage(), e);
         }
     }
 
@@ -127,33 +273,23 @@ public class SimpleHandler {
         String resource = request.getResource();
 
         try {
-            if("/".equals(resource)) {
-                HTTPResponse response = new HTTPResponse(HTTPStatus.MOVED_PERMANENTLY);
-                response.getHeaders().setHeader("location", "/index.html");
-                return response;
+            Path path = this.fileOf(resource);
+            if(path == null)
+                return request.response(HTTPStatus.NOT_FOUND);
+            File file = path.toFile();
+            if(!file.exists()){
+                return request.response(HTTPStatus.NOT_FOUND);
             }
-            else if("/gif-gallery.html".equals(resource)) {
-                return new HTTPResponse(HTTPStatus.METHOD_NOT_ALLOWED);
+            String contentType = this.getFileContentType(path.toString());
+            // a missing content-type does not match either
+            if(contentType != null && !contentType.equals(request.getHeaders().getHeader("content-type"))) {
+                return request.response(HTTPStatus.BAD_REQUEST);
             }
-            else {
-                File file = new File(this.root + resource);
-                if(!file.exists()){
-                    return new HTTPResponse(HTTPStatus.NOT_FOUND);
-                }
-                String contentType = this.getFileContentType(this.root + resource);
-                if(contentType != null && !contentType.equals(request.getHeaders().getHeader("content-type"))) {
-                    return new HTTPResponse(HTTPStatus.BAD_REQUEST);
-                }
-                byte[] data = request.getBody();
-                this.writeToFile(this.root + resource, data);
-                return new HTTPResponse(HTTPStatus.OK);
-            }
-        }
-        catch(NoSuchElementException e){
-            return new HTTPResponse(HTTPStatus.BAD_REQUEST);
+            this.writeToFile(path.toString(), request.getBodyStream());
+            return request.response(HTTPStatus.OK);
         }
         catch(NullPointerException | IOException e) {
-            return this.notFound();
+            return this.notFound(request);
         }
     }
 
@@ -162,61 +298,121 @@ public class SimpleHandler {
         String resource = request.getResource();
 
         try {
-            if("/".equals(resource)) {
-                HTTPResponse response = new HTTPResponse(HTTPStatus.MOVED_PERMANENTLY);
-                response.getHeaders().setHeader("location", "/index.html");
-                return response;
-            }
-            else if("/gif-gallery.html".equals(resource)) {
-                return new HTTPResponse(HTTPStatus.METHOD_NOT_ALLOWED);
+            Path path = this.fileOf(resource);
+            if(path == null)
+                return request.response(HTTPStatus.NOT_FOUND);
+            File file = path.toFile();
+            if(!file.exists()){
+                return request.response(HTTPStatus.NOT_FOUND);
             }
-            else {
-                File file = new File(this.root + resource);
-                if(!file.exists()){
-                    return new HTTPResponse(HTTPStatus.NOT_FOUND);
-                }
-                if(!file.delete()){
-                    HTTPResponse response = new HTTPResponse(HTTPStatus.INTERNAL_SERVER_ERROR);
-                    response.setBody("<h1>The file could not be deleted</h1>");
-                }
-                return new HTTPResponse(HTTPStatus.OK);
+            boolean deleted = file.delete();
+            this.fileCache.invalidate(file.toPath());
+            this.gallery.refresh(file.toPath());
+            if(!deleted){
+                HTTPResponse response = request.response(HTTPStatus.INTERNAL_SERVER_ERROR);
+                response.setBody("<h1>The file could not be deleted</h1>");
+                return response;
             }
-        }
-        catch(NoSuchElementException e){
-            return new HTTPResponse(HTTPStatus.BAD_REQUEST);
+            return request.response(HTTPStatus.OK);
         }
         catch(NullPointerException e) {
-            return this.notFound();
+            return this.notFound(request);
         }
     }
 
-    private byte[] readFile(String path) throws IOException {
-        File requestedFile = new File(path);
-        if(!requestedFile.exists() || !requestedFile.canRead())
-            throw new FileNotFoundException("File " + requestedFile + " does not exist or is not readable");
-        String contentType = Files.probeContentType(requestedFile.toPath());
-        return Files.readAllBytes(requestedFile.toPath());
+    // big files are sent straight from disk, mapped files from their mapping
+    private static void setFileBody(HTTPResponse response, byte[] data, ByteBuffer mapped, Path path, long length, String contentLength) {
+        response.getHeaders().setHeader("content-length", contentLength);
+        if(data != null)
+            response.setBody(data);
+        else if(mapped != null)
+            response.setBody(mapped.duplicate());
+        else
+            response.setBody(new FileBody(path, length));
+    }
+
+    // a single range is sent as it is, several ranges as the parts of a multipart/byteranges body
+    // only the bytes of the ranges are read from the file
+    private static void setRangeBody(HTTPResponse response, List<ByteRange> ranges, byte[] data, ByteBuffer mapped, Path path, long length) {
+        response.setStatus(HTTPStatus.PARTIAL_CONTENT);
+        if(ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            response.getHeaders().setHeader("content-range", range.toContentRange(length));
+            response.getHeaders().setHeader("content-length", Long.toString(range.getLength()));
+            if(data != null)
+                response.setBody(Arrays.copyOfRange(data, (int)range.getStart(), (int)range.getEnd() + 1));
+            else if(mapped != null)
+                response.setBody(slice(mapped, range));
+            else
+                response.setBody(new FileBody(path, range.getStart(), range.getLength()));
+            return;
+        }
+
+        // the length of the whole body is known before writing it, so it is not sent in chunks
+        String contentType = response.getHeaders().getHeader("content-type");
+        String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong()) + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        byte[][] partHeads = new byte[ranges.size()][];
+        long bodyLength = 0;
+        for(int i = 0; i < ranges.size(); i++) {
+            String partHead = "\r\n--" + boundary + "\r\n"
+                + (contentType == null ? "" : "content-type:" + contentType + "\r\n")
+                + "content-range:" + ranges.get(i).toContentRange(length) + "\r\n\r\n";
+            partHeads[i] = partHead.getBytes(StandardCharsets.ISO_8859_1);
+            bodyLength += partHeads[i].length + ranges.get(i).getLength();
+        }
+        byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        bodyLength += end.length;
+
+        response.getHeaders().setHeader("content-type", "multipart/byteranges; boundary=" + boundary);
+        response.getHeaders().setHeader("content-length", Long.toString(bodyLength));
+        response.setBody(out -> {
+            for(int i = 0; i < ranges.size(); i++) {
+                ByteRange range = ranges.get(i);
+                out.write(partHeads[i]);
+                if(data != null)
+                    out.write(data, (int)range.getStart(), (int)range.getLength());
+                else if(mapped != null)
+                    ChannelOutputStream.write(out, slice(mapped, range));
+                else
+                    new FileBody(path, range.getStart(), range.getLength()).writeTo(out);
+            }
+            out.write(end);
+        });
+    }
+
+    // the bytes of the range, sharing the mapping, the range is within a mapped file so it fits in an int
+    private static ByteBuffer slice(ByteBuffer mapped, ByteRange range) {
+        ByteBuffer slice = mapped.duplicate();
+        slice.position((int)range.getStart()).limit((int)range.getEnd() + 1);
+        return slice.slice();
     }
 
-    private void writeToFile(String path, byte[] data) throws IOException {
+    // the file a resource names, null if it is not under the root, like /../x, as the file cache does for GET
+    private Path fileOf(String resource) {
+        Path root = Paths.get(this.root).toAbsolutePath().normalize();
+        Path path = Paths.get(this.root, resource).toAbsolutePath().normalize();
+        return path.startsWith(root) ? path : null;
+    }
+
+    private void writeToFile(String path, InputStream data) throws IOException {
         this.writeToFile(path, data, false);
     }
 
-    private void writeToFile(String path, byte[] data, boolean gzip) throws IOException {
-        byte[] fileData = new byte[0];
-        if(gzip) {
-            GZIPInputStream gzipIn = new GZIPInputStream(new ByteArrayInputStream(data));
-            byte[] buffer = new byte[1024];
-            int count = gzipIn.read(buffer, 0, buffer.length);
-            do {
-                fileData = Util.concatenateArrays(fileData, 0, fileData.length, buffer, 0, count);
-                count = gzipIn.read(buffer, 0, buffer.length);
-            } while(count != -1);
+    // the data is written to a temporary file which then replaces the target, so readers never see a partial file
+    private void writeToFile(String path, InputStream data, boolean gzip) throws IOException {
+        Path targetFile = Paths.get(path);
+        Path tempFile = Files.createTempFile(targetFile.toAbsolutePath().getParent(), ".upload-", ".tmp");
+        try {
+            InputStream fileData = gzip ? new GZIPInputStream(data) : data;
+            Files.copy(fileData, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempFile, targetFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
         }
-        else
-            fileData = data;
-        File targetFile = new File(path);
-        Files.write(targetFile.toPath(), fileData);
+        finally {
+            Files.deleteIfExists(tempFile);
+        }
+        this.fileCache.invalidate(targetFile);
+        // nothing changes unless the file is a gif
+        this.gallery.refresh(targetFile);
     }
 
     private String getFileContentType(String path) throws IOException {
@@ -224,8 +420,8 @@ public class SimpleHandler {
         return Files.probeContentType(requestedFile.toPath());
     }
 
-    private HTTPResponse notFound() {
-        HTTPResponse response = new HTTPResponse(HTTPStatus.NOT_FOUND);
+    private HTTPResponse notFound(HTTPRequest request) {
+        HTTPResponse response = request.response(HTTPStatus.NOT_FOUND);
         response.setBody("<h1>404 Not Found</h1>");
         return response;
     }
@@ -1,59 +1,261 @@
 package fr.insa.http;
 
+import fr.insa.http.enums.HTTPStatus;
+import fr.insa.http.logging.AccessLog;
+import fr.insa.http.metrics.Metrics;
+import fr.insa.http.messages.HTTPInputStream;
+import fr.insa.http.messages.HTTPParseException;
 import fr.insa.http.messages.HTTPRequest;
 import fr.insa.http.messages.HTTPResponse;
+import fr.insa.http.util.BufferArena;
+import fr.insa.http.util.ByteBuilder;
+import fr.insa.http.util.ChannelOutputStream;
+import fr.insa.http.util.TimerWheel;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
 
 /**
- * A thread that can handle a single HTTP request before closing the connection
+ * A task that handles the requests of a connection, in order, until the connection is closed
+ * It is run by a ConnectionExecutor, which decides on which thread
  */
-public class WorkerThread extends Thread {
+public class WorkerThread implements Runnable {
     private static final Logger LOGGER = LogManager.getLogger(WorkerThread.class);
 
-    private static int workerCount = 0;
+    private static final int MAX_REQUESTS = ServerConfig.getInt(ServerConfig.KEEP_ALIVE_MAX, 100);
+
+    // if the handler left more of the body than this unread, the connection is closed instead of skipping it
+    private static final long MAX_BODY_DRAIN = 64 * 1024;
+
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
 
     private Socket socket;
 
     private RequestHandler requestHandler;
 
+    private long requestCount;
+
+    // when the connection was accepted, in System.nanoTime() time
+    private long acceptedAt;
+
+    // set by the thread of the timer wheel when the client was too slow, the socket is then shut down
+    private volatile boolean timedOut;
+
+    // the tasks of the timeouts, made once for all the requests
+    private final Runnable expire = this::expire;
+
+    private final Runnable abort = this::abort;
+
     /**
-     * The thread will read a request from the given socket and send the response produced by the given RequestHandler
+     * The task will read requests from the given socket and send the responses produced by the given RequestHandler
      */
     public WorkerThread(Socket socket, RequestHandler requestHandler) throws SocketException {
-        super("WorkerThread-" + workerCount++);
         this.socket = socket;
-        LOGGER.trace("Socket info - SO_RCVBUF={}", this.socket.getReceiveBufferSize());
+        if(LOGGER.isTraceEnabled())
+            LOGGER.trace("Socket info - SO_RCVBUF={}", this.socket.getReceiveBufferSize());
         this.requestHandler = requestHandler;
+        this.requestCount = 0;
+        this.acceptedAt = System.nanoTime();
     }
 
     @Override
     public void run() {
-        try {
-            // create a request from the socket inputstream
+        Metrics.ACCEPT.record(System.nanoTime() - this.acceptedAt);
+        ConnectionStats.connectionOpened();
+        // the buffers go back to the pool before the socket is closed, nothing is written after the last response
+        try(Socket socket = this.socket; BufferArena buffers = new BufferArena()) {
+            // the streams live as long as the connection, pipelined requests wait in the input buffer
+            HTTPInputStream in = new HTTPInputStream(socket.getInputStream(), buffers);
+            OutputStream out = socket.getChannel() != null
+                ? new ChannelOutputStream(socket.getChannel(), buffers.direct(ChannelOutputStream.DEFAULT_BUFFER_SIZE))
+                : new BufferedOutputStream(socket.getOutputStream());
+            // the heads of all the responses are encoded in this buffer
+            ByteBuilder headBuffer = new ByteBuilder(buffers.heap(ByteBuilder.DEFAULT_CAPACITY).array());
+            InetAddress client = socket.getInetAddress();
+            // every request of the connection is read into this one
             HTTPRequest request = new HTTPRequest();
-            request.fromInputStream(this.socket.getInputStream());
-            LOGGER.info("Received request : {} {}", request.getMethod(), request.getResource());
+            // what the timeouts watch, made once for all the requests
+            LongSupplier bytesRead = in::bytesRead;
+            BooleanSupplier reading = in::isWaiting;
+            ChannelOutputStream channelOut = out instanceof ChannelOutputStream ? (ChannelOutputStream)out : null;
+            LongSupplier bytesWritten = channelOut == null ? null : channelOut::bytesWritten;
+            BooleanSupplier writing = channelOut == null ? null : channelOut::isWaiting;
+            // the timeouts are started again for each request, the body watchdog is only made for the first body
+            TimerWheel.Timeout headTimeout = ConnectionTimeouts.WHEEL.newTimeout(this.expire, ConnectionTimeouts.HEAD);
+            ConnectionTimeouts.Watchdog bodyWatchdog = null;
+            ConnectionTimeouts.Watchdog writeWatchdog = channelOut == null
+                ? null
+                : ConnectionTimeouts.writeWatchdog(bytesWritten, writing, this.abort);
 
-            // get the response from our request handler
-            HTTPResponse response = this.requestHandler.handleRequest(request);
-            LOGGER.info("Sending response : {}", response.getStatus());
+            boolean keepAlive = true;
+            while(keepAlive) {
+                // a connection waiting longer than this for its next request is closed
+                try {
+                    socket.setSoTimeout(ConnectionTimeouts.IDLE);
+                    if(!in.awaitData())
+                        break;
+                    // the head and body have their own deadlines on the timer wheel
+                    socket.setSoTimeout(0);
+                }
+                catch(SocketTimeoutException e) {
+                    break;
+                }
 
-            // write the response to the socket outputstream
-            response.toOutputStream(this.socket.getOutputStream());
+                // read the request from the socket inputstream, the whole head must arrive in time
+                headTimeout.start();
+                try {
+                    request.fromInputStream(in);
+                }
+                // the request could not be read, the rest of the stream can't be trusted
+                catch(HTTPParseException e) {
+                    headTimeout.cancel();
+                    LOGGER.warn("Refusing request : {}", e.getMessage());
+                    this.requestCount++;
+                    errorResponse(e.getStatus()).toOutputStream(out);
+                    AccessLog.log(client, System.currentTimeMillis(), request, e.getStatus().getCode(), 0);
+                    break;
+                }
+                // the client closed the connection, or the head timed out and the socket was shut down
+                catch(EOFException e) {
+                    if(!headTimeout.cancel()) {
+                        this.requestCount++;
+                        this.timeoutResponse(out, client, request);
+                    }
+                    break;
+                }
+                if(!headTimeout.cancel()) {
+                    this.requestCount++;
+                    this.timeoutResponse(out, client, request);
+                    break;
+                }
+                this.requestCount++;
+                long received = System.currentTimeMillis();
 
-            // close the connection
-            this.socket.close();
+                keepAlive = request.isKeepAlive() && this.requestCount < MAX_REQUESTS;
+
+                // the client waits for our go before sending the body
+                if(request.expectsContinue()) {
+                    out.write(CONTINUE);
+                    out.flush();
+                }
+
+                // the body must keep arriving at a minimum rate while it is read
+                boolean hasBody = request.getBodyLength() != 0;
+                if(hasBody) {
+                    if(bodyWatchdog == null)
+                        bodyWatchdog = ConnectionTimeouts.bodyWatchdog(bytesRead, reading, this.expire);
+                    bodyWatchdog.start();
+                }
+                HTTPResponse response;
+                try {
+                    // get the response from our request handler
+                    response = this.requestHandler.handleRequest(request);
+
+                    // the next request starts after this body, whether the handler read it or not
+                    if(!request.discardBody(MAX_BODY_DRAIN))
+                        keepAlive = false;
+                }
+                // a chunked body can only be found invalid while it is read, this takes over the handler's response
+                catch(HTTPParseException e) {
+                    if(this.timedOut) {
+                        this.timeoutResponse(out, client, request);
+                        break;
+                    }
+                    LOGGER.warn("Refusing request body : {}", e.getMessage());
+                    errorResponse(e.getStatus()).toOutputStream(out);
+                    AccessLog.log(client, received, request, e.getStatus().getCode(), 0);
+                    break;
+                }
+                // reading the body fails once the socket is shut down
+                catch(IOException | UncheckedIOException e) {
+                    if(!this.timedOut)
+                        throw e;
+                    this.timeoutResponse(out, client, request);
+                    break;
+                }
+                finally {
+                    if(hasBody)
+                        bodyWatchdog.cancel();
+                }
+                // the handler may have made its own response out of the truncated body
+                if(this.timedOut) {
+                    this.timeoutResponse(out, client, request);
+                    break;
+                }
+
+                // write the response to the socket outputstream, the client must keep accepting it
+                keepAlive = response.prepare(request, keepAlive);
+                long writeStart = System.nanoTime();
+                if(writeWatchdog != null)
+                    writeWatchdog.start();
+                try {
+                    response.toOutputStream(out, headBuffer);
+                }
+                finally {
+                    if(writeWatchdog != null)
+                        writeWatchdog.cancel();
+                }
+                Metrics.WRITE.record(System.nanoTime() - writeStart);
+                // the line is written by the access log thread, this only fills a slot
+                AccessLog.log(client, received, request, response.getStatus().getCode(), response.getBodyLength());
+            }
+        }
+        catch(IOException | UncheckedIOException e) {
+            if(this.timedOut)
+                LOGGER.warn("Closed a connection that timed out");
+            else
+                LOGGER.error("An error occurred while handling request", e);
         }
-        catch(NullPointerException e) {
-            LOGGER.warn("Nothing to read", e);
+        finally {
+            LOGGER.debug("Connection closed after {} requests", this.requestCount);
+            ConnectionStats.connectionClosed(this.requestCount);
+        }
+    }
+
+    // runs on the thread of the timer wheel, reads of the socket then fail and the request gets a 408
+    private void expire() {
+        this.timedOut = true;
+        try {
+            this.socket.shutdownInput();
+        }
+        catch(IOException e) {
+            LOGGER.debug("Could not shut down the input of a slow connection", e);
+        }
+    }
+
+    // runs on the thread of the timer wheel, the client stopped reading the response
+    private void abort() {
+        this.timedOut = true;
+        try {
+            this.socket.close();
         }
         catch(IOException e) {
-            LOGGER.error("An error occurred while handling request", e);
+            LOGGER.debug("Could not close a slow connection", e);
         }
     }
+
+    private void timeoutResponse(OutputStream out, InetAddress client, HTTPRequest request) throws IOException {
+        LOGGER.warn("Request timed out");
+        errorResponse(HTTPStatus.REQUEST_TIMEOUT).toOutputStream(out);
+        AccessLog.log(client, System.currentTimeMillis(), request, HTTPStatus.REQUEST_TIMEOUT.getCode(), 0);
+    }
+
+    private static HTTPResponse errorResponse(HTTPStatus status) {
+        HTTPResponse response = new HTTPResponse(status);
+        response.getHeaders().setHeader("content-length", "0");
+        response.getHeaders().setHeader("connection", "close");
+        return response;
+    }
 }
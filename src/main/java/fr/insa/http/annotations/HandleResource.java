@@ -5,10 +5,14 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
-// unused annotation
+/**
+ * Restricts a method annotated with @HandleMethod to some resources, instead of every resource without a route of its own
+ * name is an exact path, or a prefix of the path when it ends with '*', regex is a regular expression the whole path must match
+ * Exactly one of them must be given
+ */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface HandleResource {
-    String name();
-    String regex();
+    String name() default "";
+    String regex() default "";
 }
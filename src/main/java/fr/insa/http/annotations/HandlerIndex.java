@@ -0,0 +1,48 @@
+package fr.insa.http.annotations;
+
+import fr.insa.http.RequestHandler;
+import fr.insa.http.enums.HTTPMethod;
+
+import java.util.List;
+
+/**
+ * The classes annotated with @HTTPHandler and their handler methods, listed at compile time so nothing has to be scanned at startup
+ * The implementation is generated by HandlerIndexProcessor as GENERATED_CLASS, classes compiled without the processor are not in it
+ */
+public interface HandlerIndex {
+    String GENERATED_CLASS = "fr.insa.http.annotations.GeneratedHandlerIndex";
+
+    /**
+     * The classes annotated with @HTTPHandler, in the order they were compiled
+     */
+    List<Class<?>> handlerClasses();
+
+    /**
+     * Gives the methods annotated with @HandleMethod of the given instance of one of handlerClasses() to the registry, in the order they are declared
+     */
+    void register(Object handler, Registry registry);
+
+    interface Registry {
+        /**
+         * Adds a handler method, name and regex are the ones of its @HandleResource, empty without one
+         * handler calls the method directly, it is null when the generated code can't call it (e.g. a private method),
+         * the method must then be found by its name
+         */
+        void method(HTTPMethod method, String name, String regex, String methodName, RequestHandler handler);
+    }
+
+    /**
+     * The generated index, or null if the handlers were compiled without the processor
+     */
+    static HandlerIndex load() {
+        try {
+            return (HandlerIndex)Class.forName(GENERATED_CLASS).getConstructor().newInstance();
+        }
+        catch(ClassNotFoundException e) {
+            return null;
+        }
+        catch(ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalStateException("Invalid generated handler index " + GENERATED_CLASS, e);
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package fr.insa.http.enums;
 
+import fr.insa.http.util.Util;
+
+import java.nio.charset.StandardCharsets;
+
 public enum HTTPMethod {
     GET,
     HEAD,
@@ -10,5 +14,26 @@ public enum HTTPMethod {
     OPTIONS,
     TRACE,
     PATCH,
-    ANY
+    ANY;
+
+    private static final HTTPMethod[] VALUES = values();
+
+    // the name of the method as it appears in a request line
+    private final byte[] token;
+
+    HTTPMethod() {
+        this.token = this.name().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Finds the method whose name is written in the given bytes, without creating a String
+     * ANY is not a real http method and is never returned
+     */
+    public static HTTPMethod fromBytes(byte[] buffer, int offset, int length) {
+        for(HTTPMethod method : VALUES) {
+            if(method != ANY && Util.equals(buffer, offset, length, method.token))
+                return method;
+        }
+        throw new IllegalArgumentException("Unknown method : " + new String(buffer, offset, length, StandardCharsets.US_ASCII));
+    }
 }
@@ -1,13 +1,23 @@
 package fr.insa.http.enums;
 
+import fr.insa.http.util.Util;
+
+import java.nio.charset.StandardCharsets;
+
 public enum HTTPVersion {
+    HTTP1_0("HTTP/1.0"),
     HTTP1("HTTP/1.1"),
     HTTP2("HTTP/2");
 
+    private static final HTTPVersion[] VALUES = values();
+
     private String str;
 
+    private byte[] token;
+
     HTTPVersion(String str) {
         this.str = str;
+        this.token = str.getBytes(StandardCharsets.US_ASCII);
     }
 
     @Override
@@ -20,6 +30,8 @@ public enum HTTPVersion {
             throw new NullPointerException("Name is null");
 
         switch(name) {
+            case "HTTP/1.0":
+                return HTTP1_0;
             case "HTTP/1.1":
                 return HTTP1;
             case "HTTP/2":
@@ -28,4 +40,15 @@ public enum HTTPVersion {
                 throw new IllegalArgumentException("Not a valid name for HTTPVersion : " + name);
         }
     }
+
+    /**
+     * Finds the version written in the given bytes, without creating a String
+     */
+    public static HTTPVersion fromBytes(byte[] buffer, int offset, int length) {
+        for(HTTPVersion version : VALUES) {
+            if(Util.equals(buffer, offset, length, version.token))
+                return version;
+        }
+        throw new IllegalArgumentException("Not a valid name for HTTPVersion : " + new String(buffer, offset, length, StandardCharsets.US_ASCII));
+    }
 }
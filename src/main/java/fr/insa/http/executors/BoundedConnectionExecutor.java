@@ -0,0 +1,91 @@
+package fr.insa.http.executors;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A ConnectionExecutor backed by a fixed number of reused threads and a queue of limited size
+ * Tasks submitted while all threads are busy and the queue is full are rejected
+ */
+public class BoundedConnectionExecutor implements ConnectionExecutor {
+    private ThreadPoolExecutor executor;
+
+    private LongAdder rejectedCount;
+
+    public BoundedConnectionExecutor(int poolSize, int queueLimit) {
+        if(poolSize < 1)
+            throw new IllegalArgumentException("pool size must be at least 1");
+        if(queueLimit < 1)
+            throw new IllegalArgumentException("queue limit must be at least 1");
+
+        this.rejectedCount = new LongAdder();
+        this.executor = new ThreadPoolExecutor(
+            poolSize,
+            poolSize,
+            60,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueLimit),
+            new WorkerThreadFactory(),
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+        // let idle threads die when the server is quiet, they are recreated on demand
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public boolean tryExecute(Runnable task) {
+        try {
+            this.executor.execute(task);
+            return true;
+        }
+        catch(RejectedExecutionException e) {
+            this.rejectedCount.increment();
+            return false;
+        }
+    }
+
+    @Override
+    public int getPoolSize() {
+        return this.executor.getPoolSize();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return this.executor.getActiveCount();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return this.executor.getQueue().size();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    @Override
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "BoundedConnectionExecutor{" + "poolSize=" + this.getPoolSize() + ", active=" + this.getActiveCount() + ", queued=" + this.getQueueDepth() + ", rejected=" + this.getRejectedCount() + '}';
+    }
+
+    // names the pool threads so they can be told apart in the logs
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "Worker-" + this.threadCount.getAndIncrement());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package fr.insa.http.executors;
+
+/**
+ * Runs the tasks handling client connections and keeps track of how loaded it is
+ */
+public interface ConnectionExecutor {
+    /**
+     * Schedules the given task, returns false if the executor is saturated and the task was rejected
+     */
+    boolean tryExecute(Runnable task);
+
+    // number of threads currently alive in the executor
+    int getPoolSize();
+
+    // number of tasks currently running
+    int getActiveCount();
+
+    // number of tasks waiting for a thread
+    int getQueueDepth();
+
+    // number of tasks rejected since startup
+    long getRejectedCount();
+
+    void shutdown();
+}
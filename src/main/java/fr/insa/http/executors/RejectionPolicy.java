@@ -0,0 +1,56 @@
+package fr.insa.http.executors;
+
+import fr.insa.http.enums.HTTPStatus;
+import fr.insa.http.messages.HTTPResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * What to do with a connection that a ConnectionExecutor refused to handle
+ */
+public enum RejectionPolicy {
+    // answer right away with a 503 and close the connection
+    SERVICE_UNAVAILABLE {
+        @Override
+        public void reject(Socket socket, Runnable task) {
+            try(socket) {
+                HTTPResponse response = new HTTPResponse(HTTPStatus.SERVICE_UNAVAILABLE);
+                response.getHeaders().setHeader("retry-after", "1");
+                response.getHeaders().setHeader("connection", "close");
+                response.getHeaders().setHeader("content-length", "0");
+                response.toOutputStream(socket.getOutputStream());
+            }
+            catch(IOException e) {
+                LOGGER.debug("Could not send 503 to rejected connection", e);
+            }
+        }
+    },
+
+    // close the connection without answering
+    CLOSE {
+        @Override
+        public void reject(Socket socket, Runnable task) {
+            try {
+                socket.close();
+            }
+            catch(IOException e) {
+                LOGGER.debug("Could not close rejected connection", e);
+            }
+        }
+    },
+
+    // handle the connection on the accepting thread, which stops accepting new ones in the meantime
+    CALLER_RUNS {
+        @Override
+        public void reject(Socket socket, Runnable task) {
+            task.run();
+        }
+    };
+
+    private static final Logger LOGGER = LogManager.getLogger(RejectionPolicy.class);
+
+    public abstract void reject(Socket socket, Runnable task);
+}
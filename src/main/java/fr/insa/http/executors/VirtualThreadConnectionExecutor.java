@@ -0,0 +1,107 @@
+package fr.insa.http.executors;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A ConnectionExecutor that starts a new virtual thread for each task
+ * Virtual threads are only available from JDK 21 on, they are looked up by reflection so the server still builds on older JDKs
+ * An optional limit caps the number of tasks running at once, tasks above it are rejected
+ */
+public class VirtualThreadConnectionExecutor implements ConnectionExecutor {
+    private ExecutorService executor;
+
+    // null if there is no limit
+    private Semaphore permits;
+
+    private AtomicInteger activeCount;
+
+    private LongAdder rejectedCount;
+
+    /**
+     * Throws UnsupportedOperationException if the running JDK does not support virtual threads
+     */
+    public VirtualThreadConnectionExecutor(int maxConcurrent) {
+        this.executor = newVirtualThreadPerTaskExecutor();
+        this.permits = maxConcurrent > 0 ? new Semaphore(maxConcurrent) : null;
+        this.activeCount = new AtomicInteger();
+        this.rejectedCount = new LongAdder();
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)factory.invoke(null);
+        }
+        catch(NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JDK (" + Runtime.version() + ")", e);
+        }
+    }
+
+    @Override
+    public boolean tryExecute(Runnable task) {
+        if(this.permits != null && !this.permits.tryAcquire()) {
+            this.rejectedCount.increment();
+            return false;
+        }
+
+        try {
+            this.executor.execute(() -> {
+                this.activeCount.incrementAndGet();
+                try {
+                    task.run();
+                }
+                finally {
+                    this.activeCount.decrementAndGet();
+                    if(this.permits != null)
+                        this.permits.release();
+                }
+            });
+            return true;
+        }
+        catch(RejectedExecutionException e) {
+            if(this.permits != null)
+                this.permits.release();
+            this.rejectedCount.increment();
+            return false;
+        }
+    }
+
+    // there is no pool, each running task has its own thread
+    @Override
+    public int getPoolSize() {
+        return this.activeCount.get();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return this.activeCount.get();
+    }
+
+    // tasks never wait for a thread
+    @Override
+    public int getQueueDepth() {
+        return 0;
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    @Override
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualThreadConnectionExecutor{" + "active=" + this.getActiveCount() + ", rejected=" + this.getRejectedCount() + '}';
+    }
+}
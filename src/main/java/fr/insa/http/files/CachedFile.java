@@ -0,0 +1,179 @@
+package fr.insa.http.files;
+
+import fr.insa.http.messages.Preconditions;
+import fr.insa.http.util.Compression;
+import fr.insa.http.util.HTTPDates;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * What is needed to serve a file, as read at a given time
+ * Small files have their content in memory, big ones only their metadata and are read from disk when served
+ * When the cache maps files, their content is a read-only mapping of the file instead, outside of the heap
+ */
+public class CachedFile {
+    private Path path;
+
+    // null if the file is too big to be kept in memory
+    private byte[] data;
+
+    // the file mapped in memory, null if it is not mapped
+    private ByteBuffer mappedData;
+
+    private long length;
+
+    private String contentType;
+
+    private long lastModified;
+
+    // the validators of the file as sent in headers, computed once
+    private String entityTag;
+
+    private String lastModifiedDate;
+
+    private String gzipEntityTag;
+
+    // the file compressed with gzip, in memory or in a file if it is too big, both null if there is no such variant
+    private byte[] gzipData;
+
+    private Path gzipPath;
+
+    private ByteBuffer gzipMappedData;
+
+    private long gzipLength;
+
+    // the lengths as sent in the content-length header, computed once
+    private String contentLength;
+
+    private String gzipContentLength;
+
+    // the resource the cache finds this file by, null if it is not found that way
+    String resource;
+
+    CachedFile(Path path, byte[] data, long length, String contentType, long lastModified) {
+        this(path, data, length, contentType, lastModified, null, null, -1);
+    }
+
+    CachedFile(Path path, byte[] data, long length, String contentType, long lastModified, byte[] gzipData, Path gzipPath, long gzipLength) {
+        this(path, data, null, length, contentType, lastModified, gzipData, gzipPath, null, gzipLength);
+    }
+
+    CachedFile(
+        Path path, byte[] data, ByteBuffer mappedData, long length, String contentType, long lastModified,
+        byte[] gzipData, Path gzipPath, ByteBuffer gzipMappedData, long gzipLength
+    ) {
+        this.path = path;
+        this.data = data;
+        this.mappedData = mappedData;
+        this.length = length;
+        this.contentType = contentType;
+        this.lastModified = lastModified;
+        this.entityTag = Preconditions.entityTag(length, lastModified);
+        this.lastModifiedDate = HTTPDates.format(lastModified);
+        this.gzipData = gzipData;
+        this.gzipPath = gzipPath;
+        this.gzipMappedData = gzipMappedData;
+        this.gzipLength = gzipLength;
+        this.gzipEntityTag = this.hasGzip() ? Preconditions.encodedEntityTag(this.entityTag, Compression.GZIP) : null;
+        this.contentLength = Long.toString(length);
+        this.gzipContentLength = this.hasGzip() ? Long.toString(gzipLength) : null;
+    }
+
+    public Path getPath() {
+        return this.path;
+    }
+
+    // must not be modified, it is shared by all the requests for this file
+    // null if the file must be read from disk
+    public byte[] getData() {
+        return this.data;
+    }
+
+    public boolean isInMemory() {
+        return this.data != null;
+    }
+
+    // must not be modified either, send a duplicate of it, null if the file is not mapped
+    public ByteBuffer getMappedData() {
+        return this.mappedData;
+    }
+
+    public long getLength() {
+        return this.length;
+    }
+
+    // the length formatted for the content-length header
+    public String getContentLength() {
+        return this.contentLength;
+    }
+
+    // the number of bytes of the cache budget used by this file
+    long getMemorySize() {
+        return (this.data == null ? 0 : this.data.length) + (this.gzipData == null ? 0 : this.gzipData.length);
+    }
+
+    // the number of bytes of the mapping budget used by this file
+    long getMappedSize() {
+        return (this.mappedData == null ? 0 : this.mappedData.capacity()) + (this.gzipMappedData == null ? 0 : this.gzipMappedData.capacity());
+    }
+
+    // the number of mappings used by this file
+    int getMappingCount() {
+        return (this.mappedData == null ? 0 : 1) + (this.gzipMappedData == null ? 0 : 1);
+    }
+
+    // the strong entity tag of the file as it is on disk
+    public String getEntityTag() {
+        return this.entityTag;
+    }
+
+    // the entity tag of the gzip variant, null if there is none
+    public String getGzipEntityTag() {
+        return this.gzipEntityTag;
+    }
+
+    // the modification time formatted for the last-modified header
+    public String getLastModifiedDate() {
+        return this.lastModifiedDate;
+    }
+
+    public boolean hasGzip() {
+        return this.gzipData != null || this.gzipPath != null || this.gzipMappedData != null;
+    }
+
+    // must not be modified either, null if there is no gzip variant or if it must be read from gzipPath
+    public byte[] getGzipData() {
+        return this.gzipData;
+    }
+
+    // the precompressed file, null if there is none or if it is in memory
+    public Path getGzipPath() {
+        return this.gzipPath;
+    }
+
+    // the precompressed file mapped in memory, null if there is none or if it is not mapped
+    public ByteBuffer getGzipMappedData() {
+        return this.gzipMappedData;
+    }
+
+    // -1 if there is no gzip variant
+    public long getGzipLength() {
+        return this.gzipLength;
+    }
+
+    // null if there is no gzip variant
+    public String getGzipContentLength() {
+        return this.gzipContentLength;
+    }
+
+    // may be null if the type could not be guessed
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    // last modification time in milliseconds since the epoch
+    public long getLastModified() {
+        return this.lastModified;
+    }
+}
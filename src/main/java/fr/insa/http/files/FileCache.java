@@ -0,0 +1,423 @@
+package fr.insa.http.files;
+
+import fr.insa.http.util.Compression;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the content of recently served files in memory, up to a total size
+ * Files bigger than a threshold only have their metadata kept, they are meant to be sent straight from disk
+ * Files can also have a gzip variant, so they are compressed once and not for every request :
+ * a "name.gz" file next to the file if there is one that is not older, otherwise the data compressed when it is loaded
+ * Files can instead be mapped in memory, outside of the heap, up to a total size and a number of mappings :
+ * they are then sent from the mapping without being read or copied, the kernel keeps their pages in its cache
+ * The least recently used files are evicted first
+ * Cached files are dropped when a WatchService reports a change in their directory,
+ * code modifying files should also call invalidate() so the next request never sees stale data
+ */
+public class FileCache {
+    private static final Logger LOGGER = LogManager.getLogger(FileCache.class);
+
+    // maximum number of files known by the cache, whether their content is in memory or not
+    private static final int MAX_FILES = 10000;
+
+    // maximum number of directories registered to the watch service, files of other directories are not cached
+    private static final int MAX_WATCHED_DIRECTORIES = 1024;
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    // only the files under this directory are served
+    private Path root;
+
+    private long maxBytes;
+
+    private long maxFileBytes;
+
+    // files smaller than this don't get a gzip variant, -1 if files never have one
+    private long minCompressBytes;
+
+    // total size of the mapped files, 0 if files are read into the heap instead
+    private long maxMappedBytes;
+
+    private int maxMappings;
+
+    // access ordered, the first entry is the least recently used one
+    private LinkedHashMap<Path, CachedFile> files;
+
+    // the files found by get(String), by the resource they were asked as, so a hit does not build a Path
+    private Map<String, CachedFile> resources;
+
+    private long totalBytes;
+
+    private long mappedBytes;
+
+    private int mappingCount;
+
+    // incremented by every invalidation, so a file loaded while another thread invalidated it is not cached
+    private long generation;
+
+    // null if watching is not supported
+    private WatchService watchService;
+
+    private Map<Path, WatchKey> watchedDirectories;
+
+    private LongAdder hits;
+
+    private LongAdder misses;
+
+    private LongAdder evictions;
+
+    /**
+     * A cache of the files under root that holds at most maxBytes of file data, files bigger than maxFileBytes are never read into memory
+     */
+    public FileCache(Path root, long maxBytes, long maxFileBytes) {
+        this(root, maxBytes, maxFileBytes, -1);
+    }
+
+    /**
+     * A cache whose files of a compressible type get a gzip variant, when they are not smaller than minCompressBytes
+     * Precompressed ".gz" files are used whatever their size, minCompressBytes = -1 disables the variants
+     */
+    public FileCache(Path root, long maxBytes, long maxFileBytes, long minCompressBytes) {
+        this(root, maxBytes, maxFileBytes, minCompressBytes, 0, 0);
+    }
+
+    /**
+     * A cache that maps files in memory instead of reading them, keeping at most maxMappings mappings of maxMappedBytes in total
+     * Files that can't be mapped within these limits are handled like without mappings, maxBytes then only holds the gzip variants
+     * the cache computes and the files that are not mapped
+     */
+    public FileCache(Path root, long maxBytes, long maxFileBytes, long minCompressBytes, long maxMappedBytes, int maxMappings) {
+        this.root = root.toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        this.maxFileBytes = Math.min(maxBytes, maxFileBytes);
+        this.minCompressBytes = minCompressBytes;
+        this.maxMappedBytes = maxMappings > 0 ? maxMappedBytes : 0;
+        this.maxMappings = maxMappings;
+        this.files = new LinkedHashMap<>(64, 0.75f, true);
+        this.resources = new HashMap<>();
+        this.totalBytes = 0;
+        this.mappedBytes = 0;
+        this.mappingCount = 0;
+        this.watchedDirectories = new HashMap<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+
+        if(this.isEnabled()) {
+            try {
+                this.watchService = FileSystems.getDefault().newWatchService();
+                Thread watcher = new Thread(this::watch, "FileCache-Watcher");
+                watcher.setDaemon(true);
+                watcher.start();
+            }
+            catch(IOException | UnsupportedOperationException e) {
+                LOGGER.warn("Can't watch files for changes, only changes made by the server will be seen", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the file at the given path, from memory if possible
+     * Its data is only loaded if it is not bigger than the maximum file size
+     * Throws FileNotFoundException if it does not exist, is not a regular file, is not readable or is not under the root
+     */
+    public CachedFile get(Path path) throws IOException {
+        path = path.toAbsolutePath().normalize();
+        // a path like /../../etc/passwd would get out of the root
+        if(!path.startsWith(this.root))
+            throw new FileNotFoundException("File " + path + " is not under " + this.root);
+        long generation;
+        synchronized(this) {
+            CachedFile file = this.files.get(path);
+            if(file != null) {
+                this.hits.increment();
+                return file;
+            }
+            generation = this.generation;
+        }
+
+        this.misses.increment();
+        CachedFile file = this.load(path);
+        // the directory is only watched once a file in it was found, a change made before it was watched would be missed
+        // so the file is cached by the next request
+        if(this.isEnabled() && this.watch(path.getParent()))
+            this.put(file, generation);
+        return file;
+    }
+
+    /**
+     * Returns the file at the given path under the root, like the resource of a request ("/gif/a.gif"), from memory if possible
+     * Throws FileNotFoundException like get(Path)
+     */
+    public CachedFile get(String resource) throws IOException {
+        synchronized(this) {
+            CachedFile file = this.resources.get(resource);
+            if(file != null) {
+                // keeps the least recently used order
+                this.files.get(file.getPath());
+                this.hits.increment();
+                return file;
+            }
+        }
+
+        CachedFile file = this.get(Paths.get(this.root.toString(), resource));
+        synchronized(this) {
+            // only the files still cached are remembered, once per file, forget() drops them
+            if(file.resource == null && this.files.get(file.getPath()) == file) {
+                file.resource = resource;
+                this.resources.put(resource, file);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Forgets the given file, to be called after modifying or deleting it
+     */
+    public void invalidate(Path path) {
+        path = path.toAbsolutePath().normalize();
+        synchronized(this) {
+            this.generation++;
+            this.remove(path);
+            // the file the changed precompressed file is a variant of
+            String name = path.getFileName() == null ? "" : path.getFileName().toString();
+            if(name.endsWith(GZIP_SUFFIX))
+                this.remove(path.resolveSibling(name.substring(0, name.length() - GZIP_SUFFIX.length())));
+        }
+    }
+
+    // the mapping of a removed file is released by the garbage collector once no response uses it anymore
+    private void remove(Path path) {
+        CachedFile file = this.files.remove(path);
+        if(file != null)
+            this.forget(file);
+    }
+
+    private void forget(CachedFile file) {
+        if(file.resource != null)
+            this.resources.remove(file.resource, file);
+        this.totalBytes -= file.getMemorySize();
+        this.mappedBytes -= file.getMappedSize();
+        this.mappingCount -= file.getMappingCount();
+    }
+
+    public synchronized void clear() {
+        this.generation++;
+        this.files.clear();
+        this.resources.clear();
+        this.totalBytes = 0;
+        this.mappedBytes = 0;
+        this.mappingCount = 0;
+    }
+
+    public synchronized long getTotalBytes() {
+        return this.totalBytes;
+    }
+
+    public synchronized long getMappedBytes() {
+        return this.mappedBytes;
+    }
+
+    public synchronized int getMappingCount() {
+        return this.mappingCount;
+    }
+
+    public synchronized int getFileCount() {
+        return this.files.size();
+    }
+
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return this.evictions.sum();
+    }
+
+    private boolean isEnabled() {
+        return this.maxBytes > 0 || this.maxMappedBytes > 0;
+    }
+
+    private CachedFile load(Path path) throws IOException {
+        long maxFileBytes = this.maxFileBytes;
+        long minCompressBytes = this.minCompressBytes;
+        if(!Files.isRegularFile(path) || !Files.isReadable(path))
+            throw new FileNotFoundException("File " + path + " does not exist or is not readable");
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        ByteBuffer mappedData = this.map(path, attributes.size());
+        byte[] data = mappedData == null && attributes.size() <= maxFileBytes ? Files.readAllBytes(path) : null;
+        long length = mappedData != null ? mappedData.capacity() : data == null ? attributes.size() : data.length;
+        String contentType = Files.probeContentType(path);
+        if(minCompressBytes < 0)
+            return new CachedFile(path, data, mappedData, length, contentType, attributes.lastModifiedTime().toMillis(), null, null, null, -1);
+
+        byte[] gzipData = null;
+        Path gzipPath = null;
+        ByteBuffer gzipMappedData = null;
+        long gzipLength = -1;
+        Path precompressed = path.resolveSibling(path.getFileName() + GZIP_SUFFIX);
+        BasicFileAttributes precompressedAttributes = Files.isRegularFile(precompressed) && Files.isReadable(precompressed)
+            ? Files.readAttributes(precompressed, BasicFileAttributes.class)
+            : null;
+        // a precompressed file older than the file was made from a previous version of it
+        if(precompressedAttributes != null && precompressedAttributes.lastModifiedTime().compareTo(attributes.lastModifiedTime()) >= 0) {
+            gzipLength = precompressedAttributes.size();
+            gzipMappedData = this.map(precompressed, gzipLength);
+            if(gzipMappedData != null)
+                gzipLength = gzipMappedData.capacity();
+            else if(gzipLength <= maxFileBytes)
+                gzipData = Files.readAllBytes(precompressed);
+            else
+                gzipPath = precompressed;
+        }
+        else if(length <= maxFileBytes && length >= minCompressBytes && Compression.isCompressible(contentType)) {
+            // a mapped file is copied to be compressed, only the compressed data is kept
+            byte[] uncompressed = data;
+            if(uncompressed == null) {
+                uncompressed = new byte[(int)length];
+                mappedData.duplicate().get(uncompressed);
+            }
+            byte[] compressed = Compression.compress(uncompressed, Compression.GZIP);
+            if(compressed.length < uncompressed.length) {
+                gzipData = compressed;
+                gzipLength = compressed.length;
+            }
+        }
+        return new CachedFile(
+            path, data, mappedData, length, contentType, attributes.lastModifiedTime().toMillis(), gzipData, gzipPath, gzipMappedData, gzipLength
+        );
+    }
+
+    // maps the whole file read-only, returns null if files are not mapped or if this one can't be within the limits
+    // the mapping stays valid once the channel is closed, and keeps the content of the file even if it is replaced by another one
+    private ByteBuffer map(Path path, long size) throws IOException {
+        if(size > this.maxMappedBytes || size > Integer.MAX_VALUE)
+            return null;
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the size may have changed since it was read
+            size = channel.size();
+            if(size > this.maxMappedBytes || size > Integer.MAX_VALUE)
+                return null;
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private synchronized void put(CachedFile file, long generation) {
+        if(generation != this.generation)
+            return;
+
+        CachedFile previous = this.files.put(file.getPath(), file);
+        if(previous != null)
+            this.forget(previous);
+        this.totalBytes += file.getMemorySize();
+        this.mappedBytes += file.getMappedSize();
+        this.mappingCount += file.getMappingCount();
+
+        // evict the least recently used files until we are within budget
+        Iterator<CachedFile> iterator = this.files.values().iterator();
+        while(this.isOverBudget() && iterator.hasNext()) {
+            CachedFile evicted = iterator.next();
+            iterator.remove();
+            this.forget(evicted);
+            this.evictions.increment();
+            LOGGER.debug("Evicted {} from the file cache", evicted.getPath());
+        }
+    }
+
+    private boolean isOverBudget() {
+        return this.totalBytes > this.maxBytes
+            || this.mappedBytes > this.maxMappedBytes
+            || this.mappingCount > this.maxMappings
+            || this.files.size() > MAX_FILES;
+    }
+
+    // registers the given directory to the watch service, once
+    // returns whether it was already watched, or can't be watched at all, in which case its files can be cached
+    private boolean watch(Path directory) {
+        if(this.watchService == null || directory == null)
+            return true;
+        synchronized(this.watchedDirectories) {
+            if(this.watchedDirectories.containsKey(directory))
+                return true;
+            if(this.watchedDirectories.size() >= MAX_WATCHED_DIRECTORIES) {
+                LOGGER.debug("Not watching {}, already watching {} directories", directory, MAX_WATCHED_DIRECTORIES);
+                return false;
+            }
+            try {
+                WatchKey key = directory.register(
+                    this.watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE
+                );
+                this.watchedDirectories.put(directory, key);
+            }
+            // deleted since its file was loaded
+            catch(NoSuchFileException e) {
+                LOGGER.debug("Can't watch missing directory {}", directory);
+            }
+            catch(IOException e) {
+                LOGGER.warn("Can't watch directory {} for changes", directory, e);
+            }
+            return false;
+        }
+    }
+
+    // runs on the watcher thread, drops the files reported as changed
+    private void watch() {
+        try {
+            while(true) {
+                WatchKey key = this.watchService.take();
+                Path directory = (Path)key.watchable();
+                for(WatchEvent<?> event : key.pollEvents()) {
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        LOGGER.debug("Too many file changes, clearing the file cache");
+                        this.clear();
+                    }
+                    else {
+                        Path changed = directory.resolve((Path)event.context());
+                        LOGGER.debug("File {} changed", changed);
+                        this.invalidate(changed);
+                    }
+                }
+
+                // the directory is gone, forget about it
+                if(!key.reset()) {
+                    synchronized(this.watchedDirectories) {
+                        this.watchedDirectories.remove(directory);
+                    }
+                }
+            }
+        }
+        catch(InterruptedException | ClosedWatchServiceException e) {
+            LOGGER.debug("File cache watcher stopped");
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package fr.insa.http.files;
+
+import fr.insa.http.util.Compression;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The gif gallery page, rendered again only when the gifs change and kept ready to be sent
+ * The names of the gifs are listed once, then updated by refresh() when the server changes a gif
+ * and by a WatchService for changes made by others, so serving the page does not depend on the number of gifs
+ * Hidden files, like the temporary files of uploads, are not shown
+ */
+public class GalleryIndex {
+    private static final Logger LOGGER = LogManager.getLogger(GalleryIndex.class);
+
+    private static final byte[] END = "</div></body></html>".getBytes(StandardCharsets.ISO_8859_1);
+
+    private Path template;
+
+    private Path directory;
+
+    // the prefix of the urls of the gifs
+    private String urlPrefix;
+
+    private long minCompressBytes;
+
+    // sorted, so the page is the same whatever order the gifs were seen in
+    private Set<String> names;
+
+    // null if the template could not be read
+    private byte[] templateData;
+
+    // the page as of the last change, null if it can't be shown
+    private volatile CachedFile page;
+
+    private long lastRendered;
+
+    /**
+     * The gallery of the files of the given directory, served under urlPrefix, shown at the end of the given template
+     * Pages not smaller than minCompressBytes get a gzip variant, -1 disables it
+     */
+    public GalleryIndex(Path template, Path directory, String urlPrefix, long minCompressBytes) {
+        this.template = template.toAbsolutePath().normalize();
+        this.directory = directory.toAbsolutePath().normalize();
+        this.urlPrefix = urlPrefix;
+        this.minCompressBytes = minCompressBytes;
+        this.names = new TreeSet<>();
+
+        this.watch();
+        this.reload();
+    }
+
+    /**
+     * The page to send, null if the template or the directory is missing
+     */
+    public CachedFile page() {
+        return this.page;
+    }
+
+    /**
+     * Updates the gallery for a file that was added, replaced or deleted, files of other directories are ignored
+     */
+    public synchronized void refresh(Path file) {
+        file = file.toAbsolutePath().normalize();
+        String name = file.getFileName().toString();
+        if(!this.directory.equals(file.getParent()) || isHidden(name))
+            return;
+        boolean changed = Files.isRegularFile(file) ? this.names.add(name) : this.names.remove(name);
+        if(changed)
+            this.render();
+    }
+
+    /**
+     * Reads the template and lists the directory again
+     */
+    public synchronized void reload() {
+        this.names.clear();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+            for(Path file : files) {
+                String name = file.getFileName().toString();
+                if(!isHidden(name) && Files.isRegularFile(file))
+                    this.names.add(name);
+            }
+        }
+        catch(IOException e) {
+            LOGGER.warn("Can't list the gallery directory {}", this.directory, e);
+            this.page = null;
+            return;
+        }
+        this.reloadTemplate();
+    }
+
+    private synchronized void reloadTemplate() {
+        try {
+            this.templateData = Files.readAllBytes(this.template);
+        }
+        catch(IOException e) {
+            LOGGER.warn("Can't read the gallery template {}", this.template, e);
+            this.templateData = null;
+        }
+        this.render();
+    }
+
+    private static boolean isHidden(String name) {
+        return name.startsWith(".");
+    }
+
+    // builds the page from the template and the names, called on every change
+    private void render() {
+        if(this.templateData == null || !Files.isDirectory(this.directory)) {
+            this.page = null;
+            return;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(this.templateData.length + this.names.size() * 64);
+        out.writeBytes(this.templateData);
+        for(String name : this.names)
+            out.writeBytes(("<img src=\"" + this.urlPrefix + escape(name) + "\"/>").getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(END);
+        byte[] data = out.toByteArray();
+
+        // the entity tag comes from the time of the change, it must change even if two changes happen in the same millisecond
+        long now = Math.max(System.currentTimeMillis(), this.lastRendered + 1);
+        this.lastRendered = now;
+
+        byte[] gzipData = null;
+        if(this.minCompressBytes >= 0 && data.length >= this.minCompressBytes) {
+            gzipData = Compression.compress(data, Compression.GZIP);
+            if(gzipData.length >= data.length)
+                gzipData = null;
+        }
+        this.page = new CachedFile(this.template, data, data.length, "text/html", now, gzipData, null, gzipData == null ? -1 : gzipData.length);
+    }
+
+    private static String escape(String name) {
+        return name.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    // watches the directory and the template on a daemon thread
+    private void watch() {
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            this.directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            if(!this.template.getParent().equals(this.directory))
+                this.template.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        }
+        catch(IOException | UnsupportedOperationException e) {
+            LOGGER.warn("Can't watch the gallery for changes, only changes made by the server will be seen", e);
+            return;
+        }
+
+        Thread watcher = new Thread(() -> this.watch(watchService), "GalleryIndex-Watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch(WatchService watchService) {
+        try {
+            while(true) {
+                WatchKey key = watchService.take();
+                Path watched = (Path)key.watchable();
+                for(WatchEvent<?> event : key.pollEvents()) {
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        LOGGER.debug("Too many changes in the gallery, listing it again");
+                        this.reload();
+                        continue;
+                    }
+                    Path changed = watched.resolve((Path)event.context());
+                    if(changed.equals(this.template))
+                        this.reloadTemplate();
+                    else if(watched.equals(this.directory))
+                        this.refresh(changed);
+                }
+                if(!key.reset())
+                    LOGGER.warn("Stopped watching {}", watched);
+            }
+        }
+        catch(InterruptedException | ClosedWatchServiceException e) {
+            LOGGER.debug("Gallery watcher stopped");
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package fr.insa.http.logging;
+
+import fr.insa.http.enums.HTTPMethod;
+import fr.insa.http.enums.HTTPVersion;
+import fr.insa.http.messages.HTTPRequest;
+import fr.insa.http.util.HeaderNames;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The access log of the server, one line per request in the Combined Log Format of Apache httpd :
+ * host - - [time] "method resource version" status bytes "referer" "user-agent"
+ * Request threads only copy a few references into a preallocated slot of a lock-free ring, a writer thread
+ * formats the slots and writes them to the file in batches, so logging never blocks or allocates on the request path
+ * When the writer falls behind and the ring is full, entries are dropped and counted rather than slowing requests down
+ * Until start() is called, log() does nothing
+ */
+public final class AccessLog {
+    private static final Logger LOGGER = LogManager.getLogger(AccessLog.class);
+
+    // how long the writer sleeps when the ring is empty, which is also the longest an entry waits before being written
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH).withZone(ZoneId.systemDefault());
+
+    private static volatile AccessLog instance;
+
+    private final Entry[] entries;
+
+    // sequences[i] == position when slot i is free for the producer claiming position,
+    // position + 1 once that producer has filled it and the writer can read it
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    // next position to claim by producers
+    private final AtomicLong tail;
+
+    // next position to read, only used by drain()
+    private long head;
+
+    private final LongAdder dropped;
+
+    private final Writer out;
+
+    private final StringBuilder line;
+
+    // the formatted time of the last second seen by the writer, most entries of a batch share it
+    private long formattedSecond;
+
+    private String formattedTime;
+
+    private AccessLog(Path file, int capacity) throws IOException {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.entries = new Entry[size];
+        this.sequences = new AtomicLongArray(size);
+        for(int i = 0; i < size; i++) {
+            this.entries[i] = new Entry();
+            this.sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.dropped = new LongAdder();
+        this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        this.line = new StringBuilder(256);
+        this.formattedSecond = -1;
+    }
+
+    /**
+     * Starts writing the access log to the given file, appending to it, with room for capacity entries waiting to be written
+     */
+    public static synchronized void start(Path file, int capacity) throws IOException {
+        if(instance != null)
+            throw new IllegalStateException("The access log is already started");
+        AccessLog accessLog = new AccessLog(file, capacity);
+        Thread writer = new Thread(accessLog::writeLoop, "AccessLog-Writer");
+        writer.setDaemon(true);
+        writer.start();
+        // what is still in the ring when the server stops is written before the jvm exits
+        Runtime.getRuntime().addShutdownHook(new Thread(accessLog::drainAndFlush, "AccessLog-Flush"));
+        instance = accessLog;
+    }
+
+    public static boolean isEnabled() {
+        return instance != null;
+    }
+
+    /**
+     * Logs a request received from client at the given time (in milliseconds) and answered with the given status
+     * bytes is the length of the body sent, -1 if it is not known, request is null when it could not be read at all
+     */
+    public static void log(InetAddress client, long time, HTTPRequest request, int status, long bytes) {
+        AccessLog accessLog = instance;
+        if(accessLog != null)
+            accessLog.offer(client, time, request, status, bytes);
+    }
+
+    /**
+     * Number of entries that were dropped because the writer could not keep up
+     */
+    public static long getDroppedCount() {
+        AccessLog accessLog = instance;
+        return accessLog == null ? 0 : accessLog.dropped.sum();
+    }
+
+    private void offer(InetAddress client, long time, HTTPRequest request, int status, long bytes) {
+        long position = this.tail.get();
+        int index;
+        while(true) {
+            index = (int)position & this.mask;
+            long sequence = this.sequences.getAcquire(index);
+            if(sequence == position) {
+                if(this.tail.compareAndSet(position, position + 1))
+                    break;
+                position = this.tail.get();
+            }
+            // the slot still holds an entry from a lap ago, the ring is full
+            else if(sequence < position) {
+                this.dropped.increment();
+                return;
+            }
+            // another producer claimed this position
+            else
+                position = this.tail.get();
+        }
+
+        Entry entry = this.entries[index];
+        entry.client = client;
+        entry.time = time;
+        entry.status = status;
+        entry.bytes = bytes;
+        if(request != null) {
+            entry.method = request.getMethod();
+            entry.resource = request.getResource();
+            entry.version = request.getVersion();
+            entry.referer = request.getHeaders().getHeader(HeaderNames.REFERER);
+            entry.userAgent = request.getHeaders().getHeader(HeaderNames.USER_AGENT);
+        }
+        this.sequences.setRelease(index, position + 1);
+    }
+
+    private void writeLoop() {
+        long reportedDropped = 0;
+        while(true) {
+            try {
+                if(this.drain() == 0) {
+                    // the batch is over, it goes to the file at once
+                    this.out.flush();
+                    long dropped = this.dropped.sum();
+                    if(dropped > reportedDropped) {
+                        LOGGER.warn("{} access log entries were dropped, the log can't keep up", dropped - reportedDropped);
+                        reportedDropped = dropped;
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+            catch(IOException e) {
+                LOGGER.error("Could not write the access log", e);
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            }
+        }
+    }
+
+    private synchronized void drainAndFlush() {
+        try {
+            this.drain();
+            this.out.flush();
+        }
+        catch(IOException e) {
+            LOGGER.error("Could not write the access log", e);
+        }
+    }
+
+    // writes the entries that are ready, returns how many there were
+    private synchronized int drain() throws IOException {
+        int count = 0;
+        while(true) {
+            int index = (int)this.head & this.mask;
+            if(this.sequences.getAcquire(index) != this.head + 1)
+                return count;
+            Entry entry = this.entries[index];
+            this.format(entry);
+            entry.clear();
+            // the slot is free again for the producer one lap later
+            this.sequences.setRelease(index, this.head + this.entries.length);
+            this.head++;
+            this.out.append(this.line);
+            count++;
+        }
+    }
+
+    private void format(Entry entry) {
+        StringBuilder line = this.line;
+        line.setLength(0);
+        line.append(entry.client == null ? "-" : entry.client.getHostAddress());
+        line.append(" - - [").append(this.formatTime(entry.time)).append("] \"");
+        // the request line is "-" when it could not be read
+        if(entry.method == null || entry.resource == null)
+            line.append('-');
+        else {
+            line.append(entry.method.name()).append(' ');
+            appendEscaped(line, entry.resource);
+            if(entry.version != null)
+                line.append(' ').append(entry.version);
+        }
+        line.append("\" ").append(entry.status).append(' ');
+        if(entry.bytes > 0)
+            line.append(entry.bytes);
+        else
+            line.append('-');
+        line.append(" \"");
+        appendEscaped(line, entry.referer);
+        line.append("\" \"");
+        appendEscaped(line, entry.userAgent);
+        line.append("\"\n");
+    }
+
+    private String formatTime(long time) {
+        long second = time / 1000;
+        if(second != this.formattedSecond) {
+            this.formattedTime = TIME_FORMAT.format(Instant.ofEpochSecond(second));
+            this.formattedSecond = second;
+        }
+        return this.formattedTime;
+    }
+
+    // quotes and control characters sent by the client must not break the line into fields
+    private static void appendEscaped(StringBuilder line, String value) {
+        if(value == null) {
+            line.append('-');
+            return;
+        }
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\')
+                line.append('\\').append(c);
+            else if(c < 0x20 || c == 0x7f)
+                line.append("\\x").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+            else
+                line.append(c);
+        }
+    }
+
+    // a slot of the ring, reused for every lap
+    private static final class Entry {
+        private InetAddress client;
+
+        private long time;
+
+        private HTTPMethod method;
+
+        private String resource;
+
+        private HTTPVersion version;
+
+        private int status;
+
+        private long bytes;
+
+        private String referer;
+
+        private String userAgent;
+
+        // the writer lets go of the request strings so they are not kept alive until the next lap
+        private void clear() {
+            this.client = null;
+            this.method = null;
+            this.resource = null;
+            this.version = null;
+            this.referer = null;
+            this.userAgent = null;
+        }
+    }
+}
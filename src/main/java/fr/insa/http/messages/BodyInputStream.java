@@ -0,0 +1,86 @@
+package fr.insa.http.messages;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Gives access to the body of a message directly from the connection, without reading past it
+ * Closing it does not close the connection, it only makes the rest of the body unreadable
+ */
+class BodyInputStream extends FilterInputStream {
+    private long remaining;
+
+    BodyInputStream(InputStream in, long length) {
+        super(in);
+        this.remaining = length;
+    }
+
+    // makes this stream the body of the next message, so a connection reuses one stream for all its bodies
+    void reset(InputStream in, long length) {
+        this.in = in;
+        this.remaining = length;
+    }
+
+    // number of bytes of the body not read yet
+    long remaining() {
+        return this.remaining;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(this.remaining <= 0)
+            return -1;
+        int b = this.in.read();
+        if(b < 0)
+            throw new EOFException("Connection closed with " + this.remaining + " bytes of body left");
+        this.remaining--;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(this.remaining <= 0)
+            return -1;
+        if(len == 0)
+            return 0;
+        int read = this.in.read(b, off, (int)Math.min(len, this.remaining));
+        if(read < 0)
+            throw new EOFException("Connection closed with " + this.remaining + " bytes of body left");
+        this.remaining -= read;
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = this.in.skip(Math.min(n, this.remaining));
+        this.remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int)Math.min(this.in.available(), this.remaining);
+    }
+
+    /**
+     * Reads and drops what is left of the body
+     */
+    void skipRemaining() throws IOException {
+        while(this.remaining > 0) {
+            if(this.skip(this.remaining) <= 0 && this.read() < 0)
+                break;
+        }
+    }
+
+    @Override
+    public void close() {
+        // the connection stays open
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,17 @@
+package fr.insa.http.messages;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A response body produced while the response is being written, for bodies that are generated rather than stored
+ * Unless the handler sets a content-length, the body is sent with the chunked transfer coding :
+ * the client gets the first bytes while the rest is still being produced
+ */
+@FunctionalInterface
+public interface BodyWriter {
+    /**
+     * Writes the body to the given stream, which must not be closed
+     */
+    void writeTo(OutputStream out) throws IOException;
+}
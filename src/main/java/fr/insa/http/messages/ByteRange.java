@@ -0,0 +1,110 @@
+package fr.insa.http.messages;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A range of bytes of a representation, as asked by the range header of a request ("bytes=0-499,1000-,-200")
+ */
+public final class ByteRange {
+    // more ranges than this in a request are more likely an attack than a client seeking, the whole body is sent instead
+    public static final int MAX_RANGES = 16;
+
+    private static final String UNIT = "bytes=";
+
+    private final long start;
+
+    private final long length;
+
+    private ByteRange(long start, long length) {
+        this.start = start;
+        this.length = length;
+    }
+
+    public long getStart() {
+        return this.start;
+    }
+
+    public long getLength() {
+        return this.length;
+    }
+
+    // position of the last byte of the range
+    public long getEnd() {
+        return this.start + this.length - 1;
+    }
+
+    /**
+     * The value of the content-range header of a part of a representation of the given length
+     */
+    public String toContentRange(long totalLength) {
+        return "bytes " + this.start + '-' + this.getEnd() + '/' + totalLength;
+    }
+
+    /**
+     * The value of the content-range header of a 416 response for a representation of the given length
+     */
+    public static String unsatisfiedContentRange(long totalLength) {
+        return "bytes */" + totalLength;
+    }
+
+    /**
+     * Returns the ranges of a representation of the given length asked by the given range header, in the order they were asked
+     * Returns null when the whole representation should be sent : no header, another unit, a malformed header or too many ranges
+     * Returns an empty list when no range overlaps the representation, the request should then be answered with a 416
+     */
+    public static List<ByteRange> parse(String header, long totalLength) {
+        if(header == null || !header.regionMatches(true, 0, UNIT, 0, UNIT.length()))
+            return null;
+
+        String[] specs = header.substring(UNIT.length()).split(",");
+        if(specs.length > MAX_RANGES)
+            return null;
+
+        List<ByteRange> ranges = new ArrayList<>(specs.length);
+        for(String spec : specs) {
+            spec = spec.strip();
+            int dash = spec.indexOf('-');
+            if(dash < 0)
+                return null;
+            try {
+                String first = spec.substring(0, dash).strip();
+                String last = spec.substring(dash + 1).strip();
+                if(first.isEmpty()) {
+                    // "-500" is the last 500 bytes
+                    long suffixLength = Long.parseLong(last);
+                    if(suffixLength < 0)
+                        return null;
+                    if(suffixLength > 0 && totalLength > 0)
+                        ranges.add(new ByteRange(Math.max(totalLength - suffixLength, 0), Math.min(suffixLength, totalLength)));
+                }
+                else {
+                    // "500-" goes to the end
+                    long start = Long.parseLong(first);
+                    long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                    if(start < 0 || end < start)
+                        return null;
+                    // ranges starting after the end can't be satisfied, those going past it are cut
+                    if(start < totalLength)
+                        ranges.add(new ByteRange(start, Math.min(end, totalLength - 1) - start + 1));
+                }
+            }
+            catch(NumberFormatException e) {
+                return null;
+            }
+        }
+        // overlapping ranges would make the response bigger than the whole representation
+        long rangesLength = 0;
+        for(ByteRange range : ranges)
+            rangesLength += range.length;
+        if(rangesLength > totalLength)
+            return null;
+        return ranges.isEmpty() ? Collections.emptyList() : ranges;
+    }
+
+    @Override
+    public String toString() {
+        return "ByteRange{" + "start=" + this.start + ", length=" + this.length + '}';
+    }
+}
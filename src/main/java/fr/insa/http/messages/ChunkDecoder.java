@@ -0,0 +1,160 @@
+package fr.insa.http.messages;
+
+import fr.insa.http.enums.HTTPStatus;
+
+/**
+ * Reads the framing of a body sent with the chunked transfer coding, in bytes that may arrive in several pieces
+ * The framing (chunk sizes, extensions, CRLFs and trailers) is fed one byte at a time through parse(),
+ * the chunk data itself is left to the caller, which copies chunkRemaining() bytes and reports them with dataConsumed()
+ * Chunk extensions and trailer fields are read and ignored
+ */
+final class ChunkDecoder {
+    private static final int SIZE = 0;
+    private static final int EXTENSION = 1;
+    private static final int SIZE_LF = 2;
+    private static final int DATA = 3;
+    private static final int DATA_CR = 4;
+    private static final int DATA_LF = 5;
+    private static final int TRAILER_START = 6;
+    private static final int TRAILER = 7;
+    private static final int TRAILER_LF = 8;
+    private static final int END_LF = 9;
+    private static final int DONE = 10;
+
+    // a chunk size with more hex digits than this would overflow a long
+    private static final int MAX_SIZE_DIGITS = 15;
+
+    private int state;
+
+    private long chunkSize;
+
+    private int sizeDigits;
+
+    private long chunkRemaining;
+
+    // bytes of data decoded so far and the most that is accepted
+    private long total;
+
+    private long maxTotal;
+
+    // bytes of trailers read so far, they are bounded like a head
+    private int trailerBytes;
+
+    ChunkDecoder(long maxTotal) {
+        this.maxTotal = maxTotal;
+        this.state = SIZE;
+    }
+
+    /**
+     * Whether the next bytes are chunk data, chunkRemaining() of them
+     */
+    boolean inData() {
+        return this.state == DATA;
+    }
+
+    long chunkRemaining() {
+        return this.chunkRemaining;
+    }
+
+    /**
+     * Whether the last chunk and the trailers have been read, the bytes that follow belong to the next message
+     */
+    boolean isDone() {
+        return this.state == DONE;
+    }
+
+    /**
+     * Tells the decoder that the caller took the given number of bytes of chunk data
+     */
+    void dataConsumed(long count) {
+        this.chunkRemaining -= count;
+        if(this.chunkRemaining == 0)
+            this.state = DATA_CR;
+    }
+
+    /**
+     * Feeds one byte of framing, it must not be called while inData() or isDone()
+     * Throws HTTPParseException if the framing is malformed or the body gets too large
+     */
+    void parse(byte b) throws HTTPParseException {
+        switch(this.state) {
+            case SIZE:
+                int digit = Character.digit(b, 16);
+                if(digit >= 0) {
+                    if(++this.sizeDigits > MAX_SIZE_DIGITS)
+                        throw new HTTPParseException(HTTPStatus.BAD_REQUEST, "Chunk size is too long");
+                    this.chunkSize = this.chunkSize * 16 + digit;
+                }
+                else if(this.sizeDigits == 0)
+                    throw new HTTPParseException(HTTPStatus.BAD_REQUEST, "Missing chunk size");
+                else if(b == '\r')
+                    this.state = SIZE_LF;
+                else if(b == ';' || b == ' ' || b == '\t')
+                    this.state = EXTENSION;
+                else
+                    throw new HTTPParseException(HTTPStatus.BAD_REQUEST, "Invalid character in chunk size");
+                break;
+            case EXTENSION:
+                if(b == '\r')
+                    this.state = SIZE_LF;
+                break;
+            case SIZE_LF:
+                this.expect(b, '\n');
+                this.startChunk();
+                break;
+            case DATA_CR:
+                this.expect(b, '\r');
+                this.state = DATA_LF;
+                break;
+            case DATA_LF:
+                this.expect(b, '\n');
+                this.state = SIZE;
+                this.chunkSize = 0;
+                this.sizeDigits = 0;
+                break;
+            case TRAILER_START:
+                this.countTrailerByte();
+                this.state = b == '\r' ? END_LF : TRAILER;
+                break;
+            case TRAILER:
+                this.countTrailerByte();
+                if(b == '\r')
+                    this.state = TRAILER_LF;
+                break;
+            case TRAILER_LF:
+                this.countTrailerByte();
+                this.expect(b, '\n');
+                this.state = TRAILER_START;
+                break;
+            case END_LF:
+                this.expect(b, '\n');
+                this.state = DONE;
+                break;
+            default:
+                throw new IllegalStateException("No framing expected in state " + this.state);
+        }
+    }
+
+    private void startChunk() throws HTTPParseException {
+        // the last chunk has a size of 0 and is followed by the trailers
+        if(this.chunkSize == 0) {
+            this.state = TRAILER_START;
+            return;
+        }
+        if(this.total + this.chunkSize > this.maxTotal)
+            throw new HTTPParseException(HTTPStatus.PAYLOAD_TOO_LARGE, "Chunked body is bigger than " + this.maxTotal);
+        this.total += this.chunkSize;
+        this.chunkRemaining = this.chunkSize;
+        this.state = DATA;
+    }
+
+    private void countTrailerByte() throws HTTPParseException {
+        if(++this.trailerBytes > HTTPInputStream.MAX_HEAD_SIZE)
+            throw new HTTPParseException(HTTPStatus.REQUEST_HEADER_FIELDS_TOO_LARGE, "Trailers are bigger than " + HTTPInputStream.MAX_HEAD_SIZE + " bytes");
+    }
+
+    private void expect(byte b, char expected) throws HTTPParseException {
+        if(b != expected)
+            throw new HTTPParseException(HTTPStatus.BAD_REQUEST, "Malformed chunk framing");
+    }
+}
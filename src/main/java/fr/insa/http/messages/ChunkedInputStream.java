@@ -0,0 +1,112 @@
+package fr.insa.http.messages;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Gives access to a body sent with the chunked transfer coding, decoding it as it is read from the connection
+ * It never reads past the last chunk, so a pipelined request can follow
+ * Closing it does not close the connection, it only makes the rest of the body unreadable
+ */
+class ChunkedInputStream extends FilterInputStream {
+    private ChunkDecoder decoder;
+
+    // once the framing is found invalid, the body can't be read any further
+    private HTTPParseException failure;
+
+    ChunkedInputStream(InputStream in, long maxLength) {
+        super(in);
+        this.decoder = new ChunkDecoder(maxLength);
+    }
+
+    // reads framing until chunk data is available, returns false at the end of the body
+    private boolean nextData() throws IOException {
+        if(this.failure != null)
+            throw this.failure;
+        while(!this.decoder.inData()) {
+            if(this.decoder.isDone())
+                return false;
+            int b = this.in.read();
+            if(b < 0)
+                throw new EOFException("Connection closed in the middle of a chunked body");
+            try {
+                this.decoder.parse((byte)b);
+            }
+            catch(HTTPParseException e) {
+                this.failure = e;
+                throw e;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(!this.nextData())
+            return -1;
+        int b = this.in.read();
+        if(b < 0)
+            throw new EOFException("Connection closed in the middle of a chunk");
+        this.decoder.dataConsumed(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0)
+            return 0;
+        if(!this.nextData())
+            return -1;
+        int read = this.in.read(b, off, (int)Math.min(len, this.decoder.chunkRemaining()));
+        if(read < 0)
+            throw new EOFException("Connection closed in the middle of a chunk");
+        this.decoder.dataConsumed(read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if(n <= 0 || !this.nextData())
+            return 0;
+        long skipped = this.in.skip(Math.min(n, this.decoder.chunkRemaining()));
+        this.decoder.dataConsumed(skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return this.decoder.inData() ? (int)Math.min(this.in.available(), this.decoder.chunkRemaining()) : 0;
+    }
+
+    /**
+     * Reads and drops what is left of the body, as long as it is no more than maxBytes of data
+     * Returns false if the body is longer, the connection should then be closed
+     */
+    boolean skipRemaining(long maxBytes) throws IOException {
+        long skipped = 0;
+        while(this.nextData()) {
+            if(skipped >= maxBytes)
+                return false;
+            long count = this.skip(maxBytes - skipped);
+            if(count <= 0) {
+                if(this.read() < 0)
+                    break;
+                count = 1;
+            }
+            skipped += count;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        // the connection stays open
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,92 @@
+package fr.insa.http.messages;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a body with the chunked transfer coding, for bodies whose length is not known when the head is sent
+ * Data is gathered into chunks of up to CHUNK_SIZE bytes, flush() sends what was gathered as a smaller chunk
+ * finish() must be called once the body is complete, closing the stream does not close the connection
+ */
+class ChunkedOutputStream extends FilterOutputStream {
+    static final int CHUNK_SIZE = 8 * 1024;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buffer;
+
+    private int count;
+
+    private boolean finished;
+
+    ChunkedOutputStream(OutputStream out) {
+        super(out);
+        this.buffer = new byte[CHUNK_SIZE];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if(this.count == this.buffer.length)
+            this.writeBuffer();
+        this.buffer[this.count++] = (byte)b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        // big writes become chunks of their own instead of going through the buffer
+        if(len >= this.buffer.length) {
+            this.writeBuffer();
+            this.writeChunk(b, off, len);
+            return;
+        }
+        if(len > this.buffer.length - this.count)
+            this.writeBuffer();
+        System.arraycopy(b, off, this.buffer, this.count, len);
+        this.count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.writeBuffer();
+        this.out.flush();
+    }
+
+    /**
+     * Sends what is left in the buffer followed by the last chunk, without closing the underlying stream
+     */
+    void finish() throws IOException {
+        if(this.finished)
+            return;
+        this.writeBuffer();
+        this.out.write(LAST_CHUNK);
+        this.finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.finish();
+    }
+
+    private void writeBuffer() throws IOException {
+        if(this.count > 0) {
+            this.writeChunk(this.buffer, 0, this.count);
+            this.count = 0;
+        }
+    }
+
+    private void writeChunk(byte[] b, int off, int len) throws IOException {
+        if(this.finished)
+            throw new IOException("Body already finished");
+        // an empty chunk would mark the end of the body
+        if(len == 0)
+            return;
+        this.out.write(Integer.toHexString(len).getBytes(StandardCharsets.US_ASCII));
+        this.out.write(CRLF);
+        this.out.write(b, off, len);
+        this.out.write(CRLF);
+    }
+}
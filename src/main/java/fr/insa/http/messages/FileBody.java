@@ -0,0 +1,91 @@
+package fr.insa.http.messages;
+
+import fr.insa.http.util.ChannelOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A response body read from a region of a file when the response is written, instead of being held in memory
+ * When written to a channel, the file is sent with FileChannel.transferTo so the kernel can copy it without going through the heap
+ */
+public class FileBody {
+    // size of the buffer used when the file has to be copied to a plain OutputStream
+    private static final int COPY_BUFFER_SIZE = 16 * 1024;
+
+    private Path path;
+
+    private long position;
+
+    private long length;
+
+    public FileBody(Path path, long length) {
+        this(path, 0, length);
+    }
+
+    public FileBody(Path path, long position, long length) {
+        if(position < 0 || length < 0)
+            throw new IllegalArgumentException("position and length must not be negative");
+        this.path = path;
+        this.position = position;
+        this.length = length;
+    }
+
+    public Path getPath() {
+        return this.path;
+    }
+
+    public long getPosition() {
+        return this.position;
+    }
+
+    public long getLength() {
+        return this.length;
+    }
+
+    public FileChannel open() throws IOException {
+        return FileChannel.open(this.path, StandardOpenOption.READ);
+    }
+
+    /**
+     * Writes the region of the file to the given stream, without copying it through the heap if the stream is backed by a channel
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        try(FileChannel file = this.open()) {
+            if(out instanceof ChannelOutputStream) {
+                this.transferTo(file, (ChannelOutputStream)out);
+            }
+            else
+                this.copyTo(file, out);
+        }
+    }
+
+    // sends the region to the blocking channel of the given stream
+    private void transferTo(FileChannel file, ChannelOutputStream target) throws IOException {
+        long sent = 0;
+        while(sent < this.length) {
+            long count = target.transferFrom(file, this.position + sent, this.length - sent);
+            if(count <= 0 && this.position + sent >= file.size())
+                throw new IOException("File " + this.path + " is shorter than expected");
+            sent += count;
+        }
+    }
+
+    private void copyTo(FileChannel file, OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(COPY_BUFFER_SIZE, Math.max(this.length, 1)));
+        long copied = 0;
+        while(copied < this.length) {
+            buffer.clear();
+            buffer.limit((int)Math.min(buffer.capacity(), this.length - copied));
+            int read = file.read(buffer, this.position + copied);
+            if(read < 0)
+                throw new IOException("File " + this.path + " is shorter than expected");
+            out.write(buffer.array(), 0, read);
+            copied += read;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package fr.insa.http.messages;
+
+import fr.insa.http.util.BufferArena;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A buffered InputStream that can read the head of an http message in bulk and hand it over without copying it
+ * One instance should be kept for the whole life of a connection :
+ * bytes read past the current message (pipelined requests) stay in its buffer for the next one
+ * It counts the bytes it receives and tells whether it is waiting for some, so other threads can watch a slow client
+ * Its buffer can be leased from the BufferArena of the connection, it then goes back to the pool when the arena is closed
+ */
+public class HTTPInputStream extends FilterInputStream {
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    // a head bigger than this is rejected
+    public static final int MAX_HEAD_SIZE = 64 * 1024;
+
+    private byte[] buffer;
+
+    // the buffered bytes are between position and limit
+    private int position;
+
+    private int limit;
+
+    private HeadScanner scanner;
+
+    // the arena the buffer is leased from and the leased buffer backing it, null if the buffer is allocated
+    private BufferArena arena;
+
+    private ByteBuffer leased;
+
+    // bytes received from the stream under it since it was created
+    private volatile long bytesRead;
+
+    // true while a read of the stream under it is in progress
+    private volatile boolean waiting;
+
+    public HTTPInputStream(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public HTTPInputStream(InputStream in, int bufferSize) {
+        super(in);
+        this.buffer = new byte[bufferSize];
+        this.position = 0;
+        this.limit = 0;
+        this.scanner = new HeadScanner();
+    }
+
+    /**
+     * A stream whose buffer is leased from the given arena, it must not be used once the arena is closed
+     */
+    public HTTPInputStream(InputStream in, BufferArena arena) {
+        super(in);
+        this.arena = arena;
+        this.leased = arena.heap(DEFAULT_BUFFER_SIZE);
+        this.buffer = this.leased.array();
+        this.position = 0;
+        this.limit = 0;
+        this.scanner = new HeadScanner();
+    }
+
+    /**
+     * Reads until the buffer holds a whole head, starting at bufferPosition(), and returns its length
+     * The head stays in the buffer until consumeHead() is called
+     * Throws EOFException if the stream ends before the head is complete
+     */
+    public int readHead() throws IOException {
+        return this.readHead(MAX_HEAD_SIZE, MAX_HEAD_SIZE);
+    }
+
+    /**
+     * Like readHead(), but throws an HTTPParseException as soon as the head is bigger than maxHead bytes (431)
+     * or its first line longer than maxFirstLine bytes (414), maxHead can't be more than MAX_HEAD_SIZE
+     */
+    public int readHead(int maxHead, int maxFirstLine) throws IOException {
+        maxHead = Math.min(maxHead, MAX_HEAD_SIZE);
+        int headLength = this.scanner.scan(this.buffer, this.position, this.limit);
+        while(headLength < 0) {
+            // the head needs at least one more byte
+            this.scanner.checkSize(this.limit - this.position + 1, maxHead, maxFirstLine);
+            if(this.limit == this.buffer.length)
+                this.makeRoom();
+
+            int read = this.readIn(this.buffer, this.limit, this.buffer.length - this.limit);
+            if(read < 0)
+                throw new EOFException(this.limit == this.position ? "Connection closed" : "Connection closed in the middle of a head");
+            this.limit += read;
+            headLength = this.scanner.scan(this.buffer, this.position, this.limit);
+        }
+        this.scanner.checkSize(headLength, maxHead, maxFirstLine);
+        return headLength;
+    }
+
+    /**
+     * Waits until at least one byte is buffered, returns false if the stream ended first
+     * It lets a connection wait for the next request without starting to read its head
+     */
+    public boolean awaitData() throws IOException {
+        if(this.position < this.limit)
+            return true;
+        return this.fill() > 0;
+    }
+
+    /**
+     * Number of bytes received from the stream under this one, can be called from any thread
+     */
+    public long bytesRead() {
+        return this.bytesRead;
+    }
+
+    /**
+     * Whether a read is waiting for bytes from the stream under this one, can be called from any thread
+     */
+    public boolean isWaiting() {
+        return this.waiting;
+    }
+
+    /**
+     * Drops the head returned by readHead() from the buffer, the next reads start right after it
+     */
+    public void consumeHead(int headLength) {
+        this.position += headLength;
+    }
+
+    /**
+     * The buffer holding the head, valid until the next read
+     */
+    public byte[] buffer() {
+        return this.buffer;
+    }
+
+    public int bufferPosition() {
+        return this.position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(this.position == this.limit && this.fill() < 0)
+            return -1;
+        return this.buffer[this.position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0)
+            return 0;
+
+        int buffered = this.limit - this.position;
+        if(buffered == 0) {
+            // big reads skip the buffer
+            if(len >= this.buffer.length)
+                return this.readIn(b, off, len);
+            if(this.fill() < 0)
+                return -1;
+            buffered = this.limit - this.position;
+        }
+
+        int count = Math.min(buffered, len);
+        System.arraycopy(this.buffer, this.position, b, off, count);
+        this.position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if(n <= 0)
+            return 0;
+        int buffered = this.limit - this.position;
+        if(buffered > 0) {
+            int count = (int)Math.min(buffered, n);
+            this.position += count;
+            return count;
+        }
+        // skipped through the buffer, the skip() of a socket blocks until all the bytes arrived and would hide the progress
+        if(this.fill() <= 0)
+            return 0;
+        int count = (int)Math.min(this.limit, n);
+        this.position = count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (this.limit - this.position) + this.in.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    // refills the empty buffer, returns the number of bytes read or -1 at the end of the stream
+    private int fill() throws IOException {
+        this.position = 0;
+        this.limit = 0;
+        int read = this.readIn(this.buffer, 0, this.buffer.length);
+        if(read > 0)
+            this.limit = read;
+        return read;
+    }
+
+    // every read of the stream under this one goes through here to be counted
+    private int readIn(byte[] b, int off, int len) throws IOException {
+        this.waiting = true;
+        try {
+            int read = this.in.read(b, off, len);
+            if(read > 0)
+                this.bytesRead += read;
+            return read;
+        }
+        finally {
+            this.waiting = false;
+        }
+    }
+
+    // moves the buffered bytes to the start of the buffer, or grows it if they already are
+    private void makeRoom() {
+        if(this.position > 0) {
+            System.arraycopy(this.buffer, this.position, this.buffer, 0, this.limit - this.position);
+            this.limit -= this.position;
+            this.position = 0;
+        }
+        else {
+            if(this.buffer.length >= MAX_HEAD_SIZE)
+                throw new IllegalArgumentException("Head is bigger than " + MAX_HEAD_SIZE + " bytes");
+            int size = Math.min(this.buffer.length * 2, MAX_HEAD_SIZE);
+            ByteBuffer leased = this.arena == null ? null : this.arena.heap(size);
+            byte[] grown = leased == null ? new byte[size] : leased.array();
+            System.arraycopy(this.buffer, 0, grown, 0, this.limit);
+            this.buffer = grown;
+            // the smaller buffer goes back to the pool once copied
+            if(leased != null) {
+                this.arena.release(this.leased);
+                this.leased = leased;
+            }
+        }
+    }
+}
@@ -3,9 +3,11 @@ package fr.insa.http.messages;
 import fr.insa.http.enums.HTTPVersion;
 import fr.insa.http.util.HTTPHeaders;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 
 /**
  * Abstract superclass that represents an HTTPMessage
@@ -19,6 +21,10 @@ public abstract class HTTPMessage {
     protected HTTPHeaders headers;
     protected byte[] body;
 
+    // the body when it has not been read from the connection yet, body and bodyStream are never both set
+    protected InputStream bodyStream;
+    protected long bodyStreamLength;
+
     protected HTTPMessage(HTTPVersion version) {
         this.version = version == null ? defaultVersion : version;
         this.headers = new HTTPHeaders();
@@ -44,24 +50,69 @@ public abstract class HTTPMessage {
     }
 
     public String getBodyAsString() {
-        return new String(this.body);
+        return new String(this.getBody());
     }
 
+    /**
+     * Returns the body, reading it all into memory first if it is still in the connection
+     * Prefer getBodyStream() for bodies that may be big
+     */
     public byte[] getBody() {
+        if(this.body == null && this.bodyStream != null) {
+            try {
+                this.body = this.bodyStream.readAllBytes();
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.bodyStream = null;
+        }
         return this.body;
     }
 
+    /**
+     * Returns a stream over the body, read straight from the connection if it is not in memory
+     * The stream can only be read once and must be read before the handler returns
+     */
+    public InputStream getBodyStream() {
+        if(this.body != null)
+            return new ByteArrayInputStream(this.body);
+        if(this.bodyStream != null)
+            return this.bodyStream;
+        return InputStream.nullInputStream();
+    }
+
+    /**
+     * Makes the body of this message the given number of bytes of the given stream, -1 if the stream ends with the body
+     */
+    public void setBodyStream(InputStream bodyStream, long length) {
+        this.body = null;
+        this.bodyStream = bodyStream;
+        this.bodyStreamLength = length;
+    }
+
+    /**
+     * Length of the body, whether it is in memory or not, or -1 if it is only known once the body has been read
+     */
+    public long getBodyLength() {
+        if(this.body != null)
+            return this.body.length;
+        return this.bodyStream == null ? 0 : this.bodyStreamLength;
+    }
+
     public void setBody(String body) {
-        this.body = body.getBytes();
+        this.setBody(body.getBytes());
     }
 
     public void setBody(byte[] body) {
         this.body = body;
+        this.bodyStream = null;
     }
 
     protected void clear() {
         this.version = null;
         this.headers.clear();
         this.body = null;
+        this.bodyStream = null;
     }
 }
@@ -0,0 +1,28 @@
+package fr.insa.http.messages;
+
+import fr.insa.http.enums.HTTPStatus;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a message can't be read, with the status the server should answer before closing the connection
+ */
+public class HTTPParseException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private HTTPStatus status;
+
+    public HTTPParseException(HTTPStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public HTTPParseException(HTTPStatus status, String message, Throwable cause) {
+        super(message, cause);
+        this.status = status;
+    }
+
+    public HTTPStatus getStatus() {
+        return this.status;
+    }
+}
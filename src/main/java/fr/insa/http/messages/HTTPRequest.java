@@ -1,31 +1,48 @@
 package fr.insa.http.messages;
 
 import fr.insa.http.enums.HTTPMethod;
+import fr.insa.http.enums.HTTPStatus;
 import fr.insa.http.enums.HTTPVersion;
+import fr.insa.http.metrics.Metrics;
+import fr.insa.http.util.HeaderNames;
+import fr.insa.http.util.Util;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 
 /**
  * Class that represents an http request, allows for easy manipulation of all the data of the request
+ * The connections reuse one instance for all their requests : a request is only valid until the response to it is written
  */
 public class HTTPRequest extends HTTPMessage {
     private static final Logger LOGGER = LogManager.getLogger(HTTPRequest.class);
 
+    // requests with a bigger body are refused with a 413
+    public static long maxBodySize = 10 * 1024 * 1024;
+
+    // requests with a bigger head are refused with a 431, it can't be more than HTTPInputStream.MAX_HEAD_SIZE
+    public static int maxHeadSize = HTTPInputStream.MAX_HEAD_SIZE;
+
+    // requests with a longer request line are refused with a 414
+    public static int maxRequestLineSize = 8 * 1024;
+
     private HTTPMethod method;
 
     private String resource;
 
+    // the stream the bodies of the requests read by fromInputStream() are read through, kept for the next request
+    private BodyInputStream bodyIn;
+
+    // a copy of the head, the header values are only made Strings from it when they are asked for, kept for the next request
+    private byte[] head;
+
+    // the response given by response(), kept for the next request
+    private HTTPResponse response;
+
     public HTTPRequest() {
         this(null, null, null);
     }
@@ -66,93 +83,232 @@ public class HTTPRequest extends HTTPMessage {
         return this;
     }
 
+    /**
+     * A response to this request with the given status, without headers nor body, for the handler to fill and return
+     * It is recycled like the request : every call gives the same instance, so a handler builds at most one response this way,
+     * and the response is only valid until it has been written
+     * The framework makes its own responses this way too, like its 404, 405, 501 and 500, a 500 replacing what the handler started
+     */
+    public HTTPResponse response(HTTPStatus status) {
+        if(this.response == null)
+            this.response = new HTTPResponse(status);
+        else
+            this.response.reset(status);
+        return this.response;
+    }
+
     @Override
     public String toString() {
-        String body = this.body == null ? "null" : new String(this.body);
+        String body = this.body == null ? (this.bodyStream == null ? "null" : this.bodyStreamLength < 0 ? "<chunked body not read>" : "<" + this.bodyStreamLength + " bytes not read>") : new String(this.body);
         return "Request{" + "method=" + method + ", version=" + version + ", resource='" + resource + '\'' + ", headers=" + headers + ", body='" + body + '\'' + '}';
     }
 
     /**
      * Resets all the attributes of this instance and populates them with data read from the given InputStream
+     * The body is not read : it is left in the stream and can be read with getBodyStream() or getBody()
+     * To read several requests from a connection, pass the same HTTPInputStream every time and call discardBody()
+     * between requests : any other stream is wrapped in a new one, which may read past the end of this request
+     * Throws HTTPParseException if the request is malformed or not acceptable
      */
     @Override
     public void fromInputStream(InputStream in) throws IOException {
         this.clear();
 
-        DataInputStream dataIn = new DataInputStream(in);
-        ArrayList<Byte> bufferL = new ArrayList<>();
-        bufferL.add(dataIn.readByte());
-        bufferL.add(dataIn.readByte());
-        bufferL.add(dataIn.readByte());
-        bufferL.add(dataIn.readByte());
-        boolean stop = false;
-
-        while(!stop) {
-            int len = bufferL.size();
-            if(bufferL.get(len - 1) == '\n' && bufferL.get(len - 2) == '\r' && bufferL.get(len - 3) == '\n' && bufferL.get(len - 4) == '\r')
-                stop = true;
-            else
-                bufferL.add(dataIn.readByte());
+        HTTPInputStream httpIn = in instanceof HTTPInputStream ? (HTTPInputStream)in : new HTTPInputStream(in);
+        try {
+            int headLength = httpIn.readHead(maxHeadSize, maxRequestLineSize);
+            byte[] buffer = httpIn.buffer();
+            int headStart = httpIn.bufferPosition();
+            if(LOGGER.isDebugEnabled())
+                LOGGER.debug("Data read : {}", new String(buffer, headStart, headLength, StandardCharsets.US_ASCII));
+            long parseStart = System.nanoTime();
+            try {
+                this.parseHead(buffer, headStart, headLength);
+            }
+            finally {
+                httpIn.consumeHead(headLength);
+            }
+            Metrics.PARSE.record(System.nanoTime() - parseStart);
+
+            if(LOGGER.isTraceEnabled())
+                LOGGER.trace("Request so far : {}", this.toString());
+            // the body (if any) is streamed from the connection, chunks are decoded as they are read
+            if(this.isChunked())
+                this.setBodyStream(new ChunkedInputStream(httpIn, maxBodySize), -1);
+            else {
+                long contentLength = this.contentLength();
+                if(contentLength > maxBodySize)
+                    throw new HTTPParseException(HTTPStatus.PAYLOAD_TOO_LARGE, "Body of " + contentLength + " bytes is bigger than " + maxBodySize);
+                if(contentLength > 0)
+                    this.setBodyStream(this.bodyInputStream(httpIn, contentLength), contentLength);
+            }
         }
+        catch(IllegalArgumentException e) {
+            this.method = null;
+            throw new HTTPParseException(HTTPStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    private BodyInputStream bodyInputStream(InputStream in, long length) {
+        if(this.bodyIn == null)
+            this.bodyIn = new BodyInputStream(in, length);
+        else
+            this.bodyIn.reset(in, length);
+        return this.bodyIn;
+    }
+
+    /**
+     * Skips what the handler left of the body in the connection, so the next request can be read
+     * Returns false without skipping anything if more than maxBytes are left, the connection should then be closed
+     * Throws HTTPParseException if the body turns out to be malformed or too large, even if the handler already saw the error
+     */
+    public boolean discardBody(long maxBytes) throws IOException {
+        if(this.bodyStream instanceof ChunkedInputStream)
+            return ((ChunkedInputStream)this.bodyStream).skipRemaining(maxBytes);
+        if(!(this.bodyStream instanceof BodyInputStream))
+            return true;
+        BodyInputStream bodyIn = (BodyInputStream)this.bodyStream;
+        if(bodyIn.remaining() > maxBytes)
+            return false;
+        bodyIn.skipRemaining();
+        return true;
+    }
 
-        byte[] buffer = new byte[bufferL.size()];
-        {
-            int count = 0;
-            for(byte b1 : bufferL)
-                buffer[count++] = b1;
+    /**
+     * Whether the body is sent with the chunked transfer coding, the only transfer coding supported
+     * Throws HTTPParseException for other transfer codings and IllegalArgumentException if there is also a content-length,
+     * which would leave the end of the body ambiguous
+     */
+    boolean isChunked() throws HTTPParseException {
+        String transferEncoding = this.headers.getHeader(HeaderNames.TRANSFER_ENCODING);
+        if(transferEncoding == null)
+            return false;
+        if(this.headers.count(HeaderNames.TRANSFER_ENCODING) > 1 || !"chunked".equalsIgnoreCase(transferEncoding))
+            throw new HTTPParseException(HTTPStatus.NOT_IMPLEMENTED, "Unsupported transfer-encoding : " + transferEncoding);
+        if(this.headers.hasHeader(HeaderNames.CONTENT_LENGTH))
+            throw new IllegalArgumentException("Chunked request with a content-length");
+        return true;
+    }
+
+    /**
+     * The length of the body given by the content-length header, -1 if there is none
+     * Throws IllegalArgumentException if it is not only digits, or if the request has several content-length that disagree
+     */
+    long contentLength() {
+        String value = this.headers.getHeader(HeaderNames.CONTENT_LENGTH);
+        if(value == null)
+            return -1;
+        if(this.headers.count(HeaderNames.CONTENT_LENGTH) > 1 && this.headers.getHeaders(HeaderNames.CONTENT_LENGTH).stream().anyMatch(other -> !other.equals(value)))
+            throw new IllegalArgumentException("Conflicting content-length headers : " + this.headers.getHeaders(HeaderNames.CONTENT_LENGTH));
+        // only digits : Long.parseLong also takes a sign, which another server in front of this one may read differently
+        if(value.isEmpty())
+            throw new IllegalArgumentException("Empty content-length");
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c < '0' || c > '9')
+                throw new IllegalArgumentException("Invalid content-length : " + value);
         }
-        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(buffer), StandardCharsets.US_ASCII));
-        LOGGER.debug("Data read : {}", new String(buffer, StandardCharsets.US_ASCII));
-        try {
-            String line = reader.readLine();
-            int firstIdx = line.indexOf(' ');
-            int lastIdx = line.lastIndexOf(' ');
-
-            this.method = HTTPMethod.valueOf(line.substring(0, firstIdx));
-            this.resource = line.substring(firstIdx + 1, lastIdx);
-            this.version = HTTPVersion.fromString(line.substring(lastIdx + 1));
-
-            // parse headers
-            while((line = reader.readLine()) != null && line.length() > 0) {
-                String[] split = line.split(":", 2);
-
-                // ignore malformed lines
-                if(split.length != 2) {
-                    LOGGER.debug("Got malformed line : {}", line);
-                    continue;
-                }
-                this.headers.setHeader(split[0], split[1]);
-            }
+        // a NumberFormatException, which is an IllegalArgumentException, when there are too many digits for a long
+        return Long.parseLong(value);
+    }
+
+    /**
+     * Whether the client waits for a 100 Continue before sending the body
+     */
+    public boolean expectsContinue() {
+        return this.bodyStream != null && "100-continue".equalsIgnoreCase(this.headers.getHeader(HeaderNames.EXPECT));
+    }
+
+    /**
+     * Populates the method, resource, version and headers of this instance from the head of a request
+     * The head is the request line and the header lines, up to and including the empty line
+     * It is copied first : the buffer of the connection can then receive the body and the next requests
+     */
+    void parseHead(byte[] source, int sourceOffset, int length) {
+        if(this.head == null || this.head.length < length)
+            this.head = new byte[Math.max(length, this.head == null ? 0 : this.head.length * 2)];
+        byte[] buffer = this.head;
+        System.arraycopy(source, sourceOffset, buffer, 0, length);
+        int offset = 0;
+        int end = length;
+
+        // request line : <method> <resource> <version>
+        int lineEnd = indexOfLineEnd(buffer, offset, end);
+        int firstSpace = Util.indexOf(buffer, (byte)' ', offset, lineEnd);
+        int lastSpace = Util.lastIndexOf(buffer, (byte)' ', offset, lineEnd);
+        if(firstSpace < 0 || firstSpace == lastSpace)
+            throw new IllegalArgumentException("Malformed request line : " + new String(buffer, offset, lineEnd - offset, StandardCharsets.US_ASCII));
+
+        this.method = HTTPMethod.fromBytes(buffer, offset, firstSpace - offset);
+        this.resource = new String(buffer, firstSpace + 1, lastSpace - firstSpace - 1, StandardCharsets.ISO_8859_1);
+        this.version = HTTPVersion.fromBytes(buffer, lastSpace + 1, lineEnd - lastSpace - 1);
+
+        // parse headers until the empty line
+        int lineStart = lineEnd + 2;
+        while(lineStart < end && (lineEnd = indexOfLineEnd(buffer, lineStart, end)) > lineStart) {
+            int colon = Util.indexOf(buffer, (byte)':', lineStart, lineEnd);
 
-            LOGGER.trace("Request so far : {}", this.toString());
-            // parse body (if any)
-            if(this.headers.hasHeader("content-length")) {
-                int contentLength = Integer.parseInt(this.headers.getHeader("content-length"));
-                byte[] bodyData = new byte[contentLength];
-                int count = 0;
-                try {
-                    do {
-                        bodyData[count++] = dataIn.readByte();
-//                        dataIn.readNBytes(bodyData, totalDataReceived, contentLength - totalDataReceived);
-//                        if(dataRead > -1)
-//                            totalDataReceived += dataRead;
-//                        LOGGER.trace("Read {}, total received {}, total needed {}",
-//                            dataRead,
-//                            totalDataReceived,
-//                            contentLength
-//                        );
+            // ignore malformed lines
+            if(colon <= lineStart) {
+                if(LOGGER.isDebugEnabled())
+                    LOGGER.debug("Got malformed line : {}", new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.US_ASCII));
+            }
+            else {
+                // common names are shared constants, the others are lowercased before being turned into a String
+                String name = HeaderNames.fromBytes(buffer, lineStart, colon - lineStart);
+                if(name == null) {
+                    for(int i = lineStart; i < colon; i++) {
+                        byte b = buffer[i];
+                        if(b >= 'A' && b <= 'Z')
+                            buffer[i] = (byte)(b + ('a' - 'A'));
                     }
-                    while(count < contentLength);
+                    name = new String(buffer, lineStart, colon - lineStart, StandardCharsets.ISO_8859_1);
                 }
-                catch(SocketTimeoutException ignored) {}
-//                if(totalDataReceived != contentLength)
-//                    throw new IllegalArgumentException("got content length " + totalDataReceived + ", expected " + contentLength);
-                this.setBody(bodyData);
+
+                // leading and trailing spaces are not part of the value
+                int valueStart = colon + 1;
+                int valueEnd = lineEnd;
+                while(valueStart < valueEnd && (buffer[valueStart] == ' ' || buffer[valueStart] == '\t'))
+                    valueStart++;
+                while(valueEnd > valueStart && (buffer[valueEnd - 1] == ' ' || buffer[valueEnd - 1] == '\t'))
+                    valueEnd--;
+
+                this.headers.addHeader(name, buffer, valueStart, valueEnd - valueStart);
             }
+            lineStart = lineEnd + 2;
         }
-        catch(IllegalArgumentException e) {
-            LOGGER.error("Error parsing request", e);
+    }
+
+    // index of the CRLF ending the line that starts at from, the head always ends with one
+    private static int indexOfLineEnd(byte[] buffer, int from, int end) {
+        for(int i = from; i + 1 < end; i++) {
+            if(buffer[i] == '\r' && buffer[i + 1] == '\n')
+                return i;
+        }
+        throw new IllegalArgumentException("Unterminated line in head");
+    }
+
+    /**
+     * Whether the client wants to keep the connection open after this request
+     * HTTP/1.1 connections are persistent unless the client sends "connection: close",
+     * HTTP/1.0 ones only when it sends "connection: keep-alive"
+     * The connection header is a comma separated list of options, like "keep-alive, upgrade"
+     */
+    public boolean isKeepAlive() {
+        if(this.hasConnectionOption("close"))
+            return false;
+        return this.version == HTTPVersion.HTTP1 || this.hasConnectionOption("keep-alive");
+    }
+
+    // whether one of the connection headers lists the given option
+    private boolean hasConnectionOption(String option) {
+        for(String connection : this.headers.getHeaders(HeaderNames.CONNECTION)) {
+            for(String token : connection.split(",")) {
+                if(option.equalsIgnoreCase(token.strip()))
+                    return true;
+            }
         }
+        return false;
     }
 
     /**
@@ -175,8 +331,7 @@ public class HTTPRequest extends HTTPMessage {
             .append(this.version)
             .append("\r\n");
 
-        for(String header : this.headers.headers())
-            stringBuilder.append(header).append(':').append(this.headers.getHeader(header)).append("\r\n");
+        this.headers.forEach((name, value) -> stringBuilder.append(name).append(':').append(value).append("\r\n"));
         stringBuilder.append("\r\n");
 
         byte[] data = stringBuilder.toString().getBytes(StandardCharsets.US_ASCII);
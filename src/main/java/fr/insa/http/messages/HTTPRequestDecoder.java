@@ -0,0 +1,154 @@
+package fr.insa.http.messages;
+
+import fr.insa.http.enums.HTTPStatus;
+import fr.insa.http.metrics.Metrics;
+import fr.insa.http.util.HeaderNames;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Builds HTTPRequests from bytes as they arrive, for non-blocking connections
+ * Bytes are fed through decode() in as many pieces as needed, the decoder remembers how far it got between calls
+ */
+public class HTTPRequestDecoder {
+    // bodies are held in memory until complete, for every connection at once : bigger ones are refused with a 413,
+    // the blocking mode streams them and only applies HTTPRequest.maxBodySize
+    public static long maxBufferedBodySize = 1024 * 1024;
+
+    private HeadScanner scanner;
+
+    // the request being decoded once its head has been parsed, null while still waiting for the head
+    private HTTPRequest request;
+
+    private int bodyLength;
+
+    // the framing and the data decoded so far when the body is chunked, null otherwise
+    private ChunkDecoder chunks;
+
+    private ByteArrayOutputStream chunkedBody;
+
+    // a request given back with recycle(), the next request is decoded into it
+    private HTTPRequest recycled;
+
+    public HTTPRequestDecoder() {
+        this.scanner = new HeadScanner();
+        this.reset();
+    }
+
+    /**
+     * Decodes the bytes between the position and the limit of the given buffer, which must be backed by an array
+     * Returns the request once it is complete, with the buffer positioned right after it, so any pipelined request stays in it
+     * Returns null if more bytes are needed, in which case the remaining bytes must be given again, followed by new ones, on the next call
+     * The position is left untouched unless the body is chunked : chunks are decoded as they arrive and the buffer is positioned after them
+     * Throws HTTPParseException if the request is malformed or not acceptable
+     */
+    public HTTPRequest decode(ByteBuffer buffer) throws IOException {
+        if(this.request == null) {
+            int headLength = this.findEndOfHead(buffer);
+            if(headLength < 0)
+                return null;
+
+            HTTPRequest request = this.recycled != null ? this.recycled : new HTTPRequest();
+            this.recycled = null;
+            request.clear();
+            try {
+                long parseStart = System.nanoTime();
+                request.parseHead(buffer.array(), buffer.arrayOffset() + buffer.position(), headLength);
+                Metrics.PARSE.record(System.nanoTime() - parseStart);
+                buffer.position(buffer.position() + headLength);
+
+                long maxBody = Math.min(Math.min(HTTPRequest.maxBodySize, maxBufferedBodySize), Integer.MAX_VALUE - 8);
+                if(request.isChunked()) {
+                    this.chunks = new ChunkDecoder(maxBody);
+                    this.chunkedBody = new ByteArrayOutputStream();
+                }
+
+                long contentLength = Math.max(request.contentLength(), 0);
+                // the body is kept in memory until the request is complete
+                if(contentLength > maxBody)
+                    throw new HTTPParseException(HTTPStatus.PAYLOAD_TOO_LARGE, "Body of " + contentLength + " bytes is bigger than " + maxBody);
+                this.bodyLength = (int)contentLength;
+            }
+            catch(IllegalArgumentException e) {
+                throw new HTTPParseException(HTTPStatus.BAD_REQUEST, e.getMessage(), e);
+            }
+            this.request = request;
+        }
+
+        HTTPRequest request = this.request;
+        if(this.chunks != null) {
+            if(!this.decodeChunks(buffer))
+                return null;
+            if(this.chunkedBody.size() > 0)
+                request.setBody(this.chunkedBody.toByteArray());
+        }
+        else if(buffer.remaining() < this.bodyLength)
+            return null;
+        else if(this.bodyLength > 0) {
+            byte[] body = new byte[this.bodyLength];
+            buffer.get(body);
+            request.setBody(body);
+        }
+        this.reset();
+        return request;
+    }
+
+    /**
+     * Whether the head of the request being decoded has been parsed and its body is being waited for
+     */
+    public boolean inBody() {
+        return this.request != null;
+    }
+
+    /**
+     * Whether the request whose body is being waited for asks for a 100 Continue before its body is sent
+     */
+    public boolean expectsContinue() {
+        return this.request != null && "100-continue".equalsIgnoreCase(this.request.getHeaders().getHeader(HeaderNames.EXPECT));
+    }
+
+    /**
+     * Gives back a request returned by decode() once its response has been written, so the next one reuses it
+     */
+    public void recycle(HTTPRequest request) {
+        this.recycled = request;
+    }
+
+    public void reset() {
+        this.scanner.reset();
+        this.request = null;
+        this.bodyLength = 0;
+        this.chunks = null;
+        this.chunkedBody = null;
+    }
+
+    // decodes the chunks in the buffer and moves past them, returns true once the last one has been read
+    private boolean decodeChunks(ByteBuffer buffer) throws HTTPParseException {
+        byte[] array = buffer.array();
+        int position = buffer.arrayOffset() + buffer.position();
+        int end = buffer.arrayOffset() + buffer.limit();
+        while(position < end && !this.chunks.isDone()) {
+            if(this.chunks.inData()) {
+                int count = (int)Math.min(this.chunks.chunkRemaining(), end - position);
+                this.chunkedBody.write(array, position, count);
+                this.chunks.dataConsumed(count);
+                position += count;
+            }
+            else
+                this.chunks.parse(array[position++]);
+        }
+        buffer.position(position - buffer.arrayOffset());
+        return this.chunks.isDone();
+    }
+
+    // returns the length of the head (including the final CRLFCRLF) or -1 if it is not complete yet
+    private int findEndOfHead(ByteBuffer buffer) throws HTTPParseException {
+        int headLength = this.scanner.scan(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.arrayOffset() + buffer.limit());
+        int maxHead = Math.min(HTTPRequest.maxHeadSize, HTTPInputStream.MAX_HEAD_SIZE);
+        // an incomplete head needs at least one more byte
+        this.scanner.checkSize(headLength < 0 ? buffer.remaining() + 1 : headLength, maxHead, HTTPRequest.maxRequestLineSize);
+        return headLength;
+    }
+}
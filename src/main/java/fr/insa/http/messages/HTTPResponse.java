@@ -1,7 +1,12 @@
 package fr.insa.http.messages;
 
+import fr.insa.http.enums.HTTPMethod;
 import fr.insa.http.enums.HTTPStatus;
 import fr.insa.http.enums.HTTPVersion;
+import fr.insa.http.util.ByteBuilder;
+import fr.insa.http.util.ChannelOutputStream;
+import fr.insa.http.util.HTTPHeaders;
+import fr.insa.http.util.HeaderNames;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -10,6 +15,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -18,8 +24,32 @@ import java.nio.charset.StandardCharsets;
 public class HTTPResponse extends HTTPMessage {
     private static final Logger LOGGER = LogManager.getLogger(HTTPResponse.class);
 
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    // "<version> <code> <message>\r\n" for every version and status, by their ordinals
+    private static final byte[][][] STATUS_LINES = new byte[HTTPVersion.values().length][HTTPStatus.values().length][];
+
+    static {
+        for(HTTPVersion version : HTTPVersion.values()) {
+            for(HTTPStatus status : HTTPStatus.values())
+                STATUS_LINES[version.ordinal()][status.ordinal()] = (version + " " + status + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
     private HTTPStatus status;
 
+    // set instead of body when the body is read from a file while writing the response
+    private FileBody fileBody;
+
+    // set instead of body when the handler produces the body while the response is written
+    private BodyWriter bodyWriter;
+
+    // set instead of body when the body is in a buffer outside of the heap, like a mapped file, sent from its position to its limit
+    private ByteBuffer bufferBody;
+
+    // headers written after those of the response, unless the response has a header with the same name
+    private HeaderBlock defaultHeaders;
+
     public HTTPResponse() {
         this(null, null);
     }
@@ -44,11 +74,113 @@ public class HTTPResponse extends HTTPMessage {
         return this;
     }
 
+    /**
+     * Sets headers that are added to this response when it is written, for those it does not have itself
+     * They are not visible through getHeaders()
+     */
+    public void setDefaultHeaders(HeaderBlock defaultHeaders) {
+        this.defaultHeaders = defaultHeaders;
+    }
+
+    public FileBody getFileBody() {
+        return this.fileBody;
+    }
+
+    /**
+     * Makes the response send the given region of a file as body, replacing any body set before
+     */
+    public void setBody(FileBody fileBody) {
+        this.body = null;
+        this.bodyStream = null;
+        this.fileBody = fileBody;
+        this.bodyWriter = null;
+        this.bufferBody = null;
+    }
+
+    public BodyWriter getBodyWriter() {
+        return this.bodyWriter;
+    }
+
+    public ByteBuffer getBufferBody() {
+        return this.bufferBody;
+    }
+
+    /**
+     * Makes the response send the bytes of the given buffer between its position and its limit as body, replacing any body set before
+     * The buffer is never modified, responses can share it : a mapped file is sent by all of them without being copied to the heap
+     */
+    public void setBody(ByteBuffer bufferBody) {
+        this.body = null;
+        this.bodyStream = null;
+        this.fileBody = null;
+        this.bodyWriter = null;
+        this.bufferBody = bufferBody;
+    }
+
+    /**
+     * Makes the response send what the given writer produces as body, replacing any body set before
+     * The writer is called when the response is written, after the head has been sent
+     */
+    public void setBody(BodyWriter bodyWriter) {
+        this.body = null;
+        this.bodyStream = null;
+        this.fileBody = null;
+        this.bodyWriter = bodyWriter;
+        this.bufferBody = null;
+    }
+
+    @Override
+    public void setBody(byte[] body) {
+        super.setBody(body);
+        this.fileBody = null;
+        this.bodyWriter = null;
+        this.bufferBody = null;
+    }
+
     @Override
     public String toString() {
         return "Response{" + "version=" + version + ", status=" + status + ", headers=" + headers + ", body='" + body + '\'' + '}';
     }
 
+    /**
+     * Fills in what is needed to send this response on a connection that may stay open :
+     * the content-length when the handler did not set one, or the chunked transfer coding when the length is not known,
+     * no body for HEAD requests and a "connection: close" header when the connection will be closed,
+     * or a "connection: keep-alive" header when an HTTP/1.0 connection stays open
+     * Returns whether the connection can stay open after this response, which is never the case
+     * when the client can't read chunks and the end of the body can only be told by closing the connection
+     */
+    public boolean prepare(HTTPRequest request, boolean keepAlive) {
+        if(!this.headers.hasHeader(HeaderNames.CONTENT_LENGTH) && !this.isChunked() && this.status.getCode() >= 200 && this.status != HTTPStatus.NO_CONTENT && this.status != HTTPStatus.NOT_MODIFIED) {
+            long length = this.getBodyLength();
+            if(length >= 0)
+                this.headers.setHeader(HeaderNames.CONTENT_LENGTH, Long.toString(length));
+            else if(request.getVersion() == HTTPVersion.HTTP1)
+                this.headers.setHeader(HeaderNames.TRANSFER_ENCODING, "chunked");
+            else
+                keepAlive = false;
+        }
+        if(request.getMethod() == HTTPMethod.HEAD) {
+            this.body = null;
+            this.fileBody = null;
+            this.bodyWriter = null;
+            this.bufferBody = null;
+        }
+        if(!keepAlive)
+            this.headers.setHeader(HeaderNames.CONNECTION, "close");
+        // HTTP/1.0 clients expect the connection to be closed unless told otherwise
+        else if(request.getVersion() == HTTPVersion.HTTP1_0)
+            this.headers.setHeader(HeaderNames.CONNECTION, "keep-alive");
+        return keepAlive;
+    }
+
+    /**
+     * Whether the body of this response is sent with the chunked transfer coding
+     */
+    public boolean isChunked() {
+        return "chunked".equalsIgnoreCase(this.headers.getHeader(HeaderNames.TRANSFER_ENCODING));
+    }
+
     /**
      * Resets all the attributes of this instance and populates them with data read from the given InputStream
      */
@@ -73,12 +205,13 @@ public class HTTPResponse extends HTTPMessage {
                     LOGGER.debug("Got malformed line : {}", line);
                     continue;
                 }
-                this.headers.setHeader(split[0], split[1]);
+                this.headers.addHeader(split[0].strip().toLowerCase(), split[1].strip());
             }
 
             // parse body (if any)
-            if(this.headers.hasHeader("content-length")) {
-                int contentLength = Integer.parseInt(this.headers.getHeader("content-length"));
+            String contentLengthHeader = this.headers.getHeader(HeaderNames.CONTENT_LENGTH);
+            if(contentLengthHeader != null) {
+                int contentLength = Integer.parseInt(contentLengthHeader);
                 byte[] bodyData = new byte[contentLength];
                 int dataRead = in.read(bodyData, 0, contentLength);
                 if(dataRead != contentLength)
@@ -96,34 +229,105 @@ public class HTTPResponse extends HTTPMessage {
      */
     @Override
     public void toOutputStream(OutputStream out) throws IOException {
-        if(this.version == null)
-            throw new NullPointerException("version is null !");
-        if(this.status == null)
-            throw new NullPointerException("status is null !");
-
-        StringBuilder stringBuilder = new StringBuilder()
-            .append(this.version)
-            .append(' ')
-            .append(this.status)
-            .append("\r\n");
-
-        for(String header : this.headers.headers())
-            stringBuilder.append(header).append(':').append(this.headers.getHeader(header)).append("\r\n");
-        stringBuilder.append("\r\n");
+        this.toOutputStream(out, new ByteBuilder());
+    }
 
-        byte[] data = stringBuilder.toString().getBytes(StandardCharsets.US_ASCII);
-        out.write(data, 0, data.length);
+    /**
+     * Writes a proper http response to the given OutputStream, encoding the head in the given buffer
+     * Connections keep one buffer for all their responses, so the head is encoded without allocating
+     */
+    public void toOutputStream(OutputStream out, ByteBuilder headBuffer) throws IOException {
+        headBuffer.reset();
+        this.writeHead(headBuffer);
 
         if(this.body != null) {
-            out.write(this.body, 0, this.body.length);
+            // the head and the body leave in one gathering write, the body is not copied into the stream buffer
+            if(out instanceof ChannelOutputStream)
+                ((ChannelOutputStream)out).write(headBuffer.array(), headBuffer.length(), this.body, 0, this.body.length);
+            else {
+                out.write(headBuffer.array(), 0, headBuffer.length());
+                out.write(this.body, 0, this.body.length);
+            }
+        }
+        else if(this.bufferBody != null) {
+            if(out instanceof ChannelOutputStream)
+                ((ChannelOutputStream)out).write(headBuffer.array(), headBuffer.length(), this.bufferBody);
+            else {
+                out.write(headBuffer.array(), 0, headBuffer.length());
+                ChannelOutputStream.write(out, this.bufferBody);
+            }
+        }
+        else {
+            out.write(headBuffer.array(), 0, headBuffer.length());
+            this.writeStreamedBody(out);
         }
 
         out.flush();
     }
 
+    // writes the body when it is not in memory
+    private void writeStreamedBody(OutputStream out) throws IOException {
+        if(this.fileBody != null) {
+            this.fileBody.writeTo(out);
+        }
+        else if(this.bodyWriter != null) {
+            // the head leaves right away, the client does not wait for the whole body to be produced
+            out.flush();
+            if(this.isChunked()) {
+                ChunkedOutputStream chunkedOut = new ChunkedOutputStream(out);
+                this.bodyWriter.writeTo(chunkedOut);
+                chunkedOut.finish();
+            }
+            else
+                this.bodyWriter.writeTo(out);
+        }
+    }
+
+    /**
+     * Appends the status line and the headers of this response, followed by the empty line, to the given buffer
+     * The status line comes pre-encoded, header lines are copied character by character without building Strings
+     */
+    public void writeHead(ByteBuilder out) {
+        if(this.version == null)
+            throw new NullPointerException("version is null !");
+        if(this.status == null)
+            throw new NullPointerException("status is null !");
+
+        out.append(STATUS_LINES[this.version.ordinal()][this.status.ordinal()]);
+        HTTPHeaders headers = this.headers;
+        for(int i = 0; i < headers.size(); i++)
+            out.appendLatin1(headers.getName(i)).append((byte)':').appendLatin1(headers.getValue(i)).append(CRLF);
+        if(this.defaultHeaders != null)
+            this.defaultHeaders.writeMissing(this.headers, out);
+        out.append(CRLF);
+    }
+
+    /**
+     * Length of the body, or -1 if it is produced by a BodyWriter and only known once written
+     */
+    @Override
+    public long getBodyLength() {
+        if(this.bodyWriter != null)
+            return -1;
+        if(this.bufferBody != null)
+            return this.bufferBody.remaining();
+        return this.fileBody == null ? super.getBodyLength() : this.fileBody.getLength();
+    }
+
     @Override
     protected void clear() {
         super.clear();
         this.status = null;
+        this.fileBody = null;
+        this.bodyWriter = null;
+        this.bufferBody = null;
+        this.defaultHeaders = null;
+    }
+
+    // makes this response like a new one with the given status, keeping the arrays of its headers
+    void reset(HTTPStatus status) {
+        this.clear();
+        this.version = defaultVersion;
+        this.status = status;
     }
 }
@@ -0,0 +1,65 @@
+package fr.insa.http.messages;
+
+import fr.insa.http.enums.HTTPStatus;
+
+/**
+ * Looks for the empty line ending the head of a message (CRLFCRLF), in bytes that may arrive in several pieces
+ * The scan is a small state machine that resumes where it stopped, so no byte is looked at twice
+ */
+final class HeadScanner {
+    // how many bytes of CRLFCRLF were matched by the last bytes scanned
+    private int state;
+
+    // number of bytes of the head already scanned
+    private int scanned;
+
+    // length of the first line of the last head scanned including its CRLF, -1 until it is found
+    private int firstLineLength;
+
+    /**
+     * Scans the bytes of buffer between headStart and end, skipping those already scanned by previous calls
+     * Returns the length of the head including the final CRLFCRLF, or -1 if its end was not found yet
+     */
+    int scan(byte[] buffer, int headStart, int end) {
+        int state = this.state;
+        if(this.scanned == 0)
+            this.firstLineLength = -1;
+        for(int i = headStart + this.scanned; i < end; i++) {
+            byte b = buffer[i];
+            if(b == '\r')
+                state = state == 2 ? 3 : 1;
+            else if(b == '\n' && (state == 1 || state == 3)) {
+                state++;
+                if(this.firstLineLength < 0)
+                    this.firstLineLength = i + 1 - headStart;
+            }
+            else
+                state = 0;
+
+            if(state == 4) {
+                this.reset();
+                return i + 1 - headStart;
+            }
+        }
+        this.state = state;
+        this.scanned = end - headStart;
+        return -1;
+    }
+
+    /**
+     * Throws if the head being scanned, of which received bytes were received, is already too big :
+     * 414 if its first line is longer than maxFirstLine bytes, 431 if it is longer than maxHead bytes
+     * To be called before waiting for more bytes and once the head is complete
+     */
+    void checkSize(int received, int maxHead, int maxFirstLine) throws HTTPParseException {
+        if(this.firstLineLength > maxFirstLine || (this.firstLineLength < 0 && received > maxFirstLine))
+            throw new HTTPParseException(HTTPStatus.URI_TOO_LONG, "Request line is longer than " + maxFirstLine + " bytes");
+        if(received > maxHead)
+            throw new HTTPParseException(HTTPStatus.REQUEST_HEADER_FIELDS_TOO_LARGE, "Head is bigger than " + maxHead + " bytes");
+    }
+
+    void reset() {
+        this.state = 0;
+        this.scanned = 0;
+    }
+}
@@ -0,0 +1,102 @@
+package fr.insa.http.messages;
+
+import fr.insa.http.util.ByteBuilder;
+import fr.insa.http.util.HTTPHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Headers encoded once into the bytes of their lines, to be copied as they are into the heads of many responses
+ * A block is immutable, with() returns a new block
+ */
+public final class HeaderBlock {
+    public static final HeaderBlock EMPTY = new HeaderBlock(new String[0], new String[0], new byte[0][]);
+
+    // the lowercased names of the headers, their values and their encoded "name:value\r\n" lines, in the same order
+    private final String[] names;
+
+    private final String[] values;
+
+    private final byte[][] lines;
+
+    private HeaderBlock(String[] names, String[] values, byte[][] lines) {
+        this.names = names;
+        this.values = values;
+        this.lines = lines;
+    }
+
+    /**
+     * Returns a block with the headers of this one and the given header, replacing any header with the same name
+     */
+    public HeaderBlock with(String name, String value) {
+        String lowercaseName = name.toLowerCase();
+        String strippedValue = value.strip();
+        byte[] line = (lowercaseName + ':' + strippedValue + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+        int index = Arrays.asList(this.names).indexOf(lowercaseName);
+        if(index < 0) {
+            String[] names = Arrays.copyOf(this.names, this.names.length + 1);
+            String[] values = Arrays.copyOf(this.values, this.values.length + 1);
+            byte[][] lines = Arrays.copyOf(this.lines, this.lines.length + 1);
+            names[names.length - 1] = lowercaseName;
+            values[values.length - 1] = strippedValue;
+            lines[lines.length - 1] = line;
+            return new HeaderBlock(names, values, lines);
+        }
+
+        String[] values = this.values.clone();
+        byte[][] lines = this.lines.clone();
+        values[index] = strippedValue;
+        lines[index] = line;
+        return new HeaderBlock(this.names, values, lines);
+    }
+
+    /**
+     * Returns a block with the headers of this one but the given header
+     */
+    public HeaderBlock without(String name) {
+        int index = Arrays.asList(this.names).indexOf(name.toLowerCase());
+        if(index < 0)
+            return this;
+        String[] names = new String[this.names.length - 1];
+        String[] values = new String[this.values.length - 1];
+        byte[][] lines = new byte[this.lines.length - 1][];
+        for(int i = 0, j = 0; i < this.names.length; i++) {
+            if(i != index) {
+                names[j] = this.names[i];
+                values[j] = this.values[i];
+                lines[j] = this.lines[i];
+                j++;
+            }
+        }
+        return new HeaderBlock(names, values, lines);
+    }
+
+    /**
+     * Returns the value of the header, or null if the block does not have it
+     */
+    public String get(String name) {
+        int index = Arrays.asList(this.names).indexOf(name.toLowerCase());
+        return index < 0 ? null : this.values[index];
+    }
+
+    public boolean isEmpty() {
+        return this.names.length == 0;
+    }
+
+    /**
+     * Appends the lines of the headers that are not already in the given headers
+     */
+    void writeMissing(HTTPHeaders present, ByteBuilder out) {
+        for(int i = 0; i < this.names.length; i++) {
+            if(!present.hasHeader(this.names[i]))
+                out.append(this.lines[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HeaderBlock{" + "names=" + Arrays.toString(this.names) + '}';
+    }
+}
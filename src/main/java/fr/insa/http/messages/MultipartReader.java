@@ -0,0 +1,279 @@
+package fr.insa.http.messages;
+
+import fr.insa.http.util.HTTPHeaders;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Reads the parts of a multipart body (RFC 2046), like a multipart/form-data upload, as they arrive
+ * Each part gives its headers and a stream over its content which ends at the next delimiter,
+ * so a file part is never held in memory : only a buffer of the size of the delimiter is kept to find it
+ * Throws IOException if the body is not a valid multipart body
+ */
+public class MultipartReader {
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    // the headers of a part are bounded like the head of a request
+    private static final int MAX_PART_HEAD = 8 * 1024;
+
+    private InputStream in;
+
+    // CRLF, two dashes and the boundary
+    private byte[] delimiter;
+
+    private byte[] buffer;
+
+    // the buffered bytes are between position and limit
+    private int position;
+
+    private int limit;
+
+    private boolean eof;
+
+    // the buffered bytes before this index are known not to start a delimiter, so they are not searched again
+    private int searched;
+
+    // the part whose content is being read, null before the first part
+    private PartInputStream current;
+
+    private boolean done;
+
+    /**
+     * A reader of the given body, whose parts are separated by the given boundary (the boundary parameter of its content-type)
+     */
+    public MultipartReader(InputStream in, String boundary) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buffer = new byte[Math.max(BUFFER_SIZE, this.delimiter.length * 2)];
+        // the first delimiter is at the start of the body, without the CRLF of the others
+        this.buffer[0] = '\r';
+        this.buffer[1] = '\n';
+        this.limit = 2;
+    }
+
+    /**
+     * The boundary parameter of a multipart content-type, null if it is not multipart or has no boundary
+     */
+    public static String boundaryOf(String contentType) {
+        if(contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/"))
+            return null;
+        for(String parameter : contentType.split(";")) {
+            String[] split = parameter.strip().split("=", 2);
+            if(split.length == 2 && split[0].strip().equalsIgnoreCase("boundary")) {
+                String boundary = split[1].strip();
+                if(boundary.length() >= 2 && boundary.startsWith("\"") && boundary.endsWith("\""))
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                // at most 70 characters
+                return boundary.isEmpty() || boundary.length() > 70 ? null : boundary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves to the next part, skipping what is left of the current one, returns null after the last part
+     */
+    public Part nextPart() throws IOException {
+        if(this.done)
+            return null;
+        // the preamble before the first delimiter is skipped like the rest of a part
+        PartInputStream previous = this.current != null ? this.current : new PartInputStream();
+        while(previous.skip(Long.MAX_VALUE) > 0 || previous.read() >= 0) {}
+
+        // the delimiter is followed by "--" after the last part, by the CRLF ending the delimiter line otherwise
+        this.require(2);
+        if(this.buffer[this.position] == '-' && this.buffer[this.position + 1] == '-') {
+            this.done = true;
+            return null;
+        }
+        HTTPHeaders headers = this.readHeaders();
+        this.current = new PartInputStream();
+        return new Part(headers, this.current);
+    }
+
+    // the line after the delimiter (transport padding and CRLF) and the header lines up to the empty line
+    private HTTPHeaders readHeaders() throws IOException {
+        HTTPHeaders headers = new HTTPHeaders();
+        String line = this.readLine();
+        if(!line.isBlank())
+            throw new IOException("Malformed multipart delimiter line");
+        int headBytes = 0;
+        while(!(line = this.readLine()).isEmpty()) {
+            headBytes += line.length() + 2;
+            if(headBytes > MAX_PART_HEAD)
+                throw new IOException("Headers of a multipart part are bigger than " + MAX_PART_HEAD + " bytes");
+            int colon = line.indexOf(':');
+            if(colon <= 0)
+                throw new IOException("Malformed multipart header : " + line);
+            headers.addHeader(line.substring(0, colon).strip(), line.substring(colon + 1).strip());
+        }
+        return headers;
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while(true) {
+            this.require(1);
+            byte b = this.buffer[this.position++];
+            if(b == '\n') {
+                int length = line.length();
+                if(length == 0 || line.charAt(length - 1) != '\r')
+                    throw new IOException("Multipart line not ending with CRLF");
+                return line.substring(0, length - 1);
+            }
+            if(line.length() >= MAX_PART_HEAD)
+                throw new IOException("Multipart line longer than " + MAX_PART_HEAD + " bytes");
+            line.append((char)(b & 0xff));
+        }
+    }
+
+    // reads until count bytes are buffered, throws EOFException if the body ends before
+    private void require(int count) throws IOException {
+        this.fill(count);
+        if(this.limit - this.position < count)
+            throw new EOFException("Multipart body ended before its last delimiter");
+    }
+
+    // reads until count bytes are buffered or the body ends
+    private void fill(int count) throws IOException {
+        if(this.limit - this.position >= count || this.eof)
+            return;
+        if(this.position > 0) {
+            System.arraycopy(this.buffer, this.position, this.buffer, 0, this.limit - this.position);
+            this.limit -= this.position;
+            this.searched = Math.max(this.searched - this.position, 0);
+            this.position = 0;
+        }
+        while(this.limit < count) {
+            int read = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit);
+            if(read < 0) {
+                this.eof = true;
+                return;
+            }
+            this.limit += read;
+        }
+    }
+
+    // index of the delimiter in the buffered bytes, -1 if it is not there
+    private int indexOfDelimiter() {
+        byte first = this.delimiter[0];
+        int last = this.limit - this.delimiter.length;
+        for(int i = Math.max(this.searched, this.position); i <= last; i++) {
+            if(this.buffer[i] == first && matches(this.buffer, i, this.delimiter)) {
+                this.searched = i;
+                return i;
+            }
+        }
+        this.searched = Math.max(last + 1, this.position);
+        return -1;
+    }
+
+    private static boolean matches(byte[] buffer, int offset, byte[] expected) {
+        for(int i = 1; i < expected.length; i++) {
+            if(buffer[offset + i] != expected[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * A part of the body, its content must be read before moving to the next part
+     */
+    public static final class Part {
+        private final HTTPHeaders headers;
+
+        private final InputStream content;
+
+        private Part(HTTPHeaders headers, InputStream content) {
+            this.headers = headers;
+            this.content = content;
+        }
+
+        public HTTPHeaders getHeaders() {
+            return this.headers;
+        }
+
+        public InputStream getContent() {
+            return this.content;
+        }
+
+        /**
+         * The filename parameter of the content-disposition of the part, null if it is not a file
+         */
+        public String getFilename() {
+            String disposition = this.headers.getHeader("content-disposition");
+            if(disposition == null)
+                return null;
+            for(String parameter : disposition.split(";")) {
+                String[] split = parameter.strip().split("=", 2);
+                if(split.length == 2 && split[0].strip().equalsIgnoreCase("filename")) {
+                    String filename = split[1].strip();
+                    if(filename.length() >= 2 && filename.startsWith("\"") && filename.endsWith("\""))
+                        filename = filename.substring(1, filename.length() - 1);
+                    return filename;
+                }
+            }
+            return null;
+        }
+    }
+
+    // the content of a part, up to the next delimiter, which it consumes
+    private final class PartInputStream extends InputStream {
+        private boolean ended;
+
+        @Override
+        public int read() throws IOException {
+            if(this.ended || this.contentAvailable() == 0)
+                return this.end();
+            return MultipartReader.this.buffer[MultipartReader.this.position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(this.ended)
+                return -1;
+            if(len == 0)
+                return 0;
+            int available = this.contentAvailable();
+            if(available == 0)
+                return this.end();
+            int count = Math.min(len, available);
+            System.arraycopy(MultipartReader.this.buffer, MultipartReader.this.position, b, off, count);
+            MultipartReader.this.position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if(this.ended || n <= 0)
+                return 0;
+            int count = (int)Math.min(n, this.contentAvailable());
+            MultipartReader.this.position += count;
+            return count;
+        }
+
+        // the delimiter is next, it is consumed with the end of the part
+        private int end() {
+            if(!this.ended) {
+                this.ended = true;
+                MultipartReader.this.position += MultipartReader.this.delimiter.length;
+            }
+            return -1;
+        }
+
+        // the number of buffered bytes that are content for sure, reading more if needed, 0 if the delimiter comes next
+        private int contentAvailable() throws IOException {
+            MultipartReader reader = MultipartReader.this;
+            reader.require(reader.delimiter.length);
+            int delimiter = reader.indexOfDelimiter();
+            if(delimiter >= 0)
+                return delimiter - reader.position;
+            // the bytes that could be the start of a delimiter wait for the next ones
+            return reader.limit - reader.position - reader.delimiter.length + 1;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package fr.insa.http.messages;
+
+import fr.insa.http.util.Compression;
+import fr.insa.http.util.HTTPDates;
+import fr.insa.http.util.HeaderNames;
+
+/**
+ * Evaluates the conditional headers of requests against the validators of a resource : its entity tag and modification time
+ * The variants of a resource compressed by the server have its entity tag with a "-gzip" or "-deflate" suffix,
+ * they are considered the same resource, the client's cache tells them apart with the vary header
+ */
+public final class Preconditions {
+    // the ends of the entity tags of compressed variants
+    private static final String[] CODING_SUFFIXES = {"-" + Compression.GZIP + '"', "-" + Compression.DEFLATE + '"'};
+
+    private Preconditions() {}
+
+    /**
+     * The strong entity tag of a file, derived from its length and modification time
+     */
+    public static String entityTag(long length, long lastModified) {
+        return '"' + Long.toHexString(lastModified) + '-' + Long.toHexString(length) + '"';
+    }
+
+    /**
+     * The entity tag of the variant of a resource compressed with the given coding
+     */
+    public static String encodedEntityTag(String entityTag, String coding) {
+        if(entityTag.length() < 2 || !entityTag.endsWith("\""))
+            return entityTag;
+        return entityTag.substring(0, entityTag.length() - 1) + '-' + coding + '"';
+    }
+
+    /**
+     * Whether the client already has the current version of the resource and can be answered with a 304
+     * If-None-Match is used when present, If-Modified-Since otherwise
+     * entityTag may be null and lastModified -1 if the resource does not have them
+     */
+    public static boolean isNotModified(HTTPRequest request, String entityTag, long lastModified) {
+        String ifNoneMatch = request.getHeaders().getHeader(HeaderNames.IF_NONE_MATCH);
+        if(ifNoneMatch != null)
+            return entityTag != null && matchesAny(ifNoneMatch, entityTag);
+
+        long ifModifiedSince = HTTPDates.parse(request.getHeaders().getHeader(HeaderNames.IF_MODIFIED_SINCE));
+        // dates in headers are precise to the second
+        return ifModifiedSince >= 0 && lastModified >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * Whether the range header of the request applies : when there is no If-Range, or when it has the current validator
+     * Otherwise the client's part of the resource is out of date and the whole resource must be sent
+     * Entity tags are compared strongly, as the parts must come from the same bytes, and a date must be the modification time
+     */
+    public static boolean ifRangeMatches(HTTPRequest request, String entityTag, long lastModified) {
+        String ifRange = request.getHeaders().getHeader(HeaderNames.IF_RANGE);
+        if(ifRange == null)
+            return true;
+        ifRange = ifRange.strip();
+        if(ifRange.startsWith("\""))
+            return ifRange.equals(entityTag);
+        if(ifRange.startsWith("W/"))
+            return false;
+        long date = HTTPDates.parse(ifRange);
+        return date >= 0 && lastModified >= 0 && date / 1000 == lastModified / 1000;
+    }
+
+    // weak comparison of the entity tag with a list of entity tags, or "*"
+    private static boolean matchesAny(String list, String entityTag) {
+        String opaqueTag = opaqueTag(entityTag);
+        for(String candidate : list.split(",")) {
+            candidate = candidate.strip();
+            if(candidate.equals("*") || opaqueTag(candidate).equals(opaqueTag))
+                return true;
+        }
+        return false;
+    }
+
+    // the entity tag without its weakness indicator and its coding suffix
+    private static String opaqueTag(String entityTag) {
+        String tag = entityTag.startsWith("W/") ? entityTag.substring(2) : entityTag;
+        for(String suffix : CODING_SUFFIXES) {
+            if(tag.endsWith(suffix))
+                return tag.substring(0, tag.length() - suffix.length()) + '"';
+        }
+        return tag;
+    }
+}
@@ -0,0 +1,92 @@
+package fr.insa.http.messages;
+
+import fr.insa.http.enums.HTTPStatus;
+import fr.insa.http.util.Compression;
+import fr.insa.http.util.HTTPHeaders;
+import fr.insa.http.util.HeaderNames;
+
+import java.io.OutputStream;
+
+/**
+ * Compresses the bodies of responses with the coding the client prefers, when their content type is worth it
+ * Bodies in memory are compressed at once, bodies produced by a BodyWriter as they are written
+ * Responses that already have a content-encoding are left alone, it is how handlers send precompressed data,
+ * and so are file bodies and partial responses
+ */
+public class ResponseCompressor {
+    private int minSize;
+
+    /**
+     * Bodies in memory smaller than minSize bytes are sent as they are, compressing them saves too little
+     */
+    public ResponseCompressor(int minSize) {
+        this.minSize = minSize;
+    }
+
+    /**
+     * Compresses the body of the response if the request allows it
+     * defaultContentType is the content type the response gets when it does not set one, it may be null
+     */
+    public void compress(HTTPRequest request, HTTPResponse response, String defaultContentType) {
+        HTTPHeaders headers = response.getHeaders();
+        byte[] body = response.getBody();
+        BodyWriter bodyWriter = response.getBodyWriter();
+        if(body == null && bodyWriter == null)
+            return;
+        if(body != null && body.length < this.minSize)
+            return;
+        if(headers.hasHeader(HeaderNames.CONTENT_ENCODING) || response.getStatus() == HTTPStatus.PARTIAL_CONTENT)
+            return;
+        String contentType = headers.getHeader(HeaderNames.CONTENT_TYPE);
+        if(!Compression.isCompressible(contentType == null ? defaultContentType : contentType))
+            return;
+
+        // caches must not give the compressed body to clients that did not ask for it, or the opposite
+        addVary(headers, HeaderNames.ACCEPT_ENCODING);
+        String coding = Compression.negotiate(request.getHeaders().getHeader(HeaderNames.ACCEPT_ENCODING));
+        if(coding == null)
+            return;
+
+        if(body != null) {
+            byte[] compressed = Compression.compress(body, coding);
+            if(compressed.length >= body.length)
+                return;
+            response.setBody(compressed);
+            if(headers.hasHeader(HeaderNames.CONTENT_LENGTH))
+                headers.setHeader(HeaderNames.CONTENT_LENGTH, Integer.toString(compressed.length));
+        }
+        else {
+            // the length is not known until the body is written, it is sent in chunks
+            headers.setHeader(HeaderNames.CONTENT_LENGTH, null);
+            response.setBody(out -> {
+                try(OutputStream compressed = Compression.compressingStream(out, coding)) {
+                    bodyWriter.writeTo(compressed);
+                }
+            });
+        }
+        headers.setHeader(HeaderNames.CONTENT_ENCODING, coding);
+        // the compressed body is another representation, with its own entity tag
+        String entityTag = headers.getHeader(HeaderNames.ETAG);
+        if(entityTag != null)
+            headers.setHeader(HeaderNames.ETAG, Preconditions.encodedEntityTag(entityTag, coding));
+    }
+
+    /**
+     * Adds the given request header to the vary header of the response, if it is not already there
+     */
+    public static void addVary(HTTPHeaders headers, String header) {
+        String vary = headers.getHeader(HeaderNames.VARY);
+        if(vary == null)
+            headers.setHeader(HeaderNames.VARY, header);
+        else if(!containsToken(vary, header))
+            headers.setHeader(HeaderNames.VARY, vary + ", " + header);
+    }
+
+    private static boolean containsToken(String list, String token) {
+        for(String element : list.split(",")) {
+            if(element.strip().equalsIgnoreCase(token))
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,74 @@
+package fr.insa.http.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds, with buckets laid out like HdrHistogram's :
+ * every power of two is split in SUB_BUCKETS linear buckets, so a recorded value is known within 1/SUB_BUCKETS of itself
+ * whatever its magnitude, from nanoseconds to minutes, with a few hundred counters
+ * Recording finds the bucket with a couple of shifts and increments it, it never locks or allocates
+ * Durations longer than 2^MAX_EXPONENT nanoseconds (about 18 minutes) are counted in the last bucket
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int MAX_EXPONENT = 40;
+
+    // the last bucket is for the durations too long to be told apart
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + 1;
+
+    private final AtomicLongArray counts;
+
+    private final LongAdder sum;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.sum = new LongAdder();
+    }
+
+    public void record(long nanos) {
+        this.counts.getAndIncrement(indexOf(nanos));
+        this.sum.add(nanos);
+    }
+
+    /**
+     * Number of durations recorded in the given bucket
+     */
+    long count(int bucket) {
+        return this.counts.get(bucket);
+    }
+
+    /**
+     * Sum of the durations recorded, in nanoseconds
+     */
+    long sum() {
+        return this.sum.sum();
+    }
+
+    // values below SUB_BUCKETS have a bucket each, then each power of two 2^e is split in SUB_BUCKETS buckets of 2^(e - SUB_BUCKET_BITS)
+    static int indexOf(long nanos) {
+        if(nanos < SUB_BUCKETS)
+            return (int)Math.max(nanos, 0);
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if(exponent >= MAX_EXPONENT)
+            return BUCKETS - 1;
+        int subBucket = (int)(nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * The smallest value that is not counted in the given bucket, Long.MAX_VALUE for the last one
+     */
+    static long upperBound(int bucket) {
+        if(bucket == BUCKETS - 1)
+            return Long.MAX_VALUE;
+        if(bucket < SUB_BUCKETS)
+            return bucket + 1;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        return (1L << exponent) + ((subBucket + 1L) << (exponent - SUB_BUCKET_BITS));
+    }
+}
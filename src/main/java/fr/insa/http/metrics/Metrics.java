@@ -0,0 +1,99 @@
+package fr.insa.http.metrics;
+
+import fr.insa.http.ConnectionStats;
+import fr.insa.http.executors.ConnectionExecutor;
+import fr.insa.http.logging.AccessLog;
+import fr.insa.http.util.BufferPool;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The metrics of the server, recorded by the code serving connections and exported in the Prometheus text format
+ * Each step of a request has its own histogram : waiting for a thread once accepted, parsing the head,
+ * running the handler (per route, method and status) and writing the response
+ * Connection counts come from ConnectionStats, thread counts from the ConnectionExecutor given to setExecutor()
+ */
+public final class Metrics {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // from accept() to the connection being served by a worker or a selector loop
+    public static final LatencyHistogram ACCEPT = new LatencyHistogram();
+
+    // from the end of the head being received to the request being ready for its handler
+    public static final LatencyHistogram PARSE = new LatencyHistogram();
+
+    // from the response being ready to its last byte being handed to the socket
+    public static final LatencyHistogram WRITE = new LatencyHistogram();
+
+    // by route name
+    private static final Map<String, RouteMetrics> ROUTES = new ConcurrentHashMap<>();
+
+    private static volatile ConnectionExecutor executor;
+
+    private Metrics() {}
+
+    /**
+     * The metrics of the route with the given name, the same object for every call with the same name
+     */
+    public static RouteMetrics route(String name) {
+        return ROUTES.computeIfAbsent(name, RouteMetrics::new);
+    }
+
+    /**
+     * Exports the thread counts of the given executor
+     */
+    public static void setExecutor(ConnectionExecutor connectionExecutor) {
+        executor = connectionExecutor;
+    }
+
+    /**
+     * All the metrics in the Prometheus text format
+     */
+    public static String scrape() {
+        StringBuilder text = new StringBuilder(16 * 1024);
+        PrometheusWriter out = new PrometheusWriter(text);
+
+        out.header("http_connections_opened_total", "counter", "Connections served since startup");
+        out.sample("http_connections_opened_total", ConnectionStats.getOpenedCount());
+        out.header("http_connections_active", "gauge", "Connections currently open");
+        out.sample("http_connections_active", ConnectionStats.getActiveCount());
+
+        ConnectionExecutor connectionExecutor = executor;
+        if(connectionExecutor != null) {
+            out.header("http_worker_threads", "gauge", "Threads alive in the connection executor");
+            out.sample("http_worker_threads", connectionExecutor.getPoolSize());
+            out.header("http_worker_threads_busy", "gauge", "Threads of the connection executor running a task");
+            out.sample("http_worker_threads_busy", connectionExecutor.getActiveCount());
+            out.header("http_worker_queue_depth", "gauge", "Tasks waiting for a thread of the connection executor");
+            out.sample("http_worker_queue_depth", connectionExecutor.getQueueDepth());
+            out.header("http_worker_rejected_total", "counter", "Tasks rejected because the connection executor was full");
+            out.sample("http_worker_rejected_total", connectionExecutor.getRejectedCount());
+        }
+
+        out.header("http_access_log_dropped_total", "counter", "Access log entries dropped because the writer could not keep up");
+        out.sample("http_access_log_dropped_total", AccessLog.getDroppedCount());
+
+        BufferPool[] pools = {BufferPool.HEAP, BufferPool.DIRECT};
+        out.header("http_buffer_pool_bytes", "gauge", "Bytes of the buffers waiting in a buffer pool");
+        for(BufferPool pool : pools)
+            out.sample("http_buffer_pool_bytes", pool.getPooledBytes(), "pool", pool.getName());
+        out.header("http_buffers_leased", "gauge", "Pooled buffers leased by the connections, it keeps growing if buffers leak");
+        for(BufferPool pool : pools)
+            out.sample("http_buffers_leased", pool.getLeasedCount(), "pool", pool.getName());
+        out.header("http_buffers_allocated_total", "counter", "Buffers a buffer pool had to allocate because none was free");
+        for(BufferPool pool : pools)
+            out.sample("http_buffers_allocated_total", pool.getAllocatedCount(), "pool", pool.getName());
+
+        out.header("http_accept_wait_seconds", "histogram", "Time between accepting a connection and starting to serve it");
+        out.histogram("http_accept_wait_seconds", ACCEPT);
+        out.header("http_request_parse_seconds", "histogram", "Time spent parsing the head of requests");
+        out.histogram("http_request_parse_seconds", PARSE);
+        out.header("http_request_duration_seconds", "histogram", "Time spent in the request handler, by method, route and status");
+        for(RouteMetrics route : ROUTES.values())
+            route.writeTo(out, "http_request_duration_seconds");
+        out.header("http_response_write_seconds", "histogram", "Time spent writing responses to the socket");
+        out.histogram("http_response_write_seconds", WRITE);
+        return text.toString();
+    }
+}
@@ -0,0 +1,100 @@
+package fr.insa.http.metrics;
+
+/**
+ * Writes metrics in the Prometheus text exposition format (version 0.0.4)
+ * Histograms are exported with the fixed bounds of LE_LABELS, in seconds : a bucket of a LatencyHistogram is counted under the first
+ * bound it is entirely below, so a duration can be counted one bound too high, never too low
+ */
+final class PrometheusWriter {
+    private static final String[] LE_LABELS = {
+        "0.000001", "0.0000025", "0.000005", "0.00001", "0.000025", "0.00005", "0.0001", "0.00025", "0.0005",
+        "0.001", "0.0025", "0.005", "0.01", "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10"
+    };
+
+    // LE_LIMITS[i] is the number of buckets of a LatencyHistogram counted under LE_LABELS[i]
+    private static final int[] LE_LIMITS = new int[LE_LABELS.length];
+
+    static {
+        int bucket = 0;
+        for(int i = 0; i < LE_LABELS.length; i++) {
+            long nanos = Math.round(Double.parseDouble(LE_LABELS[i]) * 1e9);
+            while(bucket < LatencyHistogram.BUCKETS && LatencyHistogram.upperBound(bucket) <= nanos)
+                bucket++;
+            LE_LIMITS[i] = bucket;
+        }
+    }
+
+    private final StringBuilder out;
+
+    PrometheusWriter(StringBuilder out) {
+        this.out = out;
+    }
+
+    /**
+     * Starts a metric, its samples must follow before the next one starts
+     */
+    void header(String name, String type, String help) {
+        this.out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        this.out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    void sample(String name, long value, String... labels) {
+        this.out.append(name);
+        this.labels(labels, null);
+        this.out.append(' ').append(value).append('\n');
+    }
+
+    void histogram(String name, LatencyHistogram histogram, String... labels) {
+        long cumulative = 0;
+        int bucket = 0;
+        for(int i = 0; i < LE_LIMITS.length; i++) {
+            for(; bucket < LE_LIMITS[i]; bucket++)
+                cumulative += histogram.count(bucket);
+            this.out.append(name).append("_bucket");
+            this.labels(labels, LE_LABELS[i]);
+            this.out.append(' ').append(cumulative).append('\n');
+        }
+        for(; bucket < LatencyHistogram.BUCKETS; bucket++)
+            cumulative += histogram.count(bucket);
+        this.out.append(name).append("_bucket");
+        this.labels(labels, "+Inf");
+        this.out.append(' ').append(cumulative).append('\n');
+
+        this.out.append(name).append("_sum");
+        this.labels(labels, null);
+        this.out.append(' ').append(histogram.sum() / 1e9).append('\n');
+        // the count is the one of the +Inf bucket, even if durations were recorded while the buckets were read
+        this.out.append(name).append("_count");
+        this.labels(labels, null);
+        this.out.append(' ').append(cumulative).append('\n');
+    }
+
+    // labels are given as name, value, name, value...
+    private void labels(String[] labels, String le) {
+        if(labels.length == 0 && le == null)
+            return;
+        this.out.append('{');
+        for(int i = 0; i < labels.length; i += 2) {
+            if(i > 0)
+                this.out.append(',');
+            this.out.append(labels[i]).append("=\"");
+            this.escape(labels[i + 1]);
+            this.out.append('"');
+        }
+        if(le != null)
+            this.out.append(labels.length > 0 ? "," : "").append("le=\"").append(le).append('"');
+        this.out.append('}');
+    }
+
+    private void escape(String value) {
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '\\' || c == '"')
+                this.out.append('\\').append(c);
+            else if(c == '\n')
+                this.out.append("\\n");
+            else
+                this.out.append(c);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package fr.insa.http.metrics;
+
+import fr.insa.http.enums.HTTPMethod;
+import fr.insa.http.enums.HTTPStatus;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The time spent handling the requests of a route, with a histogram per http method and status
+ * Histograms are indexed by the ordinals of the method and the status and created the first time they are needed,
+ * so recording a request looks nothing up by name and allocates nothing after the first request of each kind
+ */
+public final class RouteMetrics {
+    private static final HTTPMethod[] METHODS = HTTPMethod.values();
+
+    private static final HTTPStatus[] STATUSES = HTTPStatus.values();
+
+    private final String route;
+
+    private final AtomicReferenceArray<LatencyHistogram> histograms;
+
+    RouteMetrics(String route) {
+        this.route = route;
+        this.histograms = new AtomicReferenceArray<>(METHODS.length * STATUSES.length);
+    }
+
+    public String getRoute() {
+        return this.route;
+    }
+
+    public void record(HTTPMethod method, HTTPStatus status, long nanos) {
+        int index = method.ordinal() * STATUSES.length + status.ordinal();
+        LatencyHistogram histogram = this.histograms.get(index);
+        if(histogram == null) {
+            this.histograms.compareAndSet(index, null, new LatencyHistogram());
+            histogram = this.histograms.get(index);
+        }
+        histogram.record(nanos);
+    }
+
+    // writes a series per method and status that had requests
+    void writeTo(PrometheusWriter out, String name) {
+        for(int i = 0; i < this.histograms.length(); i++) {
+            LatencyHistogram histogram = this.histograms.get(i);
+            if(histogram != null) {
+                HTTPMethod method = METHODS[i / STATUSES.length];
+                HTTPStatus status = STATUSES[i % STATUSES.length];
+                out.histogram(name, histogram, "method", method.name(), "route", this.route, "status", Integer.toString(status.getCode()));
+            }
+        }
+    }
+}
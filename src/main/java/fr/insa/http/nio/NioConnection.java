@@ -0,0 +1,543 @@
+package fr.insa.http.nio;
+
+import fr.insa.http.ConnectionStats;
+import fr.insa.http.ConnectionTimeouts;
+import fr.insa.http.ServerConfig;
+import fr.insa.http.enums.HTTPStatus;
+import fr.insa.http.logging.AccessLog;
+import fr.insa.http.messages.FileBody;
+import fr.insa.http.messages.HTTPParseException;
+import fr.insa.http.messages.HTTPRequest;
+import fr.insa.http.messages.HTTPRequestDecoder;
+import fr.insa.http.messages.HTTPResponse;
+import fr.insa.http.metrics.Metrics;
+import fr.insa.http.util.BufferArena;
+import fr.insa.http.util.ByteBuilder;
+import fr.insa.http.util.TimerWheel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The state of one client connection of a SelectorLoop
+ * Requests of a connection are handled one at a time : the connection stops reading while a request is being handled
+ * and resumes once its response has been written, so pipelined requests are answered in order
+ * Each phase of the connection has its timeout : waiting for a request, receiving its head, receiving its body and writing the response
+ * Only the loop thread touches the fields of this class, timeouts expiring on the thread of the timer wheel are handed back to it
+ * The exception is a request being handled : the executor thread has the connection to itself until it hands back the response
+ * The buffers of incomplete requests are leased from the BufferArena of the connection, and the request is reused once answered
+ */
+class NioConnection {
+    private static final Logger LOGGER = LogManager.getLogger(NioConnection.class);
+
+    private static final int MAX_REQUESTS = ServerConfig.getInt(ServerConfig.KEEP_ALIVE_MAX, 100);
+
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int NO_TIMEOUT = 0;
+
+    private static final int IDLE = 1;
+
+    private static final int HEAD = 2;
+
+    private static final int BODY = 3;
+
+    private static final int WRITE = 4;
+
+    private SelectorLoop loop;
+
+    private SocketChannel channel;
+
+    // the address of the client, for the access log
+    private InetAddress client;
+
+    private SelectionKey key;
+
+    private HTTPRequestDecoder decoder;
+
+    // bytes received but not decoded yet, null when there are none so idle connections hold no buffer
+    private ByteBuffer pending;
+
+    // where pending comes from, closed with the connection
+    private BufferArena buffers;
+
+    // the request being handled, given back to the decoder once its response has been written
+    private HTTPRequest request;
+
+    // the head and the in memory body of the response being written, sent with gathering writes, null when there is none
+    private ByteBuffer[] output;
+
+    // output is one of these, reused for every response of the connection
+    private ByteBuffer[] headOnly;
+
+    private ByteBuffer[] headAndBody;
+
+    // the view of headBuffer given to the gathering writes, wrapped again only when headBuffer grows
+    private ByteBuffer headView;
+
+    // the head of each response is encoded here, responses are written one at a time so it is reused for all of them
+    private ByteBuilder headBuffer;
+
+    // the file sent after output when the response has a FileBody, null when there is none
+    private FileChannel file;
+
+    private long filePosition;
+
+    private long fileRemaining;
+
+    private boolean closeAfterWrite;
+
+    // what the executor thread needs to handle the request and what it makes of it, handed over by the task queues
+    private boolean keepAlive;
+
+    private long received;
+
+    private FileBody fileBody;
+
+    // the tasks handing the request to the executor and its response back to the loop, made once
+    private Runnable handle;
+
+    private Runnable respondHandled;
+
+    // when the response being written was ready, in System.nanoTime() time
+    private long writeStart;
+
+    private long requestCount;
+
+    // the phase the current timeout is for, one of the constants above
+    private int timeoutPhase;
+
+    // the timeouts of the phases, made once and started again for each request, those only some requests need are made when first needed
+    private TimerWheel.Timeout idleTimeout;
+
+    private TimerWheel.Timeout headTimeout;
+
+    private ConnectionTimeouts.Watchdog bodyWatchdog;
+
+    private ConnectionTimeouts.Watchdog writeWatchdog;
+
+    // read by the watchdogs from the thread of the timer wheel
+    private volatile long bytesReceived;
+
+    private volatile long bytesSent;
+
+    NioConnection(SelectorLoop loop, SocketChannel channel, SelectionKey key) {
+        this.loop = loop;
+        this.channel = channel;
+        this.client = channel.socket().getInetAddress();
+        this.key = key;
+        this.decoder = new HTTPRequestDecoder();
+        this.buffers = new BufferArena();
+        this.headBuffer = new ByteBuilder();
+        this.headOnly = new ByteBuffer[1];
+        this.headAndBody = new ByteBuffer[2];
+        this.handle = this::handle;
+        this.respondHandled = this.guarded(() -> this.respond(this.output, this.file, this.fileBody, this.keepAlive));
+        ConnectionStats.connectionOpened();
+        this.idleTimeout = ConnectionTimeouts.WHEEL.newTimeout(this.onLoop(IDLE), ConnectionTimeouts.IDLE);
+        this.updateTimeout(IDLE);
+    }
+
+    void onReadable(ByteBuffer readBuffer) {
+        try {
+            readBuffer.clear();
+            int read = this.channel.read(readBuffer);
+            if(read < 0) {
+                this.close();
+                return;
+            }
+            this.bytesReceived += read;
+            readBuffer.flip();
+
+            // decode directly from the shared buffer unless part of the request was received earlier
+            ByteBuffer in;
+            if(this.pending == null)
+                in = readBuffer;
+            else {
+                this.append(readBuffer);
+                in = this.pending;
+            }
+            this.decodeFrom(in);
+        }
+        catch(IOException e) {
+            LOGGER.debug("Error while reading from connection", e);
+            this.close();
+        }
+    }
+
+    void onWritable() {
+        try {
+            this.writeOutput();
+        }
+        catch(IOException e) {
+            LOGGER.debug("Error while writing to connection", e);
+            this.close();
+        }
+    }
+
+    private void decodeFrom(ByteBuffer in) throws IOException {
+        HTTPRequest request;
+        try {
+            request = this.decoder.decode(in);
+        }
+        // the request could not be read, the rest of the stream can't be trusted
+        catch(HTTPParseException e) {
+            LOGGER.warn("Refusing request : {}", e.getMessage());
+            AccessLog.log(this.client, System.currentTimeMillis(), null, e.getStatus().getCode(), 0);
+            this.dropPending();
+            this.respond(errorResponse(e.getStatus()), false);
+            return;
+        }
+
+        // keep what was not consumed, it is either the start of the current request or a pipelined one
+        this.keepRemaining(in);
+
+        if(request == null) {
+            // the client waits for our go before sending the body, given once as the body starts being waited for
+            if(this.decoder.inBody() && this.timeoutPhase != BODY && this.decoder.expectsContinue())
+                this.sendContinue();
+            this.key.interestOps(SelectionKey.OP_READ);
+            // a chunked body consumes the buffer, what is left to decode is not the only sign of a request in progress
+            this.updateTimeout(this.decoder.inBody() ? BODY : this.pending != null ? HEAD : IDLE);
+        }
+        else {
+            this.updateTimeout(NO_TIMEOUT);
+            this.key.interestOps(0);
+            this.dispatch(request);
+        }
+    }
+
+    // the response of the previous request has been written by now, the socket buffer has room for this
+    private void sendContinue() throws IOException {
+        ByteBuffer interim = ByteBuffer.wrap(CONTINUE);
+        this.bytesSent += this.channel.write(interim);
+        if(interim.hasRemaining())
+            throw new IOException("Could not send 100 Continue");
+    }
+
+    // starts the timeout of the given phase, unless it is already running, the handler has no timeout
+    private void updateTimeout(int phase) {
+        if(phase == this.timeoutPhase)
+            return;
+        this.cancelTimeout();
+        this.timeoutPhase = phase;
+        if(phase == IDLE)
+            this.idleTimeout.start();
+        else if(phase == HEAD) {
+            if(this.headTimeout == null)
+                this.headTimeout = ConnectionTimeouts.WHEEL.newTimeout(this.onLoop(HEAD), ConnectionTimeouts.HEAD);
+            this.headTimeout.start();
+        }
+        // the connection only waits for the client in these phases
+        else if(phase == BODY) {
+            if(this.bodyWatchdog == null)
+                this.bodyWatchdog = ConnectionTimeouts.bodyWatchdog(() -> this.bytesReceived, () -> true, this.onLoop(BODY));
+            this.bodyWatchdog.start();
+        }
+        else if(phase == WRITE) {
+            if(this.writeWatchdog == null)
+                this.writeWatchdog = ConnectionTimeouts.writeWatchdog(() -> this.bytesSent, () -> true, this.onLoop(WRITE));
+            this.writeWatchdog.start();
+        }
+    }
+
+    private void cancelTimeout() {
+        int phase = this.timeoutPhase;
+        this.timeoutPhase = NO_TIMEOUT;
+        if(phase == IDLE)
+            this.idleTimeout.cancel();
+        else if(phase == HEAD)
+            this.headTimeout.cancel();
+        else if(phase == BODY)
+            this.bodyWatchdog.cancel();
+        else if(phase == WRITE)
+            this.writeWatchdog.cancel();
+    }
+
+    // the task of the timer wheel for the timeout of a phase, it hands the timeout to the loop thread
+    private Runnable onLoop(int phase) {
+        return () -> this.loop.execute(this.guarded(() -> {
+            if(phase == this.timeoutPhase && this.isExpired(phase))
+                this.timedOut(phase);
+        }));
+    }
+
+    // false if the timeout was cancelled or started again while the loop was busy, it is then ignored
+    private boolean isExpired(int phase) {
+        if(phase == IDLE)
+            return this.idleTimeout.isExpired();
+        if(phase == HEAD)
+            return this.headTimeout.isExpired();
+        if(phase == BODY)
+            return this.bodyWatchdog.isExpired();
+        return this.writeWatchdog.isExpired();
+    }
+
+    private void timedOut(int phase) {
+        this.cancelTimeout();
+        if(phase == HEAD || phase == BODY) {
+            LOGGER.warn("Request timed out");
+            this.requestCount++;
+            AccessLog.log(this.client, System.currentTimeMillis(), null, HTTPStatus.REQUEST_TIMEOUT.getCode(), 0);
+            this.decoder.reset();
+            this.dropPending();
+            this.respond(errorResponse(HTTPStatus.REQUEST_TIMEOUT), false);
+        }
+        else {
+            if(phase == WRITE)
+                LOGGER.warn("Closed a connection that was too slow to read its response");
+            this.close();
+        }
+    }
+
+    // hands the request to the executor, the response comes back to the loop thread to be written
+    private void dispatch(HTTPRequest request) {
+        this.request = request;
+        this.requestCount++;
+        this.keepAlive = request.isKeepAlive() && this.requestCount < MAX_REQUESTS;
+        this.received = System.currentTimeMillis();
+        if(!this.loop.getExecutor().tryExecute(this.handle)) {
+            LOGGER.warn("Request rejected : {}", this.loop.getExecutor());
+            AccessLog.log(this.client, this.received, request, HTTPStatus.SERVICE_UNAVAILABLE.getCode(), 0);
+            this.respond(errorResponse(HTTPStatus.SERVICE_UNAVAILABLE), false);
+        }
+    }
+
+    // runs on the executor thread
+    private void handle() {
+        HTTPRequest request = this.request;
+        try {
+            HTTPResponse response = this.loop.getRequestHandler().handleRequest(request);
+            this.keepAlive = response.prepare(request, this.keepAlive);
+            // logged on the executor thread, the loop only writes
+            AccessLog.log(this.client, this.received, request, response.getStatus().getCode(), response.getBodyLength());
+            this.output = this.serialize(response);
+            this.fileBody = response.getFileBody();
+            this.file = this.fileBody == null ? null : this.fileBody.open();
+            this.loop.execute(this.respondHandled);
+        }
+        catch(IOException | RuntimeException e) {
+            LOGGER.error("An error occurred while handling request", e);
+            this.loop.execute(this.guarded(this::close));
+        }
+    }
+
+    private void respond(byte[] data, boolean keepAlive) {
+        this.respond(new ByteBuffer[] {ByteBuffer.wrap(data)}, null, null, keepAlive);
+    }
+
+    private void respond(ByteBuffer[] data, FileChannel file, FileBody fileBody, boolean keepAlive) {
+        this.output = data;
+        this.writeStart = System.nanoTime();
+        this.file = file;
+        if(file != null) {
+            this.filePosition = fileBody.getPosition();
+            this.fileRemaining = fileBody.getLength();
+        }
+        this.closeAfterWrite = !keepAlive;
+        if(!this.channel.isOpen())
+            this.close();
+        else {
+            this.updateTimeout(WRITE);
+            this.onWritable();
+        }
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers) {
+        for(ByteBuffer buffer : buffers) {
+            if(buffer.hasRemaining())
+                return true;
+        }
+        return false;
+    }
+
+    private void writeOutput() throws IOException {
+        // any of the buffers can be empty, like the body of an empty file, so all of them are checked
+        if(hasRemaining(this.output)) {
+            this.bytesSent += this.channel.write(this.output);
+            if(hasRemaining(this.output)) {
+                this.key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+
+        // the kernel copies the file to the socket, it never goes through the heap
+        if(this.file != null) {
+            long sent = this.file.transferTo(this.filePosition, this.fileRemaining, this.channel);
+            this.bytesSent += sent;
+            this.filePosition += sent;
+            this.fileRemaining -= sent;
+            if(this.fileRemaining > 0) {
+                if(sent == 0 && this.filePosition >= this.file.size())
+                    throw new IOException("File is shorter than expected");
+                this.key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            this.closeFile();
+        }
+
+        // the body is not kept alive by an idle connection
+        this.headAndBody[1] = null;
+        this.output = null;
+        Metrics.WRITE.record(System.nanoTime() - this.writeStart);
+        if(this.request != null) {
+            this.decoder.recycle(this.request);
+            this.request = null;
+        }
+        if(this.closeAfterWrite)
+            this.close();
+        // a pipelined request may already be waiting
+        else if(this.pending != null)
+            this.decodeFrom(this.pending);
+        else {
+            this.key.interestOps(SelectionKey.OP_READ);
+            this.updateTimeout(IDLE);
+        }
+    }
+
+    private void keepRemaining(ByteBuffer in) {
+        if(!in.hasRemaining())
+            this.dropPending();
+        else if(in != this.pending) {
+            this.dropPending();
+            this.pending = this.buffers.heap(Math.max(in.remaining() * 2, 1024));
+            this.pending.put(in);
+            this.pending.flip();
+        }
+    }
+
+    private void dropPending() {
+        if(this.pending != null) {
+            this.buffers.release(this.pending);
+            this.pending = null;
+        }
+    }
+
+    // wraps a task handed to the loop thread, so that a failure closes this connection and not the loop
+    private Runnable guarded(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            }
+            catch(RuntimeException e) {
+                this.fail(e);
+            }
+        };
+    }
+
+    /**
+     * Closes the connection after an unexpected error, whatever state it was left in
+     */
+    void fail(RuntimeException e) {
+        LOGGER.error("Unexpected error on a connection, closing it", e);
+        try {
+            this.close();
+        }
+        catch(RuntimeException closeError) {
+            LOGGER.debug("Error while closing connection", closeError);
+        }
+        // close() may have failed before reaching the socket
+        this.key.cancel();
+        SelectorLoop.closeQuietly(this.channel);
+    }
+
+    private void closeFile() {
+        if(this.file != null) {
+            try {
+                this.file.close();
+            }
+            catch(IOException e) {
+                LOGGER.debug("Error while closing file", e);
+            }
+            this.file = null;
+        }
+    }
+
+    private void close() {
+        this.cancelTimeout();
+        this.closeFile();
+        if(!this.channel.isOpen())
+            return;
+        LOGGER.debug("Closing connection after {} requests", this.requestCount);
+        ConnectionStats.connectionClosed(this.requestCount);
+        this.key.cancel();
+        this.pending = null;
+        this.buffers.close();
+        this.output = null;
+        this.request = null;
+        SelectorLoop.closeQuietly(this.channel);
+    }
+
+    // appends data to the readable bytes of pending, moving them to a bigger buffer if needed
+    private void append(ByteBuffer data) {
+        ByteBuffer pending = this.pending;
+        if(pending.capacity() - pending.limit() >= data.remaining()) {
+            int position = pending.position();
+            pending.position(pending.limit());
+            pending.limit(pending.capacity());
+            pending.put(data);
+            pending.flip();
+            pending.position(position);
+            return;
+        }
+
+        int needed = pending.remaining() + data.remaining();
+        if(needed <= pending.capacity())
+            pending.compact();
+        else {
+            this.pending = this.buffers.heap(Math.max(needed, pending.capacity() * 2)).put(pending);
+            this.buffers.release(pending);
+        }
+        this.pending.put(data);
+        this.pending.flip();
+    }
+
+    // the head is encoded into the buffer of the connection and the body is sent from where it is, without copies
+    // a streamed body is produced into memory here, on the executor thread, so the loop only has bytes to send
+    private ByteBuffer[] serialize(HTTPResponse response) throws IOException {
+        if(response.getBodyWriter() != null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            response.toOutputStream(out, this.headBuffer);
+            return new ByteBuffer[] {ByteBuffer.wrap(out.toByteArray())};
+        }
+
+        this.headBuffer.reset();
+        response.writeHead(this.headBuffer);
+        ByteBuffer head = this.headView;
+        if(head == null || head.array() != this.headBuffer.array())
+            head = ByteBuffer.wrap(this.headBuffer.array());
+        head.limit(this.headBuffer.length());
+        head.position(0);
+        this.headView = head;
+        // shared buffers are sent from a view of them, a file body is sent separately
+        ByteBuffer body;
+        if(response.getBufferBody() != null)
+            body = response.getBufferBody().duplicate();
+        else if(response.getBody() != null)
+            body = ByteBuffer.wrap(response.getBody());
+        else {
+            this.headOnly[0] = head;
+            return this.headOnly;
+        }
+        this.headAndBody[0] = head;
+        this.headAndBody[1] = body;
+        return this.headAndBody;
+    }
+
+    private static byte[] errorResponse(HTTPStatus status) {
+        HTTPResponse response = new HTTPResponse(status);
+        response.getHeaders().setHeader("content-length", "0");
+        response.getHeaders().setHeader("connection", "close");
+        ByteBuilder head = new ByteBuilder();
+        response.writeHead(head);
+        return head.toByteArray();
+    }
+}
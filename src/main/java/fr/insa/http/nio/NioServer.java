@@ -0,0 +1,54 @@
+package fr.insa.http.nio;
+
+import fr.insa.http.RequestHandler;
+import fr.insa.http.executors.ConnectionExecutor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A server front end based on non-blocking channels
+ * Connections are spread over a few selector loops, each running on its own thread,
+ * so an idle connection only costs its channel and not a whole thread
+ * Requests are still handled on the ConnectionExecutor, since handlers may block
+ */
+public class NioServer {
+    private static final Logger LOGGER = LogManager.getLogger(NioServer.class);
+
+    private int port;
+
+    private SelectorLoop[] loops;
+
+    public NioServer(int port, RequestHandler requestHandler, ConnectionExecutor executor, int loopCount) throws IOException {
+        if(loopCount < 1)
+            throw new IllegalArgumentException("at least one selector loop is needed");
+        this.port = port;
+        this.loops = new SelectorLoop[loopCount];
+        for(int i = 0; i < loopCount; i++)
+            this.loops[i] = new SelectorLoop(requestHandler, executor);
+    }
+
+    /**
+     * Starts the selector loops then accepts connections forever, handing them to the loops in turn
+     * A connection stays on the same loop for its whole life
+     */
+    public void run() throws IOException {
+        for(int i = 0; i < this.loops.length; i++)
+            new Thread(this.loops[i], "Selector-" + i).start();
+        LOGGER.info("Handling connections with {} selector loops", this.loops.length);
+
+        try(ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(this.port));
+            int next = 0;
+            while(true) {
+                SocketChannel channel = serverChannel.accept();
+                this.loops[next].register(channel);
+                next = (next + 1) % this.loops.length;
+            }
+        }
+    }
+}
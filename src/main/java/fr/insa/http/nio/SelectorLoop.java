@@ -0,0 +1,135 @@
+package fr.insa.http.nio;
+
+import fr.insa.http.RequestHandler;
+import fr.insa.http.executors.ConnectionExecutor;
+import fr.insa.http.metrics.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * An event loop waiting on a Selector for the connections registered to it
+ * All the I/O of those connections happens on the thread running the loop,
+ * other threads hand it work through execute()
+ */
+class SelectorLoop implements Runnable {
+    private static final Logger LOGGER = LogManager.getLogger(SelectorLoop.class);
+
+    // size of the buffer every read of the loop goes through
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private Selector selector;
+
+    private Queue<Runnable> tasks;
+
+    // shared by all the connections of the loop, connections only keep the bytes of incomplete requests
+    private ByteBuffer readBuffer;
+
+    private RequestHandler requestHandler;
+
+    private ConnectionExecutor executor;
+
+    // handles the ready keys as the selector finds them, without going through its set of selected keys
+    private Consumer<SelectionKey> onSelected;
+
+    SelectorLoop(RequestHandler requestHandler, ConnectionExecutor executor) throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        this.requestHandler = requestHandler;
+        this.executor = executor;
+        this.onSelected = this::onSelected;
+    }
+
+    RequestHandler getRequestHandler() {
+        return this.requestHandler;
+    }
+
+    ConnectionExecutor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * Adds a freshly accepted connection to this loop, can be called from any thread
+     */
+    void register(SocketChannel channel) {
+        long acceptedAt = System.nanoTime();
+        this.execute(() -> {
+            Metrics.ACCEPT.record(System.nanoTime() - acceptedAt);
+            try {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ);
+                key.attach(new NioConnection(this, channel, key));
+            }
+            catch(IOException | RuntimeException e) {
+                LOGGER.error("Could not register connection", e);
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    /**
+     * Runs the given task on the loop thread, can be called from any thread
+     */
+    void execute(Runnable task) {
+        this.tasks.add(task);
+        this.selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while(this.selector.isOpen()) {
+            try {
+                this.selector.select(this.onSelected);
+
+                Runnable task;
+                while((task = this.tasks.poll()) != null) {
+                    // the loop serves all its connections, it outlives a failing task
+                    try {
+                        task.run();
+                    }
+                    catch(RuntimeException e) {
+                        LOGGER.error("A task of the selector loop failed", e);
+                    }
+                }
+            }
+            catch(IOException e) {
+                LOGGER.error("Error in selector loop", e);
+            }
+        }
+    }
+
+    private void onSelected(SelectionKey key) {
+        NioConnection connection = (NioConnection)key.attachment();
+        if(!key.isValid() || connection == null)
+            return;
+
+        // only the connection that failed is closed, the others of the loop go on
+        try {
+            if(key.isReadable())
+                connection.onReadable(this.readBuffer);
+            else if(key.isWritable())
+                connection.onWritable();
+        }
+        catch(RuntimeException e) {
+            connection.fail(e);
+        }
+    }
+
+    static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        }
+        catch(IOException e) {
+            LOGGER.debug("Error while closing connection", e);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package fr.insa.http.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Finds the value associated with a request path among many routes, without trying the routes one by one
+ * All routes live in a trie of the characters of the path, walked once per lookup, which finds in this order :
+ * - the exact path ("/gif-gallery.html")
+ * - the regular expressions matching the path ("/gif/[^/]+\\.gif"), those with the longest literal start first :
+ *   a regex is stored in the node of its literal start ("/gif/") and is only tried for paths reaching that node,
+ *   the regexes of a node are combined into a single pattern matched once
+ * - the longest prefix of the path ending with '*' ("/gif/*")
+ * Routes are added before the router is used, lookups can then be made from any number of threads
+ */
+public class Router<T> {
+    // characters that end the literal start of a regex
+    private static final String REGEX_SPECIAL = "\\.[]{}()*+?^$|";
+
+    private Node<T> root;
+
+    public Router() {
+        this.root = new Node<>();
+    }
+
+    /**
+     * Routes the given path to the given value, a path ending with '*' matches every path starting with what precedes the '*'
+     * Throws IllegalArgumentException if the path is already routed
+     */
+    public void addPath(String path, T value) {
+        boolean prefix = path.endsWith("*");
+        Node<T> node = this.nodeFor(prefix ? path.substring(0, path.length() - 1) : path);
+
+        if((prefix ? node.prefixValue : node.exactValue) != null)
+            throw new IllegalArgumentException("Path already routed : " + path);
+        if(prefix)
+            node.prefixValue = value;
+        else
+            node.exactValue = value;
+    }
+
+    /**
+     * Routes the paths fully matched by the given regular expression to the given value
+     * When several regexes with the same literal start match a path, the one added first wins
+     * Groups are renumbered when regexes are combined, so the regex must not refer to its groups by number
+     * Throws IllegalArgumentException if the regex is invalid
+     */
+    public void addPattern(String regex, T value) {
+        Pattern compiled;
+        try {
+            compiled = Pattern.compile(regex);
+        }
+        catch(PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid regex : " + regex, e);
+        }
+
+        Node<T> node = this.nodeFor(literalStart(regex));
+        if(node.patterns == null)
+            node.patterns = new Patterns<>();
+        node.patterns.add(regex, compiled.matcher("").groupCount(), value);
+    }
+
+    /**
+     * Returns the value routed to the given path, or null if no route matches it
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public T find(String path) {
+        // walk the trie as far as the path goes, remembering the longest prefix route and the regexes on the way
+        Node<T> node = this.root;
+        T prefixValue = node.prefixValue;
+        Node<T>[] withPatterns = null;
+        int patternCount = 0;
+        int length = path.length();
+        for(int i = 0; node != null; i++) {
+            if(node.patterns != null) {
+                if(withPatterns == null)
+                    withPatterns = new Node[length + 1 - i];
+                withPatterns[patternCount++] = node;
+            }
+            if(i == length)
+                break;
+            node = node.child(path.charAt(i));
+            if(node != null && node.prefixValue != null)
+                prefixValue = node.prefixValue;
+        }
+        if(node != null && node.exactValue != null)
+            return node.exactValue;
+
+        // the regexes with the longest literal start are the most specific
+        for(int i = patternCount - 1; i >= 0; i--) {
+            T value = withPatterns[i].patterns.find(path);
+            if(value != null)
+                return value;
+        }
+
+        return prefixValue;
+    }
+
+    private Node<T> nodeFor(String key) {
+        Node<T> node = this.root;
+        for(int i = 0; i < key.length(); i++)
+            node = node.childOrCreate(key.charAt(i));
+        return node;
+    }
+
+    // the characters every path matched by the regex starts with, as far as it is easy to tell
+    static String literalStart(String regex) {
+        // an alternation at the top may start with anything
+        if(regex.indexOf('|') >= 0)
+            return "";
+        int end = 0;
+        while(end < regex.length() && REGEX_SPECIAL.indexOf(regex.charAt(end)) < 0)
+            end++;
+        // a quantifier applies to the last literal character, which may then be absent
+        if(end < regex.length() && end > 0 && "*?{".indexOf(regex.charAt(end)) >= 0)
+            end--;
+        return regex.substring(0, end);
+    }
+
+    // a node of the trie, its children are kept sorted by character for a binary search
+    private static final class Node<T> {
+        private static final char[] NO_KEYS = new char[0];
+
+        private char[] keys = NO_KEYS;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Node<T>[] children = new Node[0];
+
+        private T exactValue;
+
+        private T prefixValue;
+
+        // the regexes whose literal start leads to this node, null if there are none
+        private Patterns<T> patterns;
+
+        Node<T> child(char c) {
+            char[] keys = this.keys;
+            // most nodes have a handful of children, scanning them beats a binary search
+            if(keys.length <= 8) {
+                for(int i = 0; i < keys.length; i++) {
+                    if(keys[i] == c)
+                        return this.children[i];
+                }
+                return null;
+            }
+            int index = Arrays.binarySearch(keys, c);
+            return index < 0 ? null : this.children[index];
+        }
+
+        Node<T> childOrCreate(char c) {
+            int index = Arrays.binarySearch(this.keys, c);
+            if(index >= 0)
+                return this.children[index];
+
+            int insert = -index - 1;
+            char[] keys = new char[this.keys.length + 1];
+            System.arraycopy(this.keys, 0, keys, 0, insert);
+            System.arraycopy(this.keys, insert, keys, insert + 1, this.keys.length - insert);
+            keys[insert] = c;
+
+            Node<T>[] children = Arrays.copyOf(this.children, this.children.length + 1);
+            System.arraycopy(this.children, insert, children, insert + 1, this.children.length - insert);
+            Node<T> child = new Node<>();
+            children[insert] = child;
+
+            this.keys = keys;
+            this.children = children;
+            return child;
+        }
+    }
+
+    // regexes combined into one pattern, each wrapped in a capturing group telling which one matched
+    private static final class Patterns<T> {
+        private Pattern pattern;
+
+        // the number of the capturing group wrapping each regex, the groups of the regex itself come right after it
+        private int[] groups = new int[0];
+
+        private int nextGroup = 1;
+
+        private List<T> values = new ArrayList<>();
+
+        void add(String regex, int groupCount, T value) {
+            String combined = (this.pattern == null ? "" : this.pattern.pattern() + '|') + '(' + regex + ')';
+            try {
+                this.pattern = Pattern.compile(combined);
+            }
+            catch(PatternSyntaxException e) {
+                throw new IllegalArgumentException("Regex " + regex + " can't be combined with the other routes", e);
+            }
+
+            this.groups = Arrays.copyOf(this.groups, this.groups.length + 1);
+            this.groups[this.groups.length - 1] = this.nextGroup;
+            this.nextGroup += 1 + groupCount;
+            this.values.add(value);
+        }
+
+        T find(String path) {
+            Matcher matcher = this.pattern.matcher(path);
+            if(!matcher.matches())
+                return null;
+            for(int i = 0; i < this.groups.length; i++) {
+                if(matcher.start(this.groups[i]) >= 0)
+                    return this.values.get(i);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package fr.insa.http.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The buffers leased by one connection from the BufferPools, all given back at once by close() when the connection ends
+ * A buffer can also be given back earlier with release(), like one replaced by a bigger one
+ * An arena belongs to its connection : it is only used by one thread at a time
+ * With BufferPool.leakDetection, an arena that is garbage collected without being closed is logged along with where it was created,
+ * and releasing a buffer the arena does not hold throws an IllegalStateException
+ */
+public class BufferArena implements AutoCloseable {
+    private static final Logger LOGGER = LogManager.getLogger(BufferArena.class);
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Leases leases;
+
+    private final Cleaner.Cleanable cleanable;
+
+    public BufferArena() {
+        this.leases = new Leases(BufferPool.leakDetection ? new Throwable("Buffer arena created here") : null);
+        this.cleanable = this.leases.origin != null ? CLEANER.register(this, this.leases) : null;
+    }
+
+    /**
+     * A cleared heap buffer of at least the given capacity, its array can be used directly
+     */
+    public ByteBuffer heap(int size) {
+        return this.leases.add(BufferPool.HEAP.acquire(size), BufferPool.HEAP);
+    }
+
+    /**
+     * A cleared direct buffer of at least the given capacity
+     */
+    public ByteBuffer direct(int size) {
+        return this.leases.add(BufferPool.DIRECT.acquire(size), BufferPool.DIRECT);
+    }
+
+    /**
+     * Gives a buffer of this arena back to its pool, it must not be used anymore
+     */
+    public void release(ByteBuffer buffer) {
+        int index = this.leases.indexOf(buffer);
+        if(index < 0) {
+            if(this.leases.origin != null)
+                throw new IllegalStateException("Buffer released twice or to the wrong arena");
+            return;
+        }
+        this.leases.remove(index);
+    }
+
+    /**
+     * Gives all the buffers back to their pools, the arena can't be used anymore
+     */
+    @Override
+    public void close() {
+        this.leases.releaseAll();
+        if(this.cleanable != null)
+            this.cleanable.clean();
+    }
+
+    // the state of the arena, kept apart so the cleaner can check it once the arena is unreachable
+    private static final class Leases implements Runnable {
+        private final Throwable origin;
+
+        private ByteBuffer[] buffers = new ByteBuffer[4];
+
+        private BufferPool[] pools = new BufferPool[4];
+
+        private int count;
+
+        private boolean closed;
+
+        private Leases(Throwable origin) {
+            this.origin = origin;
+        }
+
+        private ByteBuffer add(ByteBuffer buffer, BufferPool pool) {
+            if(this.closed)
+                throw new IllegalStateException("Buffer arena used after being closed");
+            if(this.count == this.buffers.length) {
+                this.buffers = Arrays.copyOf(this.buffers, this.count * 2);
+                this.pools = Arrays.copyOf(this.pools, this.count * 2);
+            }
+            this.buffers[this.count] = buffer;
+            this.pools[this.count] = pool;
+            this.count++;
+            return buffer;
+        }
+
+        private int indexOf(ByteBuffer buffer) {
+            for(int i = 0; i < this.count; i++) {
+                if(this.buffers[i] == buffer)
+                    return i;
+            }
+            return -1;
+        }
+
+        private void remove(int index) {
+            this.pools[index].release(this.buffers[index]);
+            this.count--;
+            this.buffers[index] = this.buffers[this.count];
+            this.pools[index] = this.pools[this.count];
+            this.buffers[this.count] = null;
+            this.pools[this.count] = null;
+        }
+
+        private void releaseAll() {
+            while(this.count > 0)
+                this.remove(this.count - 1);
+            this.closed = true;
+        }
+
+        // run by the cleaner, once the arena is unreachable or closed
+        // the buffers of a leaked arena are not given back : whatever leaked it may still be using them
+        @Override
+        public void run() {
+            if(!this.closed)
+                LOGGER.error("A buffer arena holding {} buffers was never closed", this.count, this.origin);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package fr.insa.http.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Buffers handed from connection to connection instead of being allocated by each of them, in size classes of powers of two
+ * from MIN_SIZE to MAX_SIZE, bigger buffers are allocated and left to the garbage collector
+ * There is a pool of heap buffers, backed by arrays, and one of direct buffers, which the channels write without an extra copy
+ * Connections lease their buffers through a BufferArena, which gives them all back when the connection closes
+ */
+public final class BufferPool {
+    public static final int MIN_SIZE = 1024;
+
+    public static final int MAX_SIZE = 64 * 1024;
+
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - Integer.numberOfTrailingZeros(MIN_SIZE) + 1;
+
+    // bytes each pool keeps for later leases, shared evenly by its size classes, released buffers beyond that are dropped
+    public static long maxPooledBytes = 16 * 1024 * 1024;
+
+    // whether arenas remember where they were created and check what is released to them, to report leaks
+    public static boolean leakDetection = false;
+
+    public static final BufferPool HEAP = new BufferPool("heap", false);
+
+    public static final BufferPool DIRECT = new BufferPool("direct", true);
+
+    private final String name;
+
+    private final boolean direct;
+
+    // the free buffers of each size class, each deque is its own lock
+    private final ArrayDeque<ByteBuffer>[] free;
+
+    private final LongAdder pooledBytes = new LongAdder();
+
+    private final LongAdder leased = new LongAdder();
+
+    private final LongAdder allocated = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    private BufferPool(String name, boolean direct) {
+        this.name = name;
+        this.direct = direct;
+        this.free = (ArrayDeque<ByteBuffer>[])new ArrayDeque<?>[CLASSES];
+        for(int i = 0; i < CLASSES; i++)
+            this.free[i] = new ArrayDeque<>();
+    }
+
+    /**
+     * A cleared buffer of at least the given capacity, to be given back with release()
+     */
+    public ByteBuffer acquire(int size) {
+        int sizeClass = sizeClass(size);
+        if(sizeClass < 0)
+            return this.allocate(size);
+
+        ByteBuffer buffer;
+        ArrayDeque<ByteBuffer> free = this.free[sizeClass];
+        synchronized(free) {
+            buffer = free.pollLast();
+        }
+        if(buffer == null)
+            buffer = this.allocate(MIN_SIZE << sizeClass);
+        else
+            this.pooledBytes.add(-buffer.capacity());
+        this.leased.increment();
+        return buffer.clear();
+    }
+
+    /**
+     * Gives back a buffer returned by acquire(), it must not be used anymore
+     */
+    public void release(ByteBuffer buffer) {
+        int sizeClass = sizeClass(buffer.capacity());
+        if(sizeClass < 0)
+            return;
+        if(buffer.capacity() != MIN_SIZE << sizeClass || buffer.isDirect() != this.direct)
+            throw new IllegalArgumentException("Buffer of " + buffer.capacity() + " bytes was not acquired from the " + this.name + " pool");
+        this.leased.decrement();
+
+        ArrayDeque<ByteBuffer> free = this.free[sizeClass];
+        long maxCount = Math.max(maxPooledBytes / CLASSES / buffer.capacity(), 1);
+        synchronized(free) {
+            if(free.size() >= maxCount)
+                return;
+            free.addLast(buffer);
+        }
+        this.pooledBytes.add(buffer.capacity());
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Bytes of the buffers waiting in the pool
+     */
+    public long getPooledBytes() {
+        return this.pooledBytes.sum();
+    }
+
+    /**
+     * Pooled buffers acquired and not released yet, it keeps growing if buffers leak
+     */
+    public long getLeasedCount() {
+        return this.leased.sum();
+    }
+
+    /**
+     * Buffers the pool had to allocate since startup, it stops growing once the pool has warmed up
+     */
+    public long getAllocatedCount() {
+        return this.allocated.sum();
+    }
+
+    private ByteBuffer allocate(int size) {
+        this.allocated.increment();
+        return this.direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    // index of the smallest size class holding size bytes, -1 if it is bigger than MAX_SIZE
+    private static int sizeClass(int size) {
+        if(size > MAX_SIZE)
+            return -1;
+        if(size <= MIN_SIZE)
+            return 0;
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(MIN_SIZE);
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool{" + this.name + ", pooled=" + this.getPooledBytes() + " bytes, leased=" + this.getLeasedCount() + "}";
+    }
+}
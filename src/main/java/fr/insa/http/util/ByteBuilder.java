@@ -0,0 +1,92 @@
+package fr.insa.http.util;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of bytes, the byte counterpart of StringBuilder
+ * Meant to be reset and reused, so heads of messages can be encoded without allocating on every message
+ */
+public class ByteBuilder {
+    public static final int DEFAULT_CAPACITY = 512;
+
+    private byte[] bytes;
+
+    private int length;
+
+    public ByteBuilder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ByteBuilder(int capacity) {
+        this(new byte[capacity]);
+    }
+
+    /**
+     * A builder starting with the given array, like one leased from a BufferArena, it is replaced by a bigger one if needed
+     */
+    public ByteBuilder(byte[] bytes) {
+        this.bytes = bytes;
+        this.length = 0;
+    }
+
+    public ByteBuilder append(byte b) {
+        this.ensureCapacity(this.length + 1);
+        this.bytes[this.length++] = b;
+        return this;
+    }
+
+    public ByteBuilder append(byte[] b) {
+        return this.append(b, 0, b.length);
+    }
+
+    public ByteBuilder append(byte[] b, int offset, int length) {
+        this.ensureCapacity(this.length + length);
+        System.arraycopy(b, offset, this.bytes, this.length, length);
+        this.length += length;
+        return this;
+    }
+
+    /**
+     * Appends the characters of the given string as single bytes, characters above 0xFF become '?'
+     */
+    public ByteBuilder appendLatin1(String s) {
+        int count = s.length();
+        this.ensureCapacity(this.length + count);
+        byte[] bytes = this.bytes;
+        int position = this.length;
+        for(int i = 0; i < count; i++) {
+            char c = s.charAt(i);
+            bytes[position++] = c <= 0xFF ? (byte)c : (byte)'?';
+        }
+        this.length = position;
+        return this;
+    }
+
+    /**
+     * The array holding the bytes, only the first length() bytes are meaningful
+     * It is replaced when the builder grows, so it must not be kept across appends
+     */
+    public byte[] array() {
+        return this.bytes;
+    }
+
+    public int length() {
+        return this.length;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(this.bytes, this.length);
+    }
+
+    /**
+     * Empties the builder, keeping its array
+     */
+    public void reset() {
+        this.length = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity > this.bytes.length)
+            this.bytes = Arrays.copyOf(this.bytes, Math.max(capacity, this.bytes.length * 2));
+    }
+}
@@ -0,0 +1,212 @@
+package fr.insa.http.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A buffered OutputStream writing to a blocking channel
+ * Unlike the streams of java.nio.channels.Channels it gives access to its channel,
+ * so code writing a file can flush it and use FileChannel.transferTo instead of copying the file through the heap
+ */
+public class ChannelOutputStream extends OutputStream {
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    // a file is transferred in parts of this size, so a slow client shows progress between them
+    private static final long MAX_TRANSFER = 1024 * 1024;
+
+    private WritableByteChannel channel;
+
+    private ByteBuffer buffer;
+
+    // bytes handed to the channel, read by the write timeout of the connection from another thread
+    private volatile long bytesWritten;
+
+    // whether a write to the channel is in progress
+    private volatile boolean waiting;
+
+    public ChannelOutputStream(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ChannelOutputStream(WritableByteChannel channel, int bufferSize) {
+        this(channel, ByteBuffer.allocate(bufferSize));
+    }
+
+    /**
+     * A stream buffering in the given buffer, like one leased from a BufferArena : a direct buffer is written without being copied first
+     */
+    public ChannelOutputStream(WritableByteChannel channel, ByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer.clear();
+    }
+
+    /**
+     * The channel this stream writes to, flush() before writing to it directly
+     */
+    public WritableByteChannel getChannel() {
+        return this.channel;
+    }
+
+    /**
+     * The number of bytes handed to the channel so far, bytes written directly to the channel are not counted
+     */
+    public long bytesWritten() {
+        return this.bytesWritten;
+    }
+
+    /**
+     * Whether the stream is blocked writing to its channel
+     */
+    public boolean isWaiting() {
+        return this.waiting;
+    }
+
+    /**
+     * Flushes the stream and sends up to count bytes of the file from the given position to the channel without copying them
+     * through the heap, returns the number of bytes sent
+     */
+    public long transferFrom(FileChannel file, long position, long count) throws IOException {
+        this.flushBuffer();
+        this.waiting = true;
+        try {
+            long sent = file.transferTo(position, Math.min(count, MAX_TRANSFER), this.channel);
+            this.bytesWritten += sent;
+            return sent;
+        }
+        finally {
+            this.waiting = false;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if(!this.buffer.hasRemaining())
+            this.flushBuffer();
+        this.buffer.put((byte)b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if(len > this.buffer.remaining()) {
+            this.flushBuffer();
+            // big writes skip the buffer
+            if(len >= this.buffer.capacity()) {
+                this.writeFully(ByteBuffer.wrap(b, off, len));
+                return;
+            }
+        }
+        this.buffer.put(b, off, len);
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer, without copying them if they don't fit in the buffer of the stream
+     * The position of the buffer is left untouched, so a buffer shared by several responses can be given to all of them
+     */
+    public void write(ByteBuffer data) throws IOException {
+        data = data.duplicate();
+        if(data.remaining() <= this.buffer.remaining()) {
+            this.buffer.put(data);
+            return;
+        }
+        this.flushBuffer();
+        if(data.remaining() < this.buffer.capacity())
+            this.buffer.put(data);
+        else
+            this.writeFully(data);
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer to any stream, copying them through a small array unless it is a ChannelOutputStream
+     * The position of the buffer is left untouched
+     */
+    public static void write(OutputStream out, ByteBuffer data) throws IOException {
+        if(out instanceof ChannelOutputStream) {
+            ((ChannelOutputStream)out).write(data);
+            return;
+        }
+        data = data.duplicate();
+        byte[] copy = new byte[Math.min(data.remaining(), DEFAULT_BUFFER_SIZE)];
+        while(data.hasRemaining()) {
+            int count = Math.min(data.remaining(), copy.length);
+            data.get(copy, 0, count);
+            out.write(copy, 0, count);
+        }
+    }
+
+    /**
+     * Writes a head followed by a body, like two calls to write() but without copying a big body into the buffer :
+     * what is buffered, the head and the body are handed to the channel together, in one gathering write
+     */
+    public void write(byte[] head, int headLength, byte[] body, int bodyOffset, int bodyLength) throws IOException {
+        // small messages are copied in the buffer as they are, without wrapping the body
+        if(headLength + bodyLength <= this.buffer.remaining()) {
+            this.write(head, 0, headLength);
+            this.write(body, bodyOffset, bodyLength);
+            return;
+        }
+        this.write(head, headLength, ByteBuffer.wrap(body, bodyOffset, bodyLength));
+    }
+
+    /**
+     * Like write(byte[], int, byte[], int, int) for a body in a ByteBuffer, whose position is left untouched
+     */
+    public void write(byte[] head, int headLength, ByteBuffer body) throws IOException {
+        // small messages are gathered in the buffer, pipelined responses can then share a write
+        if(headLength + body.remaining() <= this.buffer.remaining() || !(this.channel instanceof GatheringByteChannel)) {
+            this.write(head, 0, headLength);
+            this.write(body);
+            return;
+        }
+
+        this.buffer.flip();
+        ByteBuffer[] data = {this.buffer, ByteBuffer.wrap(head, 0, headLength), body.duplicate()};
+        GatheringByteChannel channel = (GatheringByteChannel)this.channel;
+        this.waiting = true;
+        try {
+            while(data[2].hasRemaining())
+                this.bytesWritten += channel.write(data);
+        }
+        finally {
+            this.waiting = false;
+        }
+        this.buffer.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.flushBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.flushBuffer();
+        }
+        finally {
+            this.channel.close();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if(this.buffer.position() > 0) {
+            this.buffer.flip();
+            this.writeFully(this.buffer);
+            this.buffer.clear();
+        }
+    }
+
+    private void writeFully(ByteBuffer data) throws IOException {
+        this.waiting = true;
+        try {
+            while(data.hasRemaining())
+                this.bytesWritten += this.channel.write(data);
+        }
+        finally {
+            this.waiting = false;
+        }
+    }
+}
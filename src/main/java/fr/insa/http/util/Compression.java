@@ -0,0 +1,165 @@
+package fr.insa.http.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Helpers for the content codings the server can produce : gzip and deflate (zlib format, as http means it)
+ */
+public final class Compression {
+    public static final String GZIP = "gzip";
+
+    public static final String DEFLATE = "deflate";
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private Compression() {}
+
+    /**
+     * The coding to use for a client sending the given accept-encoding header, null to send the body as it is
+     * The coding with the highest q-value wins, gzip when they are equal
+     */
+    public static String negotiate(String acceptEncoding) {
+        if(acceptEncoding == null)
+            return null;
+        float gzip = quality(acceptEncoding, GZIP);
+        float deflate = quality(acceptEncoding, DEFLATE);
+        if(gzip <= 0 && deflate <= 0)
+            return null;
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+
+    /**
+     * Whether a client sending the given accept-encoding header can read a body in the given coding
+     */
+    public static boolean accepts(String acceptEncoding, String coding) {
+        return acceptEncoding != null && quality(acceptEncoding, coding) > 0;
+    }
+
+    // the q-value given to the coding, by its name or by "*", 0 if it is not acceptable
+    private static float quality(String acceptEncoding, String coding) {
+        float wildcard = 0;
+        int start = 0;
+        while(start < acceptEncoding.length()) {
+            int end = acceptEncoding.indexOf(',', start);
+            if(end < 0)
+                end = acceptEncoding.length();
+            int parameters = acceptEncoding.indexOf(';', start);
+            int nameEnd = parameters >= 0 && parameters < end ? parameters : end;
+            String name = acceptEncoding.substring(start, nameEnd).strip();
+            float quality = nameEnd < end ? parseQuality(acceptEncoding.substring(nameEnd + 1, end)) : 1;
+            if(name.equalsIgnoreCase(coding))
+                return quality;
+            if(name.equals("*"))
+                wildcard = quality;
+            start = end + 1;
+        }
+        return wildcard;
+    }
+
+    // reads "q=0.5" among the parameters of a coding, invalid values make the coding unacceptable
+    private static float parseQuality(String parameters) {
+        for(String parameter : parameters.split(";")) {
+            parameter = parameter.strip();
+            if(parameter.length() > 2 && (parameter.charAt(0) == 'q' || parameter.charAt(0) == 'Q') && parameter.charAt(1) == '=') {
+                try {
+                    return Float.parseFloat(parameter.substring(2));
+                }
+                catch(NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Whether bodies of the given content type get smaller when compressed, images and videos already are compressed
+     */
+    public static boolean isCompressible(String contentType) {
+        if(contentType == null)
+            return false;
+        int parameters = contentType.indexOf(';');
+        String type = (parameters < 0 ? contentType : contentType.substring(0, parameters)).strip().toLowerCase();
+        return type.startsWith("text/")
+            || type.endsWith("+xml")
+            || type.endsWith("+json")
+            || type.equals("application/javascript")
+            || type.equals("application/json")
+            || type.equals("application/xml")
+            || type.equals("application/wasm");
+    }
+
+    /**
+     * Returns the given data compressed with the given coding
+     */
+    public static byte[] compress(byte[] data, String coding) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 3 + 64);
+        try(OutputStream compressed = compressingStream(out, coding)) {
+            compressed.write(data);
+        }
+        catch(IOException e) {
+            // never thrown by a ByteArrayOutputStream
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns a stream compressing what is written to it into the given stream with the given coding
+     * flush() sends what was compressed so far, close() ends the compressed data but leaves the given stream open
+     */
+    public static OutputStream compressingStream(OutputStream out, String coding) throws IOException {
+        OutputStream target = new KeepOpenOutputStream(out);
+        if(GZIP.equals(coding))
+            return new GZIPOutputStream(target, BUFFER_SIZE, true);
+        if(DEFLATE.equals(coding))
+            return new DeflaterOutputStream(target, new Deflater(), BUFFER_SIZE, true) {
+                // the deflater was not created by the stream, it must be freed here
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    }
+                    finally {
+                        this.def.end();
+                    }
+                }
+            };
+        throw new IllegalArgumentException("Unsupported coding : " + coding);
+    }
+
+    // lets the compressing streams be closed to free their native memory without closing the connection under them
+    private static final class KeepOpenOutputStream extends OutputStream {
+        private final OutputStream out;
+
+        KeepOpenOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.out.flush();
+        }
+
+        @Override
+        public void close() {
+            // the stream under it belongs to the caller
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package fr.insa.http.util;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Dates as http headers write them, e.g. "Fri, 29 Nov 2019 14:02:51 GMT"
+ */
+public final class HTTPDates {
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    private HTTPDates() {}
+
+    /**
+     * Formats the given time in milliseconds since the epoch, dates only have a precision of a second
+     */
+    public static String format(long millis) {
+        return FORMAT.format(Instant.ofEpochMilli(millis));
+    }
+
+    /**
+     * Returns the time in milliseconds since the epoch of the given date, -1 if it is not a valid http date
+     */
+    public static long parse(String date) {
+        if(date == null)
+            return -1;
+        try {
+            return Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(date.strip())).toEpochMilli();
+        }
+        catch(DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
@@ -1,57 +1,270 @@
 package fr.insa.http.util;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.NoSuchElementException;
-import java.util.Set;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiConsumer;
 
 /**
- * A simple wrapper class for a map holding http headers that ensures validity of the headers
+ * The headers of an http message, kept in flat arrays in the order they were added
+ * Names are case insensitive, they are stored lowercased along with their hash, so a lookup scans an array of ints
+ * and only compares the names whose hash matches, common names being shared constants (see HeaderNames)
+ * Most lookups are for headers the message does not have, the lengths of the names present tell them apart without a scan
+ * A header can appear several times, getHeader() gives its first value and getHeaders() all of them
+ * Values parsed from a message can be added as bytes : they are only turned into Strings when they are asked for,
+ * most headers a client sends are never looked at
  */
 public class HTTPHeaders {
-    private Map<String, String> headers;
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private String[] names;
+
+    private int[] hashes;
+
+    // null for a value still in source, between its offset and its offset plus its length
+    private String[] values;
+
+    // where the values added as bytes are, null until one is
+    private byte[] source;
+
+    private int[] valueOffsets;
+
+    private int[] valueLengths;
+
+    private int size;
+
+    // bit (length % 64) is set when a name of that length may be present
+    private long lengths;
 
     public HTTPHeaders() {
-        this.headers = new HashMap<>();
+        this.names = new String[DEFAULT_CAPACITY];
+        this.hashes = new int[DEFAULT_CAPACITY];
+        this.values = new String[DEFAULT_CAPACITY];
+        this.size = 0;
     }
 
+    /**
+     * Gives the header the given value, replacing all the values it had, or removes it if the value is null
+     */
     public void setHeader(String header, String value) {
+        if(header == null)
+            throw new NullPointerException("null header forbidden");
+        int index = this.indexOf(header, 0);
+        if(value == null || index < 0) {
+            this.removeFrom(index);
+            if(value != null)
+                this.addHeader(header, value);
+            return;
+        }
+        this.values[index] = value;
+        this.removeFrom(this.indexOf(header, index + 1));
+    }
+
+    /**
+     * Adds a value to the header, after the values it already has
+     */
+    public void addHeader(String header, String value) {
         if(header == null)
             throw new NullPointerException("null header forbidden");
         if(value == null)
-            this.headers.remove(header);
-        else {
-            header = header.toLowerCase();
-            value = value.stripLeading();
-            this.headers.put(header, value);
+            throw new NullPointerException("null value forbidden");
+        this.add(header, value);
+    }
+
+    /**
+     * Adds a value to the header, the length bytes of source from offset read as ISO-8859-1
+     * The bytes must not change until the headers are cleared, they are only copied into a String if the value is asked for
+     */
+    public void addHeader(String header, byte[] source, int offset, int length) {
+        if(header == null)
+            throw new NullPointerException("null header forbidden");
+        // the values left in the previous source are taken out of it
+        if(this.source != source && this.source != null) {
+            for(int i = 0; i < this.size; i++)
+                this.value(i);
+        }
+        this.source = source;
+        if(this.valueOffsets == null) {
+            this.valueOffsets = new int[this.names.length];
+            this.valueLengths = new int[this.names.length];
         }
+        int index = this.add(header, null);
+        this.valueOffsets[index] = offset;
+        this.valueLengths[index] = length;
+    }
+
+    private int add(String header, String value) {
+        if(this.size == this.names.length) {
+            this.names = Arrays.copyOf(this.names, this.size * 2);
+            this.hashes = Arrays.copyOf(this.hashes, this.size * 2);
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+            if(this.valueOffsets != null) {
+                this.valueOffsets = Arrays.copyOf(this.valueOffsets, this.size * 2);
+                this.valueLengths = Arrays.copyOf(this.valueLengths, this.size * 2);
+            }
+        }
+        String name = isLowercase(header) ? header : header.toLowerCase(Locale.ROOT);
+        this.lengths |= 1L << name.length();
+        this.names[this.size] = name;
+        this.hashes[this.size] = name.hashCode();
+        this.values[this.size] = value;
+        return this.size++;
     }
 
     public boolean hasHeader(String header) {
         if(header == null)
             throw new NullPointerException("null header forbidden");
-        return this.headers.containsKey(header);
+        return this.indexOf(header, 0) >= 0;
     }
 
+    /**
+     * Returns the first value of the header, or null if the message does not have it
+     */
     public String getHeader(String header) {
         if(header == null)
             throw new NullPointerException("null header forbidden");
-        if(!this.headers.containsKey(header))
-            throw new NoSuchElementException("no value for header " + header);
-        return this.headers.get(header);
+        int index = this.indexOf(header, 0);
+        return index < 0 ? null : this.value(index);
+    }
+
+    /**
+     * Returns all the values of the header in order, an empty list if the message does not have it
+     */
+    public List<String> getHeaders(String header) {
+        int index = this.indexOf(header, 0);
+        if(index < 0)
+            return Collections.emptyList();
+        List<String> values = new ArrayList<>(2);
+        for(; index >= 0; index = this.indexOf(header, index + 1))
+            values.add(this.value(index));
+        return values;
     }
 
-    public Set<String> headers() {
-        return Collections.unmodifiableSet(this.headers.keySet());
+    /**
+     * Number of values of the header
+     */
+    public int count(String header) {
+        int count = 0;
+        for(int index = this.indexOf(header, 0); index >= 0; index = this.indexOf(header, index + 1))
+            count++;
+        return count;
+    }
+
+    /**
+     * Number of header lines, a header with several values counts once per value
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Gives every header name with its value to the given action, in order, once per value
+     */
+    public void forEach(BiConsumer<String, String> action) {
+        for(int i = 0; i < this.size; i++)
+            action.accept(this.names[i], this.value(i));
+    }
+
+    /**
+     * The name of the header line at the given index, from 0 to size() excluded, in the order they were added
+     * With getValue(), it goes through the headers like forEach() without creating a lambda
+     */
+    public String getName(int index) {
+        return this.names[index];
+    }
+
+    /**
+     * The value of the header line at the given index, from 0 to size() excluded
+     */
+    public String getValue(int index) {
+        return this.value(index);
     }
 
     public void clear() {
-        this.headers.clear();
+        Arrays.fill(this.names, 0, this.size, null);
+        Arrays.fill(this.values, 0, this.size, null);
+        this.size = 0;
+        this.lengths = 0;
+        this.source = null;
+    }
+
+    // the value at the given index, made a String the first time it is asked for if it was added as bytes
+    private String value(int index) {
+        String value = this.values[index];
+        if(value == null) {
+            value = new String(this.source, this.valueOffsets[index], this.valueLengths[index], StandardCharsets.ISO_8859_1);
+            this.values[index] = value;
+        }
+        return value;
+    }
+
+    // index of the first value of the header at or after from, -1 if there is none
+    private int indexOf(String header, int from) {
+        if((this.lengths & (1L << header.length())) == 0)
+            return -1;
+        int index = this.indexOfLowercase(header, from);
+        // names given in another case are only lowercased when they are not found as they are
+        if(index < 0 && !isLowercase(header))
+            index = this.indexOfLowercase(header.toLowerCase(Locale.ROOT), from);
+        return index;
+    }
+
+    private int indexOfLowercase(String name, int from) {
+        // the hash of a constant name is computed once and kept by the String
+        int hash = name.hashCode();
+        int[] hashes = this.hashes;
+        String[] names = this.names;
+        for(int i = from; i < this.size; i++) {
+            if(hashes[i] == hash && (names[i] == name || names[i].equals(name)))
+                return i;
+        }
+        return -1;
+    }
+
+    private static boolean isLowercase(String name) {
+        for(int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if(c >= 'A' && c <= 'Z')
+                return false;
+        }
+        return true;
+    }
+
+    // removes the value at the given index and the values after it with the same name, nothing if the index is -1
+    private void removeFrom(int index) {
+        if(index < 0)
+            return;
+        String removed = this.names[index];
+        int kept = index;
+        for(int i = index; i < this.size; i++) {
+            String name = this.names[i];
+            if(!name.equals(removed)) {
+                this.names[kept] = name;
+                this.hashes[kept] = this.hashes[i];
+                this.values[kept] = this.values[i];
+                if(this.valueOffsets != null) {
+                    this.valueOffsets[kept] = this.valueOffsets[i];
+                    this.valueLengths[kept] = this.valueLengths[i];
+                }
+                kept++;
+            }
+        }
+        Arrays.fill(this.names, kept, this.size, null);
+        Arrays.fill(this.values, kept, this.size, null);
+        this.size = kept;
     }
 
     @Override
     public String toString() {
-        return "HTTPHeaders{" + "headers=" + headers + '}';
+        StringBuilder stringBuilder = new StringBuilder("HTTPHeaders{headers={");
+        for(int i = 0; i < this.size; i++) {
+            if(i > 0)
+                stringBuilder.append(", ");
+            stringBuilder.append(this.names[i]).append('=').append(this.value(i));
+        }
+        return stringBuilder.append("}}").toString();
     }
 }
@@ -0,0 +1,101 @@
+package fr.insa.http.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Names of common http headers, as lowercase constants
+ * Parsers get them from fromBytes() instead of creating a new String for every header of every message,
+ * and HTTPHeaders recognizes them by identity before comparing characters
+ */
+public final class HeaderNames {
+    public static final String ACCEPT = "accept";
+    public static final String ACCEPT_ENCODING = "accept-encoding";
+    public static final String ACCEPT_LANGUAGE = "accept-language";
+    public static final String ACCEPT_RANGES = "accept-ranges";
+    public static final String ALLOW = "allow";
+    public static final String AUTHORIZATION = "authorization";
+    public static final String CACHE_CONTROL = "cache-control";
+    public static final String CONNECTION = "connection";
+    public static final String CONTENT_ENCODING = "content-encoding";
+    public static final String CONTENT_LENGTH = "content-length";
+    public static final String CONTENT_RANGE = "content-range";
+    public static final String CONTENT_TYPE = "content-type";
+    public static final String COOKIE = "cookie";
+    public static final String DATE = "date";
+    public static final String DNT = "dnt";
+    public static final String ETAG = "etag";
+    public static final String EXPECT = "expect";
+    public static final String HOST = "host";
+    public static final String IF_MODIFIED_SINCE = "if-modified-since";
+    public static final String IF_NONE_MATCH = "if-none-match";
+    public static final String IF_RANGE = "if-range";
+    public static final String KEEP_ALIVE = "keep-alive";
+    public static final String LAST_MODIFIED = "last-modified";
+    public static final String LOCATION = "location";
+    public static final String ORIGIN = "origin";
+    public static final String PRAGMA = "pragma";
+    public static final String RANGE = "range";
+    public static final String REFERER = "referer";
+    public static final String RETRY_AFTER = "retry-after";
+    public static final String SERVER = "server";
+    public static final String SET_COOKIE = "set-cookie";
+    public static final String TE = "te";
+    public static final String TRANSFER_ENCODING = "transfer-encoding";
+    public static final String UPGRADE = "upgrade";
+    public static final String UPGRADE_INSECURE_REQUESTS = "upgrade-insecure-requests";
+    public static final String USER_AGENT = "user-agent";
+    public static final String VARY = "vary";
+
+    private static final String[] ALL = {
+        ACCEPT, ACCEPT_ENCODING, ACCEPT_LANGUAGE, ACCEPT_RANGES, ALLOW, AUTHORIZATION, CACHE_CONTROL, CONNECTION,
+        CONTENT_ENCODING, CONTENT_LENGTH, CONTENT_RANGE, CONTENT_TYPE, COOKIE, DATE, DNT, ETAG, EXPECT, HOST,
+        IF_MODIFIED_SINCE, IF_NONE_MATCH, IF_RANGE, KEEP_ALIVE, LAST_MODIFIED, LOCATION, ORIGIN, PRAGMA, RANGE,
+        REFERER, RETRY_AFTER, SERVER, SET_COOKIE, TE, TRANSFER_ENCODING, UPGRADE, UPGRADE_INSECURE_REQUESTS,
+        USER_AGENT, VARY
+    };
+
+    // the names and their bytes by length, so a name is only compared with the few of the same length
+    private static final String[][] NAMES_BY_LENGTH;
+
+    private static final byte[][][] BYTES_BY_LENGTH;
+
+    static {
+        int maxLength = Arrays.stream(ALL).mapToInt(String::length).max().orElse(0);
+        NAMES_BY_LENGTH = new String[maxLength + 1][];
+        BYTES_BY_LENGTH = new byte[maxLength + 1][][];
+        for(int length = 0; length <= maxLength; length++) {
+            int l = length;
+            NAMES_BY_LENGTH[length] = Arrays.stream(ALL).filter(name -> name.length() == l).toArray(String[]::new);
+            BYTES_BY_LENGTH[length] = Arrays.stream(NAMES_BY_LENGTH[length]).map(name -> name.getBytes(StandardCharsets.US_ASCII)).toArray(byte[][]::new);
+        }
+    }
+
+    private HeaderNames() {}
+
+    /**
+     * Returns the constant for the header name written in the given bytes, whatever their case, or null if it is not a common one
+     * Nothing is allocated
+     */
+    public static String fromBytes(byte[] buffer, int offset, int length) {
+        if(length >= BYTES_BY_LENGTH.length)
+            return null;
+        byte[][] candidates = BYTES_BY_LENGTH[length];
+        for(int i = 0; i < candidates.length; i++) {
+            if(equalsIgnoreCase(buffer, offset, candidates[i]))
+                return NAMES_BY_LENGTH[length][i];
+        }
+        return null;
+    }
+
+    // compares bytes with a lowercase name of the same length
+    private static boolean equalsIgnoreCase(byte[] buffer, int offset, byte[] lowercase) {
+        for(int i = 0; i < lowercase.length; i++) {
+            byte b = buffer[offset + i];
+            byte expected = lowercase[i];
+            if(b != expected && (expected < 'a' || expected > 'z' || (b | 0x20) != expected))
+                return false;
+        }
+        return true;
+    }
+}
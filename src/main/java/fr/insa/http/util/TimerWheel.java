@@ -0,0 +1,239 @@
+package fr.insa.http.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs tasks after a delay, for the many timeouts of the connections that are almost always cancelled before they expire
+ * A single thread ticks through a wheel of buckets, a task waits in the bucket of the tick it expires at
+ * for as many turns of the wheel as needed. Scheduling only adds to a queue and cancelling only sets a flag,
+ * so both are cheap from any thread, and cancelled tasks are dropped when the thread reaches their bucket
+ * A timeout can be kept and started again : if it is still in the wheel, it is moved when the thread reaches its bucket
+ * Tasks run on the thread of the wheel : they must be short, like closing a socket or handing work to another thread
+ * They run up to one tick late
+ */
+public class TimerWheel {
+    private static final Logger LOGGER = LogManager.getLogger(TimerWheel.class);
+
+    private final long tickNanos;
+
+    // a bucket is a linked list of timeouts, only touched by the thread of the wheel
+    private final Timeout[] buckets;
+
+    // the timeouts scheduled since the last tick, the thread of the wheel moves them to their bucket
+    private final Queue<Timeout> scheduled;
+
+    private final long startNanos;
+
+    // the tick being processed, only touched by the thread of the wheel
+    private long tick;
+
+    /**
+     * Creates a wheel of the given number of buckets ticking every tickMillis milliseconds and starts its thread
+     * Timeouts are rounded up to a tick, a turn of the wheel should be longer than most timeouts
+     */
+    public TimerWheel(String name, long tickMillis, int bucketCount) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(tickMillis, 1));
+        this.buckets = new Timeout[bucketCount];
+        this.scheduled = new ConcurrentLinkedQueue<>();
+        this.startNanos = System.nanoTime();
+        this.tick = 0;
+
+        Thread thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs the task on the thread of the wheel once delayMillis milliseconds have passed, unless it is cancelled before
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        Timeout timeout = new Timeout(this, task, delayMillis);
+        timeout.start();
+        return timeout;
+    }
+
+    /**
+     * A timeout running the task delayMillis milliseconds after each call to its start(), for something timed again and again
+     * like the requests of a connection : once in the wheel, starting it again only moves its deadline, nothing is allocated
+     */
+    public Timeout newTimeout(Runnable task, long delayMillis) {
+        return new Timeout(this, task, delayMillis);
+    }
+
+    private void run() {
+        while(true) {
+            // sleeps until the end of the current tick
+            long tickEnd = this.startNanos + (this.tick + 1) * this.tickNanos;
+            long wait;
+            while((wait = tickEnd - System.nanoTime()) > 0)
+                LockSupport.parkNanos(wait);
+
+            this.addScheduled();
+            this.expireBucket();
+            this.tick++;
+        }
+    }
+
+    // puts the timeouts started since the last tick in the bucket of the tick they expire at
+    private void addScheduled() {
+        Timeout timeout;
+        while((timeout = this.scheduled.poll()) != null) {
+            if(timeout.isPending() || this.leave(timeout))
+                this.place(timeout);
+        }
+    }
+
+    // the timeouts of a bucket are never early : their deadline was that tick or later when they were placed,
+    // and starting a timeout again only moves its deadline later
+    private void place(Timeout timeout) {
+        // rounded up, a timeout never expires early, and those already due expire at this tick
+        long expiryTick = Math.max((timeout.deadline - this.startNanos + this.tickNanos - 1) / this.tickNanos, this.tick);
+        int bucket = (int)(expiryTick % this.buckets.length);
+        timeout.next = this.buckets[bucket];
+        this.buckets[bucket] = timeout;
+    }
+
+    // runs the timeouts of the bucket of this tick that are due, moves those that are not due yet
+    // (started again since, or more than a turn away) and drops the cancelled and expired ones
+    private void expireBucket() {
+        int bucket = (int)(this.tick % this.buckets.length);
+        Timeout timeout = this.buckets[bucket];
+        this.buckets[bucket] = null;
+        // moved once the bucket has been gone through, a timeout may go back to this very bucket
+        Timeout moved = null;
+        long tickEnd = this.startNanos + (this.tick + 1) * this.tickNanos;
+        while(timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            int state = timeout.state;
+            boolean keep;
+            if(Timeout.isPending(state))
+                // not run if it was started again in the meantime, it then has a new deadline
+                keep = timeout.deadline > tickEnd || !timeout.expire(state) || this.leave(timeout);
+            else
+                keep = this.leave(timeout);
+            if(keep) {
+                timeout.next = moved;
+                moved = timeout;
+            }
+            timeout = next;
+        }
+        while(moved != null) {
+            Timeout next = moved.next;
+            this.place(moved);
+            moved = next;
+        }
+    }
+
+    // takes a timeout out of the wheel, returns true if it was started again meanwhile and must stay in the wheel
+    private boolean leave(Timeout timeout) {
+        Timeout.QUEUED.set(timeout, 0);
+        // start() sets the state before checking whether the timeout is in the wheel, one of the two sees the other
+        return timeout.isPending() && Timeout.QUEUED.compareAndSet(timeout, 0, 1);
+    }
+
+    /**
+     * A task waiting in a TimerWheel
+     * A timeout can be started again once it is cancelled or expired, or even while it is pending, which moves its deadline
+     */
+    public static final class Timeout {
+        private static final int PENDING = 0;
+
+        private static final int CANCELLED = 1;
+
+        private static final int EXPIRED = 2;
+
+        // the state has the status in its low bits and the number of starts above,
+        // so the wheel can't expire a timeout that was started again after it read its state
+        private static final int STATUS = 3;
+
+        private static final int START = 4;
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private static final AtomicIntegerFieldUpdater<Timeout> QUEUED = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "queued");
+
+        private final TimerWheel wheel;
+
+        private final Runnable task;
+
+        private final long delayNanos;
+
+        private volatile long deadline;
+
+        // not started yet counts as cancelled
+        private volatile int state = CANCELLED;
+
+        // 1 while the timeout is in the queue of the wheel or in one of its buckets
+        private volatile int queued;
+
+        // the next timeout of the bucket, only touched by the thread of the wheel
+        private Timeout next;
+
+        private Timeout(TimerWheel wheel, Runnable task, long delayMillis) {
+            this.wheel = wheel;
+            this.task = task;
+            this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+
+        /**
+         * Runs the task after the delay of this timeout from now, unless it is cancelled before
+         * If it was pending, it is now only run after the new deadline
+         */
+        public void start() {
+            // the deadline is set first, the wheel reads the state before it
+            this.deadline = System.nanoTime() + this.delayNanos;
+            int state;
+            do {
+                state = this.state;
+            } while(!STATE.compareAndSet(this, state, ((state & ~STATUS) + START) | PENDING));
+            if(QUEUED.compareAndSet(this, 0, 1))
+                this.wheel.scheduled.add(this);
+        }
+
+        /**
+         * Prevents the task from running, returns false if it is too late because it already ran or is running
+         */
+        public boolean cancel() {
+            while(true) {
+                int state = this.state;
+                if((state & STATUS) != PENDING)
+                    return (state & STATUS) == CANCELLED;
+                if(STATE.compareAndSet(this, state, (state & ~STATUS) | CANCELLED))
+                    return true;
+            }
+        }
+
+        public boolean isExpired() {
+            return (this.state & STATUS) == EXPIRED;
+        }
+
+        private boolean isPending() {
+            return isPending(this.state);
+        }
+
+        private static boolean isPending(int state) {
+            return (state & STATUS) == PENDING;
+        }
+
+        // runs the task if the timeout is still in the given state, returns false if it was cancelled or started again since
+        private boolean expire(int state) {
+            if(!STATE.compareAndSet(this, state, (state & ~STATUS) | EXPIRED))
+                return false;
+            try {
+                this.task.run();
+            }
+            catch(RuntimeException e) {
+                LOGGER.error("A timeout task failed", e);
+            }
+            return true;
+        }
+    }
+}
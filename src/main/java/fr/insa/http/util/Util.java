@@ -14,4 +14,51 @@ public final class Util {
     public static byte[] concatenateArrays(byte[] a1, byte[] a2) {
         return concatenateArrays(a1, 0, a1.length, a2, 0, a2.length);
     }
+
+    /**
+     * Whether the length bytes of a starting at offset are the same as the bytes of b
+     */
+    public static boolean equals(byte[] a, int offset, int length, byte[] b) {
+        if(length != b.length)
+            return false;
+        for(int i = 0; i < length; i++) {
+            if(a[offset + i] != b[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Index of the first occurrence of b in a between from (inclusive) and to (exclusive), or -1
+     */
+    public static int indexOf(byte[] a, byte b, int from, int to) {
+        for(int i = from; i < to; i++) {
+            if(a[i] == b)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * The bytes as lowercase hexadecimal, two digits per byte
+     */
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for(int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Index of the last occurrence of b in a between from (inclusive) and to (exclusive), or -1
+     */
+    public static int lastIndexOf(byte[] a, byte b, int from, int to) {
+        for(int i = to - 1; i >= from; i--) {
+            if(a[i] == b)
+                return i;
+        }
+        return -1;
+    }
 }
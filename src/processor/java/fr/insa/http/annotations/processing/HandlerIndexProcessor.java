@@ -0,0 +1,224 @@
+package fr.insa.http.annotations.processing;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates the HandlerIndex of the classes annotated with @HTTPHandler, so FrameworkRequestHandler does not scan the classpath at startup
+ * The index creates a RequestHandler for each public handler method with a method reference, the others are left to reflection
+ * The annotations are only known by their names : the processor is compiled before them
+ */
+public class HandlerIndexProcessor extends AbstractProcessor {
+    private static final String HTTP_HANDLER = "fr.insa.http.annotations.HTTPHandler";
+
+    private static final String HANDLE_METHOD = "fr.insa.http.annotations.HandleMethod";
+
+    private static final String HANDLE_RESOURCE = "fr.insa.http.annotations.HandleResource";
+
+    private static final String REQUEST = "fr.insa.http.messages.HTTPRequest";
+
+    private static final String RESPONSE = "fr.insa.http.messages.HTTPResponse";
+
+    private static final String INDEX_PACKAGE = "fr.insa.http.annotations";
+
+    private static final String INDEX_NAME = "GeneratedHandlerIndex";
+
+    private List<Handler> handlers = new ArrayList<>();
+
+    // the index is written by the first round that finds handlers, the sources generated by other processors come in later rounds
+    private boolean written;
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Set.of(HTTP_HANDLER, HANDLE_METHOD, HANDLE_RESOURCE);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement httpHandler = this.processingEnv.getElementUtils().getTypeElement(HTTP_HANDLER);
+        if(httpHandler != null) {
+            for(Element element : roundEnv.getElementsAnnotatedWith(httpHandler)) {
+                if(element.getKind() != ElementKind.CLASS || !this.isInstantiable((TypeElement)element))
+                    continue;
+                if(this.written)
+                    this.processingEnv.getMessager().printMessage(
+                        Diagnostic.Kind.WARNING, "Handler generated after the handler index was written, it is left out of it", element);
+                else
+                    this.handlers.add(this.handlerOf((TypeElement)element));
+            }
+        }
+
+        if(!this.written && !this.handlers.isEmpty()) {
+            this.writeIndex();
+            this.written = true;
+        }
+        // the annotations are also read at runtime
+        return false;
+    }
+
+    // the framework creates handlers with their public no-arg constructor, from another package
+    private boolean isInstantiable(TypeElement type) {
+        boolean accessible = type.getModifiers().contains(Modifier.PUBLIC)
+            && !type.getModifiers().contains(Modifier.ABSTRACT)
+            && (type.getNestingKind() == NestingKind.TOP_LEVEL || type.getModifiers().contains(Modifier.STATIC));
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+        boolean constructible = constructors.stream()
+            .anyMatch(constructor -> constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC));
+        if(!accessible || !constructible) {
+            this.processingEnv.getMessager().printMessage(
+                Diagnostic.Kind.ERROR, "A class annotated with @HTTPHandler must be public, concrete and have a public no-arg constructor", type);
+            return false;
+        }
+        return true;
+    }
+
+    private Handler handlerOf(TypeElement type) {
+        Handler handler = new Handler(type.getQualifiedName().toString());
+        for(ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            AnnotationMirror handleMethod = this.findAnnotation(method, HANDLE_METHOD);
+            if(handleMethod == null)
+                continue;
+            if(method.getParameters().size() != 1
+                || !method.getParameters().get(0).asType().toString().equals(REQUEST)
+                || !method.getReturnType().toString().equals(RESPONSE)) {
+                this.processingEnv.getMessager().printMessage(
+                    Diagnostic.Kind.WARNING, "Handler methods must take an HTTPRequest and return an HTTPResponse, this one is ignored", method);
+                continue;
+            }
+
+            HandlerMethod handlerMethod = new HandlerMethod();
+            handlerMethod.httpMethod = ((VariableElement)this.valueOf(handleMethod, "value")).getSimpleName().toString();
+            AnnotationMirror handleResource = this.findAnnotation(method, HANDLE_RESOURCE);
+            handlerMethod.name = handleResource == null ? "" : (String)this.valueOf(handleResource, "name");
+            handlerMethod.regex = handleResource == null ? "" : (String)this.valueOf(handleResource, "regex");
+            handlerMethod.methodName = method.getSimpleName().toString();
+            // a method reference can't be made from another package or to a method throwing checked exceptions
+            handlerMethod.referenceable = method.getModifiers().contains(Modifier.PUBLIC) && method.getThrownTypes().isEmpty();
+            handlerMethod.isStatic = method.getModifiers().contains(Modifier.STATIC);
+            handler.methods.add(handlerMethod);
+        }
+        return handler;
+    }
+
+    private AnnotationMirror findAnnotation(Element element, String annotation) {
+        for(AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if(((TypeElement)mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation))
+                return mirror;
+        }
+        return null;
+    }
+
+    private Object valueOf(AnnotationMirror annotation, String name) {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values = this.processingEnv.getElementUtils().getElementValuesWithDefaults(annotation);
+        for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : values.entrySet()) {
+            if(value.getKey().getSimpleName().contentEquals(name))
+                return value.getValue().getValue();
+        }
+        throw new IllegalArgumentException("No value " + name + " in " + annotation);
+    }
+
+    private void writeIndex() {
+        try(Writer writer = this.processingEnv.getFiler().createSourceFile(INDEX_PACKAGE + "." + INDEX_NAME).openWriter();
+            PrintWriter out = new PrintWriter(writer)) {
+            out.println("package " + INDEX_PACKAGE + ";");
+            out.println();
+            out.println("import fr.insa.http.enums.HTTPMethod;");
+            out.println();
+            out.println("import java.util.List;");
+            out.println();
+            out.println("// generated by " + HandlerIndexProcessor.class.getSimpleName() + " from the @HTTPHandler classes, do not edit");
+            out.println("public final class " + INDEX_NAME + " implements HandlerIndex {");
+            out.println("    @Override");
+            out.println("    public List<Class<?>> handlerClasses() {");
+            out.println("        return List.of(");
+            for(int i = 0; i < this.handlers.size(); i++)
+                out.println("            " + this.handlers.get(i).className + ".class" + (i < this.handlers.size() - 1 ? "," : ""));
+            out.println("        );");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public void register(Object handler, HandlerIndex.Registry registry) {");
+            for(Handler handler : this.handlers) {
+                out.println("        if(handler.getClass() == " + handler.className + ".class) {");
+                out.println("            " + handler.className + " instance = (" + handler.className + ")handler;");
+                for(HandlerMethod method : handler.methods) {
+                    String reference = !method.referenceable ? "null" : (method.isStatic ? handler.className : "instance") + "::" + method.methodName;
+                    out.println("            registry.method(HTTPMethod." + method.httpMethod + ", " + literal(method.name) + ", " + literal(method.regex)
+                        + ", " + literal(method.methodName) + ", " + reference + ");");
+                }
+                out.println("        }");
+            }
+            out.println("    }");
+            out.println("}");
+        }
+        catch(IOException e) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write the handler index : " + e.getMessage());
+        }
+    }
+
+    // a java string literal of the given value
+    private static String literal(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\')
+                literal.append('\\').append(c);
+            // unicode escapes are translated before the source is parsed, a line break has to be octal
+            else if(c < 0x20)
+                literal.append(String.format("\\%03o", (int)c));
+            else if(c > 0x7e)
+                literal.append(String.format("\\u%04x", (int)c));
+            else
+                literal.append(c);
+        }
+        return literal.append('"').toString();
+    }
+
+    private static final class Handler {
+        private final String className;
+
+        private final List<HandlerMethod> methods = new ArrayList<>();
+
+        private Handler(String className) {
+            this.className = className;
+        }
+    }
+
+    private static final class HandlerMethod {
+        private String httpMethod;
+
+        private String name;
+
+        private String regex;
+
+        private String methodName;
+
+        private boolean referenceable;
+
+        private boolean isStatic;
+    }
+}
@@ -0,0 +1,101 @@
+package fr.insa.http.messages;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ByteRangeTest {
+    @Test
+    public void parsesARange() {
+        assertRanges(ByteRange.parse("bytes=0-499", 1000), 0, 500);
+        assertRanges(ByteRange.parse("bytes=500-999", 1000), 500, 500);
+        assertRanges(ByteRange.parse("Bytes=10-10", 1000), 10, 1);
+    }
+
+    @Test
+    public void parsesAnOpenRange() {
+        assertRanges(ByteRange.parse("bytes=900-", 1000), 900, 100);
+    }
+
+    @Test
+    public void parsesASuffixRange() {
+        assertRanges(ByteRange.parse("bytes=-200", 1000), 800, 200);
+        // a suffix longer than the representation is all of it
+        assertRanges(ByteRange.parse("bytes=-5000", 1000), 0, 1000);
+    }
+
+    @Test
+    public void cutsARangeGoingPastTheEnd() {
+        assertRanges(ByteRange.parse("bytes=900-5000", 1000), 900, 100);
+    }
+
+    @Test
+    public void parsesSeveralRangesInOrder() {
+        assertRanges(ByteRange.parse("bytes=500-599, 0-99 ,-100", 1000), 500, 100, 0, 100, 900, 100);
+    }
+
+    @Test
+    public void leavesOutRangesThatCantBeSatisfied() {
+        assertRanges(ByteRange.parse("bytes=0-99,2000-2999", 1000), 0, 100);
+    }
+
+    @Test
+    public void findsNoRangeOutsideTheRepresentation() {
+        // answered with a 416
+        assertTrue(ByteRange.parse("bytes=1000-", 1000).isEmpty());
+        assertTrue(ByteRange.parse("bytes=2000-2999,5000-", 1000).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-0", 1000).isEmpty());
+        assertTrue(ByteRange.parse("bytes=0-", 0).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-10", 0).isEmpty());
+    }
+
+    @Test
+    public void sendsEverythingForOverlappingRanges() {
+        // more bytes than the whole representation, it is sent instead
+        assertNull(ByteRange.parse("bytes=0-999,0-999", 1000));
+        assertNull(ByteRange.parse("bytes=0-600,400-", 1000));
+        assertNull(ByteRange.parse("bytes=-600,-600", 1000));
+    }
+
+    @Test
+    public void sendsEverythingForTooManyRanges() {
+        StringBuilder header = new StringBuilder("bytes=0-0");
+        for(int i = 1; i < ByteRange.MAX_RANGES; i++)
+            header.append(',').append(i).append('-').append(i);
+        assertEquals(ByteRange.MAX_RANGES, ByteRange.parse(header.toString(), 1000).size());
+        header.append(",100-100");
+        assertNull(ByteRange.parse(header.toString(), 1000));
+    }
+
+    @Test
+    public void sendsEverythingForMalformedHeaders() {
+        assertNull(ByteRange.parse(null, 1000));
+        assertNull(ByteRange.parse("items=0-10", 1000));
+        assertNull(ByteRange.parse("bytes=", 1000));
+        assertNull(ByteRange.parse("bytes=10", 1000));
+        assertNull(ByteRange.parse("bytes=-", 1000));
+        assertNull(ByteRange.parse("bytes=20-10", 1000));
+        assertNull(ByteRange.parse("bytes=a-b", 1000));
+        assertNull(ByteRange.parse("bytes=--5", 1000));
+        assertNull(ByteRange.parse("bytes=99999999999999999999-", 1000));
+    }
+
+    @Test
+    public void writesContentRanges() {
+        assertEquals("bytes 900-999/1000", ByteRange.parse("bytes=-100", 1000).get(0).toContentRange(1000));
+        assertEquals("bytes */1000", ByteRange.unsatisfiedContentRange(1000));
+    }
+
+    // the expected ranges are given as start, length pairs
+    private static void assertRanges(List<ByteRange> ranges, long... expected) {
+        assertEquals(expected.length / 2, ranges.size());
+        for(int i = 0; i < ranges.size(); i++) {
+            assertEquals("start of range " + i, expected[i * 2], ranges.get(i).getStart());
+            assertEquals("length of range " + i, expected[i * 2 + 1], ranges.get(i).getLength());
+        }
+    }
+}
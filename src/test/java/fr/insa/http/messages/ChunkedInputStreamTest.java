@@ -0,0 +1,150 @@
+package fr.insa.http.messages;
+
+import fr.insa.http.enums.HTTPStatus;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkedInputStreamTest {
+    @Test
+    public void decodesChunks() throws IOException {
+        assertEquals("Wikipedia in chunks.", decode("4\r\nWiki\r\n5\r\npedia\r\nB\r\n in chunks.\r\n0\r\n\r\n"));
+    }
+
+    @Test
+    public void decodesAnEmptyBody() throws IOException {
+        assertEquals("", decode("0\r\n\r\n"));
+    }
+
+    @Test
+    public void ignoresChunkExtensions() throws IOException {
+        assertEquals("Wikipedia", decode("4;name=value\r\nWiki\r\n5 ; quoted=\"a;b\"\r\npedia\r\n0;last\r\n\r\n"));
+    }
+
+    @Test
+    public void ignoresTrailers() throws IOException {
+        assertEquals("Wiki", decode("4\r\nWiki\r\n0\r\nExpires: never\r\nX-Checksum: 1234\r\n\r\n"));
+    }
+
+    @Test
+    public void leavesTheNextMessageUnread() throws IOException {
+        InputStream in = new ByteArrayInputStream(bytes("4\r\nWiki\r\n0\r\nA: b\r\n\r\nGET / HTTP/1.1\r\n"));
+        assertEquals("Wiki", readAll(new ChunkedInputStream(in, 1024)));
+        assertEquals("GET / HTTP/1.1\r\n", readAll(in));
+    }
+
+    @Test
+    public void decodesChunksReadByteByByte() throws IOException {
+        InputStream in = new ChunkedInputStream(new TrickleInputStream(bytes("4\r\nWiki\r\n5\r\npedia\r\n0\r\n\r\n")), 1024);
+        StringBuilder body = new StringBuilder();
+        for(int b; (b = in.read()) >= 0; )
+            body.append((char)b);
+        assertEquals("Wikipedia", body.toString());
+    }
+
+    @Test
+    public void rejectsAChunkSizeThatWouldOverflow() {
+        // 16 hex digits is more than a long can hold once the sign bit is set
+        assertRejected("ffffffffffffffff\r\n", HTTPStatus.BAD_REQUEST);
+        assertRejected("00000000000000001\r\nW\r\n0\r\n\r\n", HTTPStatus.BAD_REQUEST);
+    }
+
+    @Test
+    public void acceptsTheLongestChunkSize() throws IOException {
+        assertEquals("W", decode("000000000000001\r\nW\r\n0\r\n\r\n"));
+    }
+
+    @Test
+    public void rejectsABodyBiggerThanTheMaximum() {
+        assertRejected(new ChunkedInputStream(new ByteArrayInputStream(bytes("4\r\nWiki\r\n5\r\npedia\r\n0\r\n\r\n")), 8), HTTPStatus.PAYLOAD_TOO_LARGE);
+        assertRejected("7fffffffffffff\r\n", HTTPStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    @Test
+    public void rejectsMalformedFraming() {
+        assertRejected("\r\n", HTTPStatus.BAD_REQUEST);
+        assertRejected("x\r\n", HTTPStatus.BAD_REQUEST);
+        assertRejected("-4\r\nWiki\r\n0\r\n\r\n", HTTPStatus.BAD_REQUEST);
+        assertRejected("4\nWiki\r\n0\r\n\r\n", HTTPStatus.BAD_REQUEST);
+        // the data is longer than its size
+        assertRejected("4\r\nWikipedia\r\n0\r\n\r\n", HTTPStatus.BAD_REQUEST);
+        assertRejected("0\r\n\r\r", HTTPStatus.BAD_REQUEST);
+    }
+
+    @Test
+    public void rejectsTrailersBiggerThanAHead() {
+        StringBuilder body = new StringBuilder("0\r\n");
+        while(body.length() <= HTTPInputStream.MAX_HEAD_SIZE)
+            body.append("X-Padding: aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\r\n");
+        assertRejected(body.append("\r\n").toString(), HTTPStatus.REQUEST_HEADER_FIELDS_TOO_LARGE);
+    }
+
+    @Test
+    public void keepsFailingAfterAMalformedChunk() throws IOException {
+        InputStream in = new ChunkedInputStream(new ByteArrayInputStream(bytes("4\r\nWikipedia\r\n")), 1024);
+        assertEquals(4, in.read(new byte[4]));
+        assertRejected(in, HTTPStatus.BAD_REQUEST);
+        assertRejected(in, HTTPStatus.BAD_REQUEST);
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsATruncatedBody() throws IOException {
+        decode("4\r\nWiki\r\n5\r\npe");
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsABodyWithoutItsLastChunk() throws IOException {
+        decode("4\r\nWiki\r\n");
+    }
+
+    @Test
+    public void skipsTheRestOfTheBody() throws IOException {
+        InputStream in = new ByteArrayInputStream(bytes("4\r\nWiki\r\n5\r\npedia\r\n0\r\n\r\nnext"));
+        assertTrue(new ChunkedInputStream(in, 1024).skipRemaining(9));
+        assertEquals("next", readAll(in));
+        assertFalse(new ChunkedInputStream(new ByteArrayInputStream(bytes("4\r\nWiki\r\n5\r\npedia\r\n0\r\n\r\n")), 1024).skipRemaining(8));
+    }
+
+    private static String decode(String body) throws IOException {
+        return readAll(new ChunkedInputStream(new ByteArrayInputStream(bytes(body)), 1024));
+    }
+
+    private static void assertRejected(String body, HTTPStatus status) {
+        assertRejected(new ChunkedInputStream(new ByteArrayInputStream(bytes(body)), 1024), status);
+    }
+
+    private static void assertRejected(InputStream in, HTTPStatus status) {
+        try {
+            readAll(in);
+            fail("Expected " + status);
+        }
+        catch(HTTPParseException e) {
+            assertEquals(status, e.getStatus());
+        }
+        catch(IOException e) {
+            throw new AssertionError("Expected " + status, e);
+        }
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[3];
+        for(int read; (read = in.read(buffer)) >= 0; )
+            out.write(buffer, 0, read);
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
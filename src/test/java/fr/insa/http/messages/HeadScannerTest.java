@@ -0,0 +1,89 @@
+package fr.insa.http.messages;
+
+import fr.insa.http.enums.HTTPStatus;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class HeadScannerTest {
+    private static final byte[] HEAD = "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void findsTheEndOfAHeadReceivedAtOnce() {
+        assertEquals(HEAD.length, new HeadScanner().scan(HEAD, 0, HEAD.length));
+    }
+
+    @Test
+    public void findsTheEndOfAHeadSplitAnywhere() {
+        // every split, including the ones in the middle of the final CRLFCRLF
+        for(int split = 1; split < HEAD.length; split++) {
+            HeadScanner scanner = new HeadScanner();
+            assertEquals("split at " + split, -1, scanner.scan(HEAD, 0, split));
+            assertEquals("split at " + split, HEAD.length, scanner.scan(HEAD, 0, HEAD.length));
+        }
+    }
+
+    @Test
+    public void findsTheEndOfAHeadReceivedByteByByte() {
+        HeadScanner scanner = new HeadScanner();
+        for(int end = 1; end < HEAD.length; end++)
+            assertEquals(-1, scanner.scan(HEAD, 0, end));
+        assertEquals(HEAD.length, scanner.scan(HEAD, 0, HEAD.length));
+    }
+
+    @Test
+    public void findsTheEndOfAHeadNotAtTheStartOfTheBuffer() {
+        byte[] buffer = new byte[HEAD.length + 10];
+        System.arraycopy(HEAD, 0, buffer, 7, HEAD.length);
+        HeadScanner scanner = new HeadScanner();
+        assertEquals(-1, scanner.scan(buffer, 7, 7 + HEAD.length - 2));
+        assertEquals(HEAD.length, scanner.scan(buffer, 7, buffer.length));
+    }
+
+    @Test
+    public void ignoresLoneCarriageReturnsAndLineFeeds() {
+        byte[] head = "GET / HTTP/1.1\r\nA: b\r\r\n\n\r\nB: c\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(head.length, new HeadScanner().scan(head, 0, head.length));
+    }
+
+    @Test
+    public void startsOverAfterAHead() {
+        HeadScanner scanner = new HeadScanner();
+        assertEquals(-1, scanner.scan(HEAD, 0, HEAD.length - 1));
+        assertEquals(HEAD.length, scanner.scan(HEAD, 0, HEAD.length));
+        // a pipelined head, scanned from its own start
+        byte[] twice = new byte[HEAD.length * 2];
+        System.arraycopy(HEAD, 0, twice, 0, HEAD.length);
+        System.arraycopy(HEAD, 0, twice, HEAD.length, HEAD.length);
+        assertEquals(HEAD.length, scanner.scan(twice, HEAD.length, twice.length));
+    }
+
+    @Test
+    public void rejectsALongRequestLine() {
+        byte[] head = "GET /aaaaaaaaaaaaaaaaaaaa HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        HeadScanner scanner = new HeadScanner();
+        assertEquals(-1, scanner.scan(head, 0, 20));
+        assertSizeRejected(scanner, 20, 1024, 16, HTTPStatus.URI_TOO_LONG);
+    }
+
+    @Test
+    public void rejectsABigHead() throws HTTPParseException {
+        HeadScanner scanner = new HeadScanner();
+        assertEquals(HEAD.length, scanner.scan(HEAD, 0, HEAD.length));
+        scanner.checkSize(HEAD.length, HEAD.length, HEAD.length);
+        assertSizeRejected(scanner, HEAD.length, HEAD.length - 1, HEAD.length, HTTPStatus.REQUEST_HEADER_FIELDS_TOO_LARGE);
+    }
+
+    private static void assertSizeRejected(HeadScanner scanner, int received, int maxHead, int maxFirstLine, HTTPStatus status) {
+        try {
+            scanner.checkSize(received, maxHead, maxFirstLine);
+            fail("Expected " + status);
+        }
+        catch(HTTPParseException e) {
+            assertEquals(status, e.getStatus());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package fr.insa.http.messages;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MultipartReaderTest {
+    private static final String BOUNDARY = "----boundary42";
+
+    @Test
+    public void readsParts() throws IOException {
+        String body = "--" + BOUNDARY + "\r\n"
+            + "Content-Disposition: form-data; name=\"note\"\r\n"
+            + "\r\n"
+            + "hello\r\n"
+            + "--" + BOUNDARY + "\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"a.gif\"\r\n"
+            + "Content-Type: image/gif\r\n"
+            + "\r\n"
+            + "GIF89a\r\n"
+            + "--" + BOUNDARY + "--\r\n";
+        for(boolean trickle : new boolean[] {false, true}) {
+            MultipartReader reader = reader(body, trickle);
+            MultipartReader.Part note = reader.nextPart();
+            assertNull(note.getFilename());
+            assertEquals("hello", readAll(note.getContent()));
+            MultipartReader.Part file = reader.nextPart();
+            assertEquals("a.gif", file.getFilename());
+            assertEquals("image/gif", file.getHeaders().getHeader("content-type"));
+            assertEquals("GIF89a", readAll(file.getContent()));
+            assertNull(reader.nextPart());
+            assertNull(reader.nextPart());
+        }
+    }
+
+    @Test
+    public void keepsBoundaryLikeBytesInsideAPart() throws IOException {
+        // only CRLF, two dashes and the whole boundary end a part
+        String content = "--" + BOUNDARY + " at the start\r\n"
+            + "\r\n--" + BOUNDARY.substring(0, BOUNDARY.length() - 1) + "\r\n"
+            + "\r\n-\r\n--\r\r\n--" + BOUNDARY.substring(0, 5)
+            + "\n--" + BOUNDARY + "\r\n"
+            + "\r--" + BOUNDARY + "\r\n"
+            + "ends with CR\r";
+        for(boolean trickle : new boolean[] {false, true}) {
+            MultipartReader reader = reader(multipart(content.getBytes(StandardCharsets.ISO_8859_1)), trickle);
+            assertEquals(content, readAll(reader.nextPart().getContent()));
+            assertNull(reader.nextPart());
+        }
+    }
+
+    @Test
+    public void readsAPartBiggerThanTheBuffer() throws IOException {
+        // delimiter-like bytes all over the part, some of them across the end of the buffer
+        byte[] content = new byte[100_000];
+        byte[] almost = ("\r\n--" + BOUNDARY.substring(0, BOUNDARY.length() - 1)).getBytes(StandardCharsets.ISO_8859_1);
+        for(int i = 0; i < content.length; i++)
+            content[i] = (byte)i;
+        for(int i = 0; i + almost.length < content.length; i += 997)
+            System.arraycopy(almost, 0, content, i, almost.length);
+        for(boolean trickle : new boolean[] {false, true}) {
+            MultipartReader reader = reader(multipart(content), trickle);
+            InputStream part = reader.nextPart().getContent();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[777];
+            for(int read; (read = part.read(buffer)) >= 0; )
+                out.write(buffer, 0, read);
+            assertArrayEquals(content, out.toByteArray());
+            assertNull(reader.nextPart());
+        }
+    }
+
+    @Test
+    public void skipsWhatIsNotRead() throws IOException {
+        String body = "preamble\r\n--" + BOUNDARY + "\r\n\r\nfirst part, left unread\r\n"
+            + "--" + BOUNDARY + "  \r\nName: second\r\n\r\nsecond\r\n"
+            + "--" + BOUNDARY + "--\r\nepilogue";
+        MultipartReader reader = reader(body, false);
+        assertEquals('f', reader.nextPart().getContent().read());
+        MultipartReader.Part second = reader.nextPart();
+        assertEquals("second", second.getHeaders().getHeader("name"));
+        assertEquals("second", readAll(second.getContent()));
+        assertNull(reader.nextPart());
+    }
+
+    @Test
+    public void readsAnEmptyPart() throws IOException {
+        MultipartReader reader = reader(multipart(new byte[0]), false);
+        assertEquals("", readAll(reader.nextPart().getContent()));
+        assertNull(reader.nextPart());
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsABodyWithoutCloseDelimiter() throws IOException {
+        MultipartReader reader = reader("--" + BOUNDARY + "\r\n\r\nGIF89a", false);
+        readAll(reader.nextPart().getContent());
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsABodyEndingAfterADelimiter() throws IOException {
+        MultipartReader reader = reader("--" + BOUNDARY + "\r\n\r\nGIF89a\r\n--" + BOUNDARY, false);
+        readAll(reader.nextPart().getContent());
+        reader.nextPart();
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsABodyEndingInTheHeaders() throws IOException {
+        reader("--" + BOUNDARY + "\r\nContent-Type: image/gif\r\n", false).nextPart();
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsABodyWithoutDelimiter() throws IOException {
+        reader("GIF89a", false).nextPart();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAMalformedHeader() throws IOException {
+        reader("--" + BOUNDARY + "\r\nnot a header\r\n\r\n\r\n--" + BOUNDARY + "--", false).nextPart();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsHeadersNotEndingWithCRLF() throws IOException {
+        reader("--" + BOUNDARY + "\nA: b\n\n\r\n--" + BOUNDARY + "--", false).nextPart();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsADelimiterFollowedByOtherBytes() throws IOException {
+        reader("--" + BOUNDARY + "X\r\n\r\n\r\n--" + BOUNDARY + "--", false).nextPart();
+    }
+
+    @Test
+    public void findsTheBoundaryOfAContentType() {
+        assertEquals("abc", MultipartReader.boundaryOf("multipart/form-data; boundary=abc"));
+        assertEquals("a b:c", MultipartReader.boundaryOf("Multipart/Form-Data; charset=utf-8; BOUNDARY=\"a b:c\""));
+        assertNull(MultipartReader.boundaryOf(null));
+        assertNull(MultipartReader.boundaryOf("image/gif; boundary=abc"));
+        assertNull(MultipartReader.boundaryOf("multipart/form-data"));
+        assertNull(MultipartReader.boundaryOf("multipart/form-data; boundary="));
+        assertNull(MultipartReader.boundaryOf("multipart/form-data; boundary=" + "a".repeat(71)));
+    }
+
+    private static byte[] multipart(byte[] content) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.writeBytes(("--" + BOUNDARY + "\r\nContent-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        body.writeBytes(content);
+        body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        return body.toByteArray();
+    }
+
+    private static MultipartReader reader(String body, boolean trickle) {
+        return reader(body.getBytes(StandardCharsets.ISO_8859_1), trickle);
+    }
+
+    private static MultipartReader reader(byte[] body, boolean trickle) {
+        return new MultipartReader(trickle ? new TrickleInputStream(body) : new ByteArrayInputStream(body), BOUNDARY);
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        return new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,27 @@
+package fr.insa.http.messages;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * Gives its bytes one at a time, like a connection receiving them in as many packets
+ */
+class TrickleInputStream extends ByteArrayInputStream {
+    TrickleInputStream(byte[] data) {
+        super(data);
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+        return super.read(b, off, Math.min(len, 1));
+    }
+
+    @Override
+    public synchronized long skip(long n) {
+        return super.skip(Math.min(n, 1));
+    }
+
+    @Override
+    public synchronized int available() {
+        return Math.min(super.available(), 1);
+    }
+}
@@ -12,26 +12,12 @@ window.onload = () => {
             error.textContent = "";
             let oReq = new XMLHttpRequest();
             oReq.open("POST", "/gif", true);
-            // oReq.setRequestHeader("Content-Type", "image/gif");
+            // the file is sent as it is, without the third more of Base64
+            oReq.setRequestHeader("Content-Type", "image/gif");
             oReq.onload = () => {
                 window.location.reload(true);
             };
-            let reader = new FileReader();
-            reader.readAsArrayBuffer(file);
-            reader.onload = () => {
-                let base64Data = _arrayBufferToBase64(reader.result);
-                oReq.send(base64Data);
-            };
+            oReq.send(file);
         }
     }
 };
-
-function _arrayBufferToBase64( buffer ) {
-    var binary = '';
-    var bytes = new Uint8Array( buffer );
-    var len = bytes.byteLength;
-    for (var i = 0; i < len; i++) {
-        binary += String.fromCharCode( bytes[ i ] );
-    }
-    return window.btoa( binary );
-}